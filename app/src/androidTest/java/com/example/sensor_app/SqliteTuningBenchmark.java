@@ -0,0 +1,131 @@
+package com.example.sensor_app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the old rollback journal settings with {@link SqliteTuning#defaults()} under the load
+ * the app puts on the file: one thread committing batches of 256 rows, as the writer does, while
+ * another keeps reading the newest rows, as a chart does. Results go to logcat under
+ * {@code SqliteTuningBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SqliteTuningBenchmark {
+    private static final String TAG = "SqliteTuningBenchmark";
+    private static final int BATCHES = 400;
+    private static final int BATCH_ROWS = 256;
+    private static final int READ_ROWS = 1000;
+
+    @Test
+    public void walBeatsRollbackJournalUnderConcurrentReads() throws Exception {
+        Result rollback = run("rollback", SqliteTuning.rollbackJournal());
+        Result wal = run("wal", SqliteTuning.defaults());
+        Log.i(TAG, "Rollback journal: " + rollback);
+        Log.i(TAG, "WAL: " + wal);
+        Log.i(TAG, String.format("WAL speedup: writes %.2fx, reads %.2fx",
+                wal.rowsPerSecond / rollback.rowsPerSecond, wal.readsPerSecond / rollback.readsPerSecond));
+        // Readers never wait for the writer in WAL mode
+        assertEquals(0, wal.lockedErrors);
+    }
+
+    private static class Result {
+        double rowsPerSecond;
+        double readsPerSecond;
+        int lockedErrors;
+
+        @Override
+        public String toString() {
+            return String.format("%.0f rows/s written, %.0f reads/s, %d locked errors",
+                    rowsPerSecond, readsPerSecond, lockedErrors);
+        }
+    }
+
+    private Result run(String name, SqliteTuning tuning) throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = context.getDatabasePath("benchmark_" + name + ".db");
+        SQLiteDatabase.deleteDatabase(file);
+        file.getParentFile().mkdirs();
+        final SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            tuning.apply(db);
+            db.execSQL(SqliteSensorStore.createTable("samples"));
+
+            final AtomicBoolean writing = new AtomicBoolean(true);
+            final AtomicInteger reads = new AtomicInteger();
+            final AtomicInteger lockedErrors = new AtomicInteger();
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    String[] args = {Integer.toString(READ_ROWS)};
+                    while (writing.get()) {
+                        try {
+                            Cursor cursor = db.rawQuery("SELECT timestamp, x, y, z FROM samples"
+                                    + " ORDER BY timestamp DESC LIMIT ?", args);
+                            try {
+                                while (cursor.moveToNext()) {
+                                    cursor.getFloat(1);
+                                }
+                            } finally {
+                                cursor.close();
+                            }
+                            reads.incrementAndGet();
+                        } catch (SQLiteDatabaseLockedException e) {
+                            lockedErrors.incrementAndGet();
+                        }
+                    }
+                }
+            }, "benchmark-reader");
+
+            SQLiteStatement insert = db.compileStatement(
+                    "INSERT INTO samples (timestamp, x, y, z, accuracy) VALUES (?, ?, ?, ?, 3)");
+            reader.start();
+            long start = System.nanoTime();
+            long timestamp = 0;
+            for (int batch = 0; batch < BATCHES; batch++) {
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < BATCH_ROWS; i++) {
+                        timestamp += 5000000L;
+                        insert.bindLong(1, timestamp);
+                        insert.bindDouble(2, Math.sin(timestamp * 1e-9));
+                        insert.bindDouble(3, Math.cos(timestamp * 1e-9));
+                        insert.bindDouble(4, 9.81);
+                        insert.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            writing.set(false);
+            reader.join();
+            insert.close();
+
+            Result result = new Result();
+            result.rowsPerSecond = BATCHES * BATCH_ROWS / seconds;
+            result.readsPerSecond = reads.get() / seconds;
+            result.lockedErrors = lockedErrors.get();
+            return result;
+        } finally {
+            db.close();
+            SQLiteDatabase.deleteDatabase(file);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.sensor_app;
+
+/**
+ * Decides whether one channel's signal is idle or active, for {@link CaptureMode#ADAPTIVE}.
+ *
+ * Activity is the deviation of a sample from a running mean, taken over the axes, plus the
+ * running variance of that deviation. A jump above the threshold, or a standard deviation above
+ * half of it, makes the channel active. It only goes idle again once both have stayed below
+ * half of those levels for the hold time, so a signal near the threshold does not flap
+ * between rates. Allocation-free; only used from the sensor thread.
+ */
+public class AdaptiveRateController {
+    // Weight of the newest sample in the running mean and variance
+    private static final float ALPHA = 0.1f;
+    // Exit levels are this fraction of the enter levels
+    private static final float HYSTERESIS = 0.5f;
+
+    private final float enterDelta;
+    private final float enterDeviation;
+    private final long holdNanos;
+
+    private final float[] mean = new float[3];
+    private float variance;
+    private boolean primed;
+    private boolean active;
+    private long lastActivityTimestamp;
+
+    /**
+     * @param threshold deviation from the running mean, in the channel's unit, that counts as
+     *                  activity
+     * @param holdMs    how long the signal must stay quiet before going back to idle
+     */
+    public AdaptiveRateController(float threshold, long holdMs) {
+        this.enterDelta = threshold;
+        this.enterDeviation = threshold * HYSTERESIS;
+        this.holdNanos = holdMs * 1000000L;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Forces a state, e.g. when a wake-up trigger fires, and restarts the hold time.
+     */
+    public void setActive(boolean active, long timestamp) {
+        this.active = active;
+        lastActivityTimestamp = timestamp;
+    }
+
+    /**
+     * Feeds one sample; axes the channel does not have are NaN and ignored.
+     *
+     * @return true if the state changed
+     */
+    public boolean onSample(long timestamp, float x, float y, float z) {
+        if (!primed) {
+            mean[0] = x;
+            mean[1] = y;
+            mean[2] = z;
+            primed = true;
+            lastActivityTimestamp = timestamp;
+            return false;
+        }
+
+        float delta = Math.max(deviation(0, x), Math.max(deviation(1, y), deviation(2, z)));
+        variance += ALPHA * (delta * delta - variance);
+        float deviation = (float) Math.sqrt(variance);
+
+        if (!active) {
+            if (delta > enterDelta || deviation > enterDeviation) {
+                active = true;
+                lastActivityTimestamp = timestamp;
+                return true;
+            }
+            return false;
+        }
+        if (delta > enterDelta * HYSTERESIS || deviation > enterDeviation * HYSTERESIS) {
+            lastActivityTimestamp = timestamp;
+            return false;
+        }
+        if (timestamp - lastActivityTimestamp >= holdNanos) {
+            active = false;
+            return true;
+        }
+        return false;
+    }
+
+    // Distance of one axis from its running mean, which is then moved towards the value
+    private float deviation(int axis, float value) {
+        if (Float.isNaN(value)) {
+            return 0;
+        }
+        float delta = Math.abs(value - mean[axis]);
+        mean[axis] += ALPHA * (value - mean[axis]);
+        return delta;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.sensor_app;
+
+/**
+ * What a producer does when the hand-off queue to the database writer is full.
+ */
+public enum BackpressurePolicy {
+    // Wait for the writer to make room. Never loses samples but stalls the producing thread.
+    BLOCK,
+    // Discard the oldest queued sample to make room for the new one.
+    DROP_OLDEST,
+    // Keep only the newest of the samples that arrive while full, so a slow disk lowers the rate instead of the freshness.
+    COALESCE
+}
@@ -0,0 +1,17 @@
+package com.example.sensor_app;
+
+/**
+ * How {@link SensorService} reads a sensor.
+ */
+public enum CaptureMode {
+    // Register briefly every snapshot interval, keep the first reading and unregister again
+    PERIODIC_SNAPSHOT,
+    // Stay registered at a fixed sampling period and let the hardware FIFO batch events
+    CONTINUOUS_STREAM,
+    // Stream at a low idle rate, or not at all until significant motion, and switch to the full
+    // rate while the signal is active
+    ADAPTIVE,
+    // Stream at the full rate through a TriggerEngine: store one sample per snapshot interval,
+    // plus the full-rate windows around events that fire the channel's trigger rules
+    TRIGGERED
+}
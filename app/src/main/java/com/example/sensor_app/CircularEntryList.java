@@ -0,0 +1,72 @@
+package com.example.sensor_app;
+
+import com.github.mikephil.charting.data.Entry;
+
+import java.util.AbstractList;
+
+/**
+ * Fixed-capacity chart series backed by a ring of preallocated {@link Entry} objects, oldest
+ * first. Once full, {@link #add(float, float)} overwrites the oldest entry in place, so a live
+ * chart can append forever without allocating or shifting. A dataset holds this list directly
+ * and only needs to be told that it changed.
+ *
+ * Only used from the main thread, like the chart itself.
+ */
+public class CircularEntryList extends AbstractList<Entry> {
+    private final Entry[] entries;
+    private int start;
+    private int size;
+
+    public CircularEntryList(int capacity) {
+        entries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new Entry();
+        }
+    }
+
+    /**
+     * Appends a point, evicting the oldest when full. Points must arrive in x order, as chart
+     * lookups binary-search on x; one at or before the newest x is ignored.
+     *
+     * @return false if the point was ignored
+     */
+    public boolean add(float x, float y) {
+        if (size > 0 && x <= get(size - 1).getX()) {
+            return false;
+        }
+        Entry entry;
+        if (size < entries.length) {
+            entry = entries[(start + size) % entries.length];
+            size++;
+        } else {
+            entry = entries[start];
+            start = (start + 1) % entries.length;
+        }
+        entry.setX(x);
+        entry.setY(y);
+        return true;
+    }
+
+    @Override
+    public Entry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return entries[(start + index) % entries.length];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    @Override
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+}
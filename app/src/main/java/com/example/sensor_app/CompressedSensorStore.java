@@ -0,0 +1,286 @@
+package com.example.sensor_app;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Raw rows compressed with {@link GorillaCodec} into one SQLite BLOB per time block, in a
+ * {@code <table>_blocks} table per channel keyed by the block's first timestamp. A regularly
+ * sampled, slowly changing channel takes a few bytes per sample instead of a full row.
+ *
+ * The writer thread keeps each channel's newest block open in memory and rewrites its row on
+ * every commit, inside the batch transaction, so committed samples are always readable. A block
+ * is closed when the accuracy changes or it reaches {@link #MAX_BLOCK_SAMPLES},
+ * {@link #MAX_BLOCK_BYTES} or {@link #MAX_BLOCK_SPAN_NANOS}. Readers fetch a few blocks at a
+ * time and decode only as far as they need.
+ *
+ * Like the log engine, samples at or before the last stored timestamp are dropped.
+ */
+public class CompressedSensorStore implements SensorStore {
+    private static final String COLUMN_START = "start_timestamp";
+    private static final String COLUMN_END = "end_timestamp";
+    private static final String COLUMN_COUNT = "count";
+    private static final String COLUMN_ACCURACY = "accuracy";
+    private static final String COLUMN_DATA = "data";
+    private static final String TABLE_SUFFIX = "_blocks";
+
+    private static final int MAX_BLOCK_SAMPLES = 1024;
+    // The open block is rewritten on every commit, so it is kept small
+    private static final int MAX_BLOCK_BYTES = 4096;
+    // Retention deletes whole blocks, so a block never spans more than an hour
+    private static final long MAX_BLOCK_SPAN_NANOS = 3600 * 1000000000L;
+    private static final int BLOCKS_PER_QUERY = 8;
+    private static final int BLOCKS_PER_DELETE = 16;
+
+    private final DatabaseHelper dbHelper;
+    private final SQLiteStatement[] insertStatements;
+    private final SQLiteStatement[] deleteStatements;
+
+    // Writer thread only
+    private final GorillaCodec.Encoder[] encoders;
+    private final int[] blockAccuracies;
+    private final boolean[] dirty;
+    // Newest timestamp stored per channel; Long.MIN_VALUE until read from the table
+    private final long[] lastTimestamps;
+
+    public CompressedSensorStore(DatabaseHelper dbHelper, int channelCount) {
+        this.dbHelper = dbHelper;
+        insertStatements = new SQLiteStatement[channelCount];
+        deleteStatements = new SQLiteStatement[channelCount];
+        encoders = new GorillaCodec.Encoder[channelCount];
+        blockAccuracies = new int[channelCount];
+        dirty = new boolean[channelCount];
+        lastTimestamps = new long[channelCount];
+        for (int sensor = 0; sensor < channelCount; sensor++) {
+            lastTimestamps[sensor] = Long.MIN_VALUE;
+        }
+    }
+
+    public static String getTable(String channelTable) {
+        return channelTable + TABLE_SUFFIX;
+    }
+
+    public static String createTable(String table) {
+        return "CREATE TABLE " + table + "("
+                + COLUMN_START + " INTEGER PRIMARY KEY,"
+                + COLUMN_END + " INTEGER NOT NULL,"
+                + COLUMN_COUNT + " INTEGER NOT NULL,"
+                + COLUMN_ACCURACY + " INTEGER,"
+                + COLUMN_DATA + " BLOB NOT NULL)";
+    }
+
+    private static String getTable(int sensor) {
+        return getTable(SensorChannelRegistry.getChannel(sensor).getTableName());
+    }
+
+    @Override
+    public boolean append(int sensor, long timestamp, float x, float y, float z, int accuracy) {
+        if (lastTimestamps[sensor] == Long.MIN_VALUE) {
+            // One past the sentinel when the table is empty, so it is only looked up once
+            lastTimestamps[sensor] = queryLong(COLUMN_END + " FROM " + getTable(sensor)
+                    + " ORDER BY " + COLUMN_START + " DESC LIMIT 1", Long.MIN_VALUE + 1);
+        }
+        if (timestamp <= lastTimestamps[sensor]) {
+            return false;
+        }
+
+        GorillaCodec.Encoder encoder = encoders[sensor];
+        if (encoder == null) {
+            encoder = new GorillaCodec.Encoder(DatabaseHelper.getAxisCount(sensor), MAX_BLOCK_BYTES);
+            encoders[sensor] = encoder;
+        }
+        if (encoder.getCount() > 0 && (accuracy != blockAccuracies[sensor]
+                || encoder.getCount() >= MAX_BLOCK_SAMPLES
+                || encoder.getByteLength() >= MAX_BLOCK_BYTES
+                || timestamp - encoder.getFirstTimestamp() >= MAX_BLOCK_SPAN_NANOS)) {
+            writeBlock(sensor);
+            encoder.reset();
+        }
+        if (encoder.getCount() == 0) {
+            blockAccuracies[sensor] = accuracy;
+        }
+        encoder.add(timestamp, x, y, z);
+        lastTimestamps[sensor] = timestamp;
+        dirty[sensor] = true;
+        return true;
+    }
+
+    /**
+     * Writes every open block that changed. Must run inside the batch transaction.
+     */
+    @Override
+    public void commit() {
+        for (int sensor = 0; sensor < dirty.length; sensor++) {
+            if (dirty[sensor]) {
+                writeBlock(sensor);
+            }
+        }
+    }
+
+    /**
+     * Drops the open blocks; their rows as of the last commit are in the table, which the
+     * transaction rolled back to. The next append reads the newest stored timestamp again and
+     * starts a fresh block after it.
+     */
+    @Override
+    public void rollback() {
+        for (int sensor = 0; sensor < encoders.length; sensor++) {
+            if (encoders[sensor] != null) {
+                encoders[sensor].reset();
+            }
+            dirty[sensor] = false;
+            lastTimestamps[sensor] = Long.MIN_VALUE;
+        }
+    }
+
+    private void writeBlock(int sensor) {
+        GorillaCodec.Encoder encoder = encoders[sensor];
+        SQLiteStatement statement = insertStatements[sensor];
+        if (statement == null) {
+            statement = dbHelper.getWritableDatabase().compileStatement("INSERT OR REPLACE INTO " + getTable(sensor)
+                    + " (" + COLUMN_START + ", " + COLUMN_END + ", " + COLUMN_COUNT + ", " + COLUMN_ACCURACY
+                    + ", " + COLUMN_DATA + ") VALUES (?, ?, ?, ?, ?)");
+            insertStatements[sensor] = statement;
+        }
+        statement.bindLong(1, encoder.getFirstTimestamp());
+        statement.bindLong(2, encoder.getLastTimestamp());
+        statement.bindLong(3, encoder.getCount());
+        if (blockAccuracies[sensor] >= 0) {
+            statement.bindLong(4, blockAccuracies[sensor]);
+        } else {
+            statement.bindNull(4);
+        }
+        statement.bindBlob(5, encoder.toByteArray());
+        statement.executeInsert();
+        dirty[sensor] = false;
+    }
+
+    @Override
+    public int readRange(int sensor, long afterNanos, long toNanos, SensorWriteBuffer out) {
+        GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(DatabaseHelper.getAxisCount(sensor));
+        int rows = 0;
+        // Blocks do not overlap, so the first one needed is the last to start at or before
+        // afterNanos; both lookups are primary key range scans
+        long blockAfter = queryLong("MAX(" + COLUMN_START + ") FROM " + getTable(sensor)
+                + " WHERE " + COLUMN_START + " <= ?", Long.toString(afterNanos), Long.MIN_VALUE + 1) - 1;
+        boolean more = true;
+        while (more && !out.isFull()) {
+            Cursor cursor = dbHelper.getReadableDatabase().rawQuery("SELECT " + COLUMN_START + ", " + COLUMN_COUNT
+                            + ", " + COLUMN_ACCURACY + ", " + COLUMN_DATA + " FROM " + getTable(sensor)
+                            + " WHERE " + COLUMN_START + " > ? AND " + COLUMN_START + " <= ?"
+                            + " ORDER BY " + COLUMN_START + " LIMIT " + BLOCKS_PER_QUERY,
+                    new String[]{Long.toString(blockAfter), Long.toString(toNanos)});
+            try {
+                more = cursor.getCount() == BLOCKS_PER_QUERY;
+                while (cursor.moveToNext() && !out.isFull()) {
+                    blockAfter = cursor.getLong(0);
+                    int accuracy = cursor.isNull(2) ? -1 : cursor.getInt(2);
+                    decoder.reset(cursor.getBlob(3), cursor.getInt(1), blockAfter);
+                    while (decoder.next()) {
+                        long timestamp = decoder.getTimestamp();
+                        if (timestamp <= afterNanos) {
+                            continue;
+                        }
+                        if (timestamp > toNanos) {
+                            return rows;
+                        }
+                        out.add(sensor, timestamp, decoder.getX(), decoder.getY(), decoder.getZ(), accuracy);
+                        rows++;
+                        if (out.isFull()) {
+                            return rows;
+                        }
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public long getFirstTimestamp(int sensor) {
+        return queryLong("MIN(" + COLUMN_START + ") FROM " + getTable(sensor), Long.MAX_VALUE);
+    }
+
+    private long queryLong(String query, long defaultValue) {
+        return queryLong(query, null, defaultValue);
+    }
+
+    private long queryLong(String query, String arg, long defaultValue) {
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery("SELECT " + query,
+                arg != null ? new String[]{arg} : null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : defaultValue;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Deletes whole blocks that ended before the cutoff, up to {@link #BLOCKS_PER_DELETE} per
+     * call. A block that straddles the cutoff is kept until all of it is old enough.
+     */
+    @Override
+    public int deleteBefore(int sensor, long cutoffNanos, int limit) {
+        String table = getTable(sensor);
+        String oldest = "SELECT " + COLUMN_START + " FROM " + table + " WHERE " + COLUMN_END + " < ?"
+                + " ORDER BY " + COLUMN_START + " LIMIT " + BLOCKS_PER_DELETE;
+        String cutoff = Long.toString(cutoffNanos);
+        int blocks;
+        int rows;
+        Cursor cursor = dbHelper.getWritableDatabase().rawQuery("SELECT COUNT(*), TOTAL(" + COLUMN_COUNT + ")"
+                + " FROM " + table + " WHERE " + COLUMN_START + " IN (" + oldest + ")", new String[]{cutoff});
+        try {
+            cursor.moveToFirst();
+            blocks = cursor.getInt(0);
+            rows = cursor.getInt(1);
+        } finally {
+            cursor.close();
+        }
+        if (blocks == 0) {
+            return 0;
+        }
+
+        SQLiteStatement statement = deleteStatements[sensor];
+        if (statement == null) {
+            statement = dbHelper.getWritableDatabase().compileStatement("DELETE FROM " + table
+                    + " WHERE " + COLUMN_START + " IN (" + oldest + ")");
+            deleteStatements[sensor] = statement;
+        }
+        statement.bindLong(1, cutoffNanos);
+        statement.executeUpdateDelete();
+        // The open block may have been one of them; never write it back
+        GorillaCodec.Encoder encoder = encoders[sensor];
+        if (encoder != null && encoder.getCount() > 0 && encoder.getLastTimestamp() < cutoffNanos) {
+            encoder.reset();
+            dirty[sensor] = false;
+        }
+        // A full set of blocks may not be the last; make sure the caller comes back
+        return blocks == BLOCKS_PER_DELETE ? Math.max(rows, limit) : rows;
+    }
+
+    @Override
+    public long getSizeBytes() {
+        return -1;
+    }
+
+    /**
+     * Drops the compiled statements; they are compiled again on next use. Open blocks stay in
+     * memory and were written by the last commit.
+     */
+    @Override
+    public void close() {
+        closeStatements(insertStatements);
+        closeStatements(deleteStatements);
+    }
+
+    private static void closeStatements(SQLiteStatement[] statements) {
+        for (int i = 0; i < statements.length; i++) {
+            if (statements[i] != null) {
+                statements[i].close();
+                statements[i] = null;
+            }
+        }
+    }
+}
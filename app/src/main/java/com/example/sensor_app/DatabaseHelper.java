@@ -5,165 +5,1067 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.util.Arrays;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "sensor_data.db";
-    private static final int DATABASE_VERSION = 1;
+    // Directory under the app's files dir holding the append-only log channels
+    private static final String LOG_DIRECTORY = "sensor_log";
+    private static final int DATABASE_VERSION = 5;
 
-    // Table names
-    private static final String TABLE_LIGHT_SENSOR = "light_sensor";
-    private static final String TABLE_PROXIMITY_SENSOR = "proximity_sensor";
-    private static final String TABLE_ACCELEROMETER_SENSOR = "accelerometer_sensor";
-    private static final String TABLE_GYROSCOPE_SENSOR = "gyroscope_sensor";
+    // Sensors are identified by SensorChannel id throughout; each channel has its own table
+    private static final int CHANNEL_COUNT = SensorChannelRegistry.getChannelCount();
+    // Channels 0-3 (light, proximity, accelerometer, gyroscope) had tables before the registry
+    private static final int LEGACY_CHANNEL_COUNT = 4;
+
+    // Buffered rows are written in one transaction once either limit is reached
+    private static final int MAX_BATCH_ROWS = 256;
+    private static final long MAX_BATCH_DELAY_MS = 2000;
+    // Retention runs in the writer's idle time, first a minute after start and then hourly
+    private static final long MAINTENANCE_INITIAL_DELAY_MS = 60 * 1000;
+    private static final long MAINTENANCE_INTERVAL_MS = 60 * 60 * 1000;
+
+    // Samples per sensor a producer may get ahead of the writer before backpressure kicks in
+    private static final int WRITE_QUEUE_CAPACITY = 4096;
+
+    private static DatabaseHelper instance;
+    private static SqliteTuning tuning = SqliteTuning.defaults();
 
     // Common column names
     private static final String COLUMN_TIMESTAMP = "timestamp";
+    private static final String COLUMN_X = "x";
+    private static final String COLUMN_Y = "y";
+    private static final String COLUMN_Z = "z";
+    // Single value column used by version 1 of the schema
     private static final String COLUMN_VALUE = "value";
 
-    // Table create statements
-    private static final String CREATE_TABLE_LIGHT_SENSOR = "CREATE TABLE " + TABLE_LIGHT_SENSOR + "("
-            + COLUMN_TIMESTAMP + " INTEGER PRIMARY KEY,"
-            + COLUMN_VALUE + " REAL)";
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // Rollup tables hold per-bucket statistics for every sensor, coarsest last
+    private static final String[] ROLLUP_TABLES = {"rollup_1s", "rollup_1m", "rollup_1h"};
+    public static final long[] ROLLUP_RESOLUTIONS_NANOS = {NANOS_PER_SECOND, 60 * NANOS_PER_SECOND, 3600 * NANOS_PER_SECOND};
+    private static final String COLUMN_SENSOR = "sensor";
+    private static final String COLUMN_BUCKET = "bucket";
+    private static final String COLUMN_COUNT = "count";
+    private static final String[] AXIS_COLUMNS = {COLUMN_X, COLUMN_Y, COLUMN_Z};
+
+    // Every sampling rate change of adaptively captured channels
+    private static final String RATE_CHANGES_TABLE = "rate_changes";
+    private static final String COLUMN_SAMPLING_PERIOD = "sampling_period_us";
+    private static final String COLUMN_ACTIVE = "active";
+
+    // One row per channel and feature window
+    private static final String FEATURES_TABLE = "features";
+    private static final String[] FEATURE_COLUMNS = {"end_timestamp", "count", "mean", "std_dev", "min", "max",
+            "rms", "peak_count", "dominant_frequency", "dominant_amplitude"};
+
+    // Query SQL is built once, so each statement is compiled once per connection and then
+    // found in SQLite's statement cache; values are always bound, never concatenated.
+    // Newest 1 s buckets at or before a time, for readLatest
+    private static final int LATEST_BUCKETS_PER_QUERY = 256;
+    private static final String LATEST_BUCKETS_SQL = "SELECT " + COLUMN_BUCKET + ", " + COLUMN_COUNT
+            + " FROM " + ROLLUP_TABLES[0] + " WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_BUCKET + " <= ?"
+            + " ORDER BY " + COLUMN_BUCKET + " DESC LIMIT " + LATEST_BUCKETS_PER_QUERY;
+    // Statistics of the buckets in [?, ?) per resolution, for aggregate
+    private static final String[] ROLLUP_AGGREGATE_SQL = new String[ROLLUP_TABLES.length];
+    // Per-bucket x range in (?, ?] per resolution, for queryRollupRange
+    private static final String[] ROLLUP_RANGE_SQL = new String[ROLLUP_TABLES.length];
+
+    static {
+        for (int r = 0; r < ROLLUP_TABLES.length; r++) {
+            ROLLUP_RANGE_SQL[r] = "SELECT " + COLUMN_BUCKET + ", min_x, max_x FROM " + ROLLUP_TABLES[r]
+                    + " WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_BUCKET + " > ? AND " + COLUMN_BUCKET + " <= ?"
+                    + " ORDER BY " + COLUMN_BUCKET + " LIMIT ?";
+            StringBuilder sql = new StringBuilder("SELECT TOTAL(" + COLUMN_COUNT + ")");
+            for (String axis : AXIS_COLUMNS) {
+                sql.append(", TOTAL(" + COLUMN_COUNT + " * (min_").append(axis).append(" IS NOT NULL))")
+                        .append(", MIN(min_").append(axis).append("), MAX(max_").append(axis)
+                        .append("), TOTAL(sum_").append(axis).append("), TOTAL(sumsq_").append(axis).append(")");
+            }
+            sql.append(" FROM ").append(ROLLUP_TABLES[r]).append(" WHERE " + COLUMN_SENSOR + " = ? AND "
+                    + COLUMN_BUCKET + " >= ? AND " + COLUMN_BUCKET + " < ?");
+            ROLLUP_AGGREGATE_SQL[r] = sql.toString();
+        }
+    }
+
+    private static final int LATEST_PAGE_ROWS = 512;
+    private static final int AGGREGATE_PAGE_ROWS = 256;
+    private static final int ALIGNED_PAGE_ROWS = 1024;
 
-    private static final String CREATE_TABLE_PROXIMITY_SENSOR = "CREATE TABLE " + TABLE_PROXIMITY_SENSOR + "("
-            + COLUMN_TIMESTAMP + " INTEGER PRIMARY KEY,"
-            + COLUMN_VALUE + " REAL)";
+    private final SQLiteStatement[] rollupInsertStatements = new SQLiteStatement[ROLLUP_TABLES.length];
+    private final SQLiteStatement[] rollupUpdateStatements = new SQLiteStatement[ROLLUP_TABLES.length];
+    // Open bucket per sensor and resolution, only touched on the writer thread
+    private final RollupAccumulator[][] rollups = new RollupAccumulator[CHANNEL_COUNT][ROLLUP_TABLES.length];
+    private final SensorWriter writer;
+    private final RetentionManager retentionManager;
+    // Raw row storage; stores[sensor] is one of the two engines below
+    private final SqliteSensorStore sqliteStore;
+    private final LogSensorStore logStore;
+    private final CompressedSensorStore compressedStore;
+    private final SensorStore[] stores = new SensorStore[CHANNEL_COUNT];
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    // Rows of the batch being written per sensor, only touched on the writer thread
+    private final int[] batchWritten = new int[CHANNEL_COUNT];
+    private final int[] batchRejected = new int[CHANNEL_COUNT];
+    private final SQLiteStatement[] deleteRollupStatements = new SQLiteStatement[ROLLUP_TABLES.length];
+    private SQLiteStatement insertRateChangeStatement;
+    private SQLiteStatement deleteRateChangesStatement;
+    private SQLiteStatement insertFeaturesStatement;
+    private SQLiteStatement deleteFeaturesStatement;
 
-    private static final String CREATE_TABLE_ACCELEROMETER_SENSOR = "CREATE TABLE " + TABLE_ACCELEROMETER_SENSOR + "("
-            + COLUMN_TIMESTAMP + " INTEGER PRIMARY KEY,"
-            + COLUMN_VALUE + " REAL)";
+    /**
+     * Returns the process-wide helper. All writes go through its single {@link SensorWriter}
+     * thread, so every component must share this instance.
+     */
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the connection settings. Must be called before the first {@link #getInstance},
+     * since the one connection is configured when it is opened and then kept for the life of
+     * the process.
+     */
+    public static synchronized void setTuning(SqliteTuning newTuning) {
+        if (instance != null) {
+            throw new IllegalStateException("Database already open");
+        }
+        tuning = newTuning;
+    }
 
-    private static final String CREATE_TABLE_GYROSCOPE_SENSOR = "CREATE TABLE " + TABLE_GYROSCOPE_SENSOR + "("
-            + COLUMN_TIMESTAMP + " INTEGER PRIMARY KEY,"
-            + COLUMN_VALUE + " REAL)";
+    public static synchronized SqliteTuning getTuning() {
+        return tuning;
+    }
 
-    public DatabaseHelper(Context context) {
+    private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        sqliteStore = new SqliteSensorStore(this, CHANNEL_COUNT);
+        logStore = new LogSensorStore(new File(context.getFilesDir(), LOG_DIRECTORY), CHANNEL_COUNT);
+        compressedStore = new CompressedSensorStore(this, CHANNEL_COUNT);
+        for (int sensor = 0; sensor < CHANNEL_COUNT; sensor++) {
+            switch (SensorChannelRegistry.getChannel(sensor).getStorageEngine()) {
+                case LOG:
+                    stores[sensor] = logStore;
+                    break;
+                case COMPRESSED:
+                    stores[sensor] = compressedStore;
+                    break;
+                default:
+                    stores[sensor] = sqliteStore;
+                    break;
+            }
+        }
+        writer = new SensorWriter(this, CHANNEL_COUNT, MAX_BATCH_ROWS, MAX_BATCH_DELAY_MS,
+                BackpressurePolicy.DROP_OLDEST);
+        RetentionPolicy[] policies = new RetentionPolicy[CHANNEL_COUNT];
+        for (int sensor = 0; sensor < CHANNEL_COUNT; sensor++) {
+            for (int r = 0; r < ROLLUP_TABLES.length; r++) {
+                rollups[sensor][r] = new RollupAccumulator(ROLLUP_RESOLUTIONS_NANOS[r]);
+            }
+            policies[sensor] = RetentionPolicy.days(SensorChannelRegistry.getChannel(sensor).getRawRetentionDays());
+        }
+        retentionManager = new RetentionManager(this, policies);
+        writer.setMaintenanceTask(retentionManager, MAINTENANCE_INITIAL_DELAY_MS, MAINTENANCE_INTERVAL_MS);
+    }
+
+    /**
+     * Overrides how long a sensor's raw rows and rollups are kept.
+     */
+    public void setRetentionPolicy(int sensor, RetentionPolicy policy) {
+        retentionManager.setPolicy(sensor, policy);
+    }
+
+    /**
+     * Creates the lock-free hand-off rings for a thread that produces samples at sensor rate.
+     */
+    public SensorWriter.Producer newProducer() {
+        return writer.newProducer(WRITE_QUEUE_CAPACITY);
+    }
+
+    public static int getAxisCount(int sensor) {
+        return SensorChannelRegistry.getChannel(sensor).getAxisCount();
+    }
+
+    private static String getTable(int sensor) {
+        return SensorChannelRegistry.getChannel(sensor).getTableName();
+    }
+
+    public SensorWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Only takes effect on a new file; existing ones are converted by incrementalVacuum
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        getTuning().apply(db);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Create the tables
-        db.execSQL(CREATE_TABLE_LIGHT_SENSOR);
-        db.execSQL(CREATE_TABLE_PROXIMITY_SENSOR);
-        db.execSQL(CREATE_TABLE_ACCELEROMETER_SENSOR);
-        db.execSQL(CREATE_TABLE_GYROSCOPE_SENSOR);
+        // Create the tables; channel tables are created in onOpen
+        for (String table : ROLLUP_TABLES) {
+            db.execSQL(createRollupTable(table));
+        }
+        db.execSQL(CREATE_RATE_CHANGES_TABLE);
+        db.execSQL(createFeaturesTable());
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // Channels added to the registry get their table without a schema version bump. Log and
+        // compressed channels keep one too, for rows written before they changed engine.
+        if (!db.isReadOnly()) {
+            for (int sensor = 0; sensor < CHANNEL_COUNT; sensor++) {
+                db.execSQL(SqliteSensorStore.createTable("IF NOT EXISTS " + getTable(sensor)));
+                if (stores[sensor] == compressedStore) {
+                    db.execSQL(CompressedSensorStore.createTable(
+                            "IF NOT EXISTS " + CompressedSensorStore.getTable(getTable(sensor))));
+                }
+            }
+        }
+    }
+
+    /**
+     * One row per sensor and bucket, with count plus min, max, sum and sum of squares per axis.
+     * Mean and variance are derived from these when reading.
+     */
+    private static String createRollupTable(String table) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE " + table + "("
+                + COLUMN_SENSOR + " INTEGER NOT NULL,"
+                + COLUMN_BUCKET + " INTEGER NOT NULL,"
+                + COLUMN_COUNT + " INTEGER NOT NULL");
+        for (String axis : AXIS_COLUMNS) {
+            sql.append(",min_").append(axis).append(" REAL")
+                    .append(",max_").append(axis).append(" REAL")
+                    .append(",sum_").append(axis).append(" REAL")
+                    .append(",sumsq_").append(axis).append(" REAL");
+        }
+        sql.append(",PRIMARY KEY (" + COLUMN_SENSOR + ", " + COLUMN_BUCKET + ")) WITHOUT ROWID");
+        return sql.toString();
+    }
+
+    private static final String CREATE_RATE_CHANGES_TABLE = "CREATE TABLE " + RATE_CHANGES_TABLE + "("
+            + COLUMN_SENSOR + " INTEGER NOT NULL,"
+            + COLUMN_TIMESTAMP + " INTEGER NOT NULL,"
+            + COLUMN_SAMPLING_PERIOD + " INTEGER NOT NULL,"
+            + COLUMN_ACTIVE + " INTEGER NOT NULL,"
+            + "PRIMARY KEY (" + COLUMN_SENSOR + ", " + COLUMN_TIMESTAMP + ")) WITHOUT ROWID";
+
+    private static String createFeaturesTable() {
+        StringBuilder sql = new StringBuilder("CREATE TABLE " + FEATURES_TABLE + "("
+                + COLUMN_SENSOR + " INTEGER NOT NULL,"
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL");
+        for (String column : FEATURE_COLUMNS) {
+            sql.append(',').append(column);
+            sql.append(column.endsWith("count") || column.endsWith("timestamp") ? " INTEGER" : " REAL");
+        }
+        sql.append(",PRIMARY KEY (" + COLUMN_SENSOR + ", " + COLUMN_TIMESTAMP + ")) WITHOUT ROWID");
+        return sql.toString();
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Drop older tables if they exist
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_LIGHT_SENSOR);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PROXIMITY_SENSOR);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ACCELEROMETER_SENSOR);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_GYROSCOPE_SENSOR);
+        if (oldVersion < 2) {
+            // Version 1 stored one value keyed by wall-clock milliseconds. Keep those rows as
+            // the x axis, with the key scaled to nanoseconds.
+            for (int sensor = 0; sensor < LEGACY_CHANNEL_COUNT; sensor++) {
+                String table = getTable(sensor);
+                String oldTable = table + "_v1";
+                db.execSQL("ALTER TABLE " + table + " RENAME TO " + oldTable);
+                db.execSQL(SqliteSensorStore.createTable(table));
+                db.execSQL("INSERT INTO " + table + " (" + COLUMN_TIMESTAMP + ", " + COLUMN_X + ")"
+                        + " SELECT " + COLUMN_TIMESTAMP + " * " + NANOS_PER_MILLI + ", " + COLUMN_VALUE
+                        + " FROM " + oldTable);
+                db.execSQL("DROP TABLE " + oldTable);
+            }
+        }
+        if (oldVersion < 3) {
+            // Build the rollups from the raw rows already stored
+            for (int r = 0; r < ROLLUP_TABLES.length; r++) {
+                db.execSQL(createRollupTable(ROLLUP_TABLES[r]));
+                for (int sensor = 0; sensor < LEGACY_CHANNEL_COUNT; sensor++) {
+                    backfillRollup(db, sensor, r);
+                }
+            }
+        }
+        if (oldVersion < 4) {
+            db.execSQL(CREATE_RATE_CHANGES_TABLE);
+        }
+        if (oldVersion < 5) {
+            db.execSQL(createFeaturesTable());
+        }
+    }
 
-        // Create tables again
-        onCreate(db);
+    private static void backfillRollup(SQLiteDatabase db, int sensor, int resolution) {
+        long width = ROLLUP_RESOLUTIONS_NANOS[resolution];
+        StringBuilder sql = new StringBuilder("INSERT INTO " + ROLLUP_TABLES[resolution]
+                + " SELECT " + sensor + ", (" + COLUMN_TIMESTAMP + " / " + width + ") * " + width + ", COUNT(*)");
+        for (String axis : AXIS_COLUMNS) {
+            sql.append(", MIN(").append(axis).append("), MAX(").append(axis).append("), SUM(").append(axis)
+                    .append("), SUM(").append(axis).append(" * ").append(axis).append(")");
+        }
+        sql.append(" FROM ").append(getTable(sensor)).append(" GROUP BY 2");
+        db.execSQL(sql.toString());
     }
 
-    // Light Sensor Methods
+    /**
+     * Picks the coarsest rollup whose buckets are no wider than {@code bucketNanos}, so a chart
+     * with one bucket per pixel still fills the screen.
+     *
+     * @return index into {@link #ROLLUP_RESOLUTIONS_NANOS}, or -1 if raw rows are needed
+     */
+    public static int chooseRollup(long bucketNanos) {
+        for (int r = ROLLUP_RESOLUTIONS_NANOS.length - 1; r >= 0; r--) {
+            if (ROLLUP_RESOLUTIONS_NANOS[r] <= bucketNanos) {
+                return r;
+            }
+        }
+        return -1;
+    }
 
-    public void insertLightSensorValue(long timestamp, float value) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_TIMESTAMP, timestamp);
-        values.put(COLUMN_VALUE, value);
-        db.insert(TABLE_LIGHT_SENSOR, null, values);
-        db.close();
-    }
-
-//    public List<SensorData> getAllLightSensorValues() {
-//        List<SensorData> sensorDataList = new ArrayList<>();
-//        String selectQuery = "SELECT * FROM " + TABLE_LIGHT_SENSOR + " ORDER BY " + COLUMN_TIMESTAMP + " DESC";
-//        SQLiteDatabase db = this.getReadableDatabase();
-//        Cursor cursor = db.rawQuery(selectQuery, null);
-//        if (cursor.moveToFirst()) {
-//            do {
-//                long timestamp;
-//                float value;
-//
-//                int timestampIndex = cursor.getColumnIndex(COLUMN_TIMESTAMP);
-//                if (timestampIndex != -1) {
-//                    timestamp = cursor.getLong(timestampIndex);
-//                } else {
-//                    // Column does not exist
-//                    continue;
-//                }
-//
-//                int valueIndex = cursor.getColumnIndex(COLUMN_VALUE);
-//                if (valueIndex != -1) {
-//                    value = cursor.getFloat(valueIndex);
-//                } else {
-//                    // Column does not exist
-//                    continue;
-//                }
-//
-//                SensorData sensorData = new SensorData(timestamp, value);
-//                sensorDataList.add(sensorData);
-//            } while (cursor.moveToNext());
-//        }
-//        cursor.close();
-//        db.close();
-//        return sensorDataList;
-//    }
-
-    public void insertProximitySensorValue(SensorData proximitySensorData) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_TIMESTAMP, proximitySensorData.getTimestamp());
-        values.put(COLUMN_VALUE, proximitySensorData.getValue());
-        db.insert(TABLE_PROXIMITY_SENSOR, null, values);
-        db.close();
+    /**
+     * Returns up to {@code limit} rows of {@code (bucket, min_x, max_x)} from a rollup table with
+     * {@code afterNanos < bucket <= toNanos}, oldest first. Pages like {@link #readRawRange}.
+     */
+    public Cursor queryRollupRange(int sensor, int resolution, long afterNanos, long toNanos, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(ROLLUP_RANGE_SQL[resolution], new String[]{Integer.toString(sensor),
+                Long.toString(afterNanos), Long.toString(toNanos), Integer.toString(limit)});
     }
 
-    public void insertAccelerometerSensorValue(SensorData accelerometerSensorData) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_TIMESTAMP, accelerometerSensorData.getTimestamp());
-        values.put(COLUMN_VALUE, accelerometerSensorData.getValue());
-        db.insert(TABLE_ACCELEROMETER_SENSOR, null, values);
-        db.close();
+    /**
+     * Adds raw rows with {@code afterNanos < timestamp <= toNanos} to {@code out}, oldest first,
+     * until it is full. Callers page through long ranges by passing the last timestamp they saw
+     * as the next {@code afterNanos}.
+     *
+     * @return number of rows added
+     */
+    public int readRawRange(int sensor, long afterNanos, long toNanos, SensorWriteBuffer out) {
+        long start = System.nanoTime();
+        int rows = readRaw(sensor, afterNanos, toNanos, out);
+        metrics.getQuery().record(System.nanoTime() - start);
+        return rows;
     }
 
-    public void insertGyroscopeSensorValue(SensorData gyroscopeSensorData) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_TIMESTAMP, gyroscopeSensorData.getTimestamp());
-        values.put(COLUMN_VALUE, gyroscopeSensorData.getValue());
-        db.insert(TABLE_GYROSCOPE_SENSOR, null, values);
-        db.close();
+    // The queries below build on this, and are timed as a whole
+    private int readRaw(int sensor, long afterNanos, long toNanos, SensorWriteBuffer out) {
+        SensorStore store = stores[sensor];
+        if (store != sqliteStore) {
+            // Rows from before the channel moved to another engine stay in its table until
+            // retention removes them; they are all older than the engine's first row
+            long first = store.getFirstTimestamp(sensor);
+            if (afterNanos < first - 1) {
+                int rows = sqliteStore.readRange(sensor, afterNanos, Math.min(toNanos, first - 1), out);
+                if (rows > 0) {
+                    return rows;
+                }
+            }
+        }
+        return store.readRange(sensor, afterNanos, toNanos, out);
     }
 
+    /**
+     * Clears {@code out} and fills it with the newest raw rows at or before {@code toNanos}, up
+     * to its capacity, oldest first.
+     *
+     * The 1 s rollup counts give a starting point that holds just enough rows, so only about a
+     * second more than asked for is read, whichever engine holds them.
+     *
+     * @return number of rows in {@code out}
+     */
+    public int readLatest(int sensor, long toNanos, SensorWriteBuffer out) {
+        long start = System.nanoTime();
+        int rows = readLatestRows(sensor, toNanos, out);
+        metrics.getQuery().record(System.nanoTime() - start);
+        return rows;
+    }
 
-    public void insertLightSensorValue(SensorData lightSensorData) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_TIMESTAMP, lightSensorData.getTimestamp());
-        values.put(COLUMN_VALUE, lightSensorData.getValue());
-        db.insert(TABLE_LIGHT_SENSOR, null, values);
-        db.close();
+    private int readLatestRows(int sensor, long toNanos, SensorWriteBuffer out) {
+        out.clear();
+        int wanted = out.capacity();
+        if (wanted == 0) {
+            return 0;
+        }
+        SensorWriteBuffer page = null;
+        long after = findLatestStart(sensor, toNanos, wanted);
+        while (true) {
+            long last = after;
+            while (true) {
+                if (!out.isFull()) {
+                    if (readRaw(sensor, last, toNanos, out) == 0) {
+                        break;
+                    }
+                } else {
+                    // Slide the window: keep the newest rows of what was read plus this page
+                    if (page == null) {
+                        page = new SensorWriteBuffer(Math.min(wanted, LATEST_PAGE_ROWS));
+                    }
+                    page.clear();
+                    int rows = readRaw(sensor, last, toNanos, page);
+                    if (rows == 0) {
+                        break;
+                    }
+                    out.removeFirst(rows);
+                    for (int i = 0; i < rows; i++) {
+                        out.add(sensor, page.getTimestamp(i), page.getX(i), page.getY(i), page.getZ(i),
+                                page.getAccuracy(i));
+                    }
+                }
+                last = out.getTimestamp(out.size() - 1);
+            }
+            if (out.isFull() || after == Long.MIN_VALUE) {
+                return out.size();
+            }
+            // Rollups may count rows that are gone, e.g. out-of-order rows counted by older
+            // versions; look further back
+            long span = toNanos - after;
+            after = span < Long.MAX_VALUE / 4 ? toNanos - 2 * span : Long.MIN_VALUE;
+            out.clear();
+        }
     }
-    // Add methods for other sensor tables (Proximity, Accelerometer, Gyroscope) similarly...
 
-    public static class SensorData {
-        private long timestamp;
-        private float value;
+    // Walks the 1 s rollup newest first until it has counted enough rows
+    private long findLatestStart(int sensor, long toNanos, int rows) {
+        long width = ROLLUP_RESOLUTIONS_NANOS[0];
+        long counted = 0;
+        long before = toNanos;
+        while (true) {
+            Cursor cursor = getReadableDatabase().rawQuery(LATEST_BUCKETS_SQL,
+                    new String[]{Integer.toString(sensor), Long.toString(before)});
+            try {
+                while (cursor.moveToNext()) {
+                    long bucket = cursor.getLong(0);
+                    // The bucket holding toNanos may also count rows after it
+                    if (bucket <= toNanos - width) {
+                        counted += cursor.getLong(1);
+                        if (counted >= rows) {
+                            return bucket - 1;
+                        }
+                    }
+                    before = bucket - 1;
+                }
+                if (cursor.getCount() < LATEST_BUCKETS_PER_QUERY) {
+                    return Long.MIN_VALUE;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
 
-        public SensorData(long timestamp, float value) {
-            this.timestamp = timestamp;
-            this.value = value;
+    /**
+     * Fills {@code out} with statistics of the rows with {@code afterNanos < timestamp <= toNanos}.
+     *
+     * The window is split so whole hours, then whole minutes, then whole seconds come from the
+     * rollups and only the part under a second at either end is read raw. The cost therefore
+     * hardly depends on the window's length. Rollups outlive raw rows, so old windows still
+     * aggregate, at one second's precision at the ends.
+     */
+    public void aggregate(int sensor, long afterNanos, long toNanos, SensorAggregate out) {
+        out.reset();
+        if (afterNanos >= toNanos) {
+            return;
         }
+        long start = System.nanoTime();
+        // Buckets are half-open [start, end), the API (after, to]
+        long end = toNanos == Long.MAX_VALUE ? toNanos : toNanos + 1;
+        SensorWriteBuffer page = new SensorWriteBuffer(AGGREGATE_PAGE_ROWS);
+        aggregateRange(sensor, afterNanos + 1, end, ROLLUP_TABLES.length - 1, out, page);
+        metrics.getQuery().record(System.nanoTime() - start);
+    }
 
-        public long getTimestamp() {
-            return timestamp;
+    // Covers [start, end) with the buckets of resolution and finer, raw rows below that
+    private void aggregateRange(int sensor, long start, long end, int resolution, SensorAggregate out,
+                                SensorWriteBuffer page) {
+        if (start >= end) {
+            return;
         }
+        if (resolution < 0) {
+            long after = start - 1;
+            while (true) {
+                page.clear();
+                int rows = readRaw(sensor, after, end - 1, page);
+                if (rows == 0) {
+                    return;
+                }
+                for (int i = 0; i < rows; i++) {
+                    out.add(page.getX(i), page.getY(i), page.getZ(i));
+                }
+                after = page.getTimestamp(rows - 1);
+            }
+        }
+        long width = ROLLUP_RESOLUTIONS_NANOS[resolution];
+        long first = alignUp(start, width);
+        long last = end - Math.floorMod(end, width);
+        if (first >= last) {
+            aggregateRange(sensor, start, end, resolution - 1, out, page);
+            return;
+        }
+        aggregateRange(sensor, start, first, resolution - 1, out, page);
+        Cursor cursor = getReadableDatabase().rawQuery(ROLLUP_AGGREGATE_SQL[resolution],
+                new String[]{Integer.toString(sensor), Long.toString(first), Long.toString(last)});
+        try {
+            if (cursor.moveToFirst()) {
+                out.addCount(cursor.getLong(0));
+                for (int axis = 0; axis < AXIS_COLUMNS.length; axis++) {
+                    int column = 1 + axis * 5;
+                    long count = cursor.getLong(column);
+                    if (count > 0) {
+                        out.merge(axis, count, cursor.getFloat(column + 1), cursor.getFloat(column + 2),
+                                cursor.getDouble(column + 3), cursor.getDouble(column + 4));
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        aggregateRange(sensor, last, end, resolution - 1, out, page);
+    }
 
-        public float getValue() {
+    // Smallest multiple of width at or after value, saturating at Long.MAX_VALUE
+    private static long alignUp(long value, long width) {
+        long remainder = Math.floorMod(value, width);
+        if (remainder == 0) {
             return value;
         }
+        return value - remainder > Long.MAX_VALUE - width ? Long.MAX_VALUE : value - remainder + width;
+    }
+
+    /**
+     * Number of float columns per row of {@link #readAligned}: the axes of every sensor.
+     */
+    public static int getAlignedColumnCount(int[] sensors) {
+        int columns = 0;
+        for (int sensor : sensors) {
+            columns += getAxisCount(sensor);
+        }
+        return columns;
+    }
+
+    /**
+     * Joins several channels on a common time grid: row {@code k} is at
+     * {@code fromNanos + k * stepNanos} and holds, for each sensor in turn, its axes from the
+     * newest sample at or before that time. Axes are NaN where that sample is older than
+     * {@code maxAgeNanos} or there is none. Values go row by row into {@code values}, with
+     * {@link #getAlignedColumnCount} floats per row.
+     *
+     * Rows stop at {@code toNanos} or when either array is full; callers page through long
+     * ranges by starting the next call one step after the last row returned.
+     *
+     * @return number of rows filled
+     */
+    public int readAligned(int[] sensors, long fromNanos, long toNanos, long stepNanos, long maxAgeNanos,
+                           long[] timestamps, float[] values) {
+        long start = System.nanoTime();
+        int rows = readAlignedRows(sensors, fromNanos, toNanos, stepNanos, maxAgeNanos, timestamps, values);
+        metrics.getQuery().record(System.nanoTime() - start);
+        return rows;
+    }
+
+    private int readAlignedRows(int[] sensors, long fromNanos, long toNanos, long stepNanos, long maxAgeNanos,
+                                long[] timestamps, float[] values) {
+        int columns = getAlignedColumnCount(sensors);
+        if (toNanos < fromNanos || stepNanos <= 0 || columns == 0) {
+            return 0;
+        }
+        long gridRows = (toNanos - fromNanos) / stepNanos + 1;
+        int rows = (int) Math.min(gridRows, Math.min(timestamps.length, values.length / columns));
+        if (rows == 0) {
+            return 0;
+        }
+        long gridEnd = fromNanos + (rows - 1) * stepNanos;
+        for (int row = 0; row < rows; row++) {
+            timestamps[row] = fromNanos + row * stepNanos;
+        }
+
+        SensorWriteBuffer page = new SensorWriteBuffer(ALIGNED_PAGE_ROWS);
+        int column = 0;
+        for (int sensor : sensors) {
+            int axisCount = getAxisCount(sensor);
+            // Samples older than maxAgeNanos before the first row would never be used
+            long after = fromNanos - maxAgeNanos - 1;
+            if (after > fromNanos) {
+                after = Long.MIN_VALUE;
+            }
+            page.clear();
+            int next = 0;
+            boolean exhausted = false;
+            boolean held = false;
+            long heldTimestamp = 0;
+            float heldX = 0;
+            float heldY = 0;
+            float heldZ = 0;
+            for (int row = 0; row < rows; row++) {
+                long time = timestamps[row];
+                while (true) {
+                    if (next == page.size()) {
+                        if (exhausted) {
+                            break;
+                        }
+                        page.clear();
+                        next = 0;
+                        int read = readRaw(sensor, after, gridEnd, page);
+                        if (read == 0) {
+                            exhausted = true;
+                            break;
+                        }
+                        after = page.getTimestamp(read - 1);
+                    }
+                    if (page.getTimestamp(next) > time) {
+                        break;
+                    }
+                    held = true;
+                    heldTimestamp = page.getTimestamp(next);
+                    heldX = page.getX(next);
+                    heldY = page.getY(next);
+                    heldZ = page.getZ(next);
+                    next++;
+                }
+                boolean fresh = held && time - heldTimestamp <= maxAgeNanos;
+                int offset = row * columns + column;
+                values[offset] = fresh ? heldX : Float.NaN;
+                if (axisCount > 1) {
+                    values[offset + 1] = fresh ? heldY : Float.NaN;
+                }
+                if (axisCount > 2) {
+                    values[offset + 2] = fresh ? heldZ : Float.NaN;
+                }
+            }
+            column += axisCount;
+        }
+        return rows;
+    }
+
+    // Retention and maintenance, only called on the writer thread
+
+    /**
+     * Deletes the oldest raw rows older than {@code cutoffNanos}, about {@code limit} at a time.
+     *
+     * @return number of rows deleted; at least {@code limit} if there may be more
+     */
+    synchronized int deleteRawBefore(int sensor, long cutoffNanos, int limit) {
+        int deleted = sqliteStore.deleteBefore(sensor, cutoffNanos, limit);
+        if (stores[sensor] != sqliteStore && deleted < limit) {
+            deleted += stores[sensor].deleteBefore(sensor, cutoffNanos, limit);
+        }
+        if (deleted < limit) {
+            deleted += deleteRateChangesBefore(sensor, cutoffNanos);
+        }
+        return deleted;
+    }
+
+    // Keeps the last change before the cutoff, which gives the rate of the oldest raw rows left
+    private int deleteRateChangesBefore(int sensor, long cutoffNanos) {
+        if (deleteRateChangesStatement == null) {
+            deleteRateChangesStatement = getWritableDatabase().compileStatement("DELETE FROM "
+                    + RATE_CHANGES_TABLE + " WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_TIMESTAMP
+                    + " < (SELECT MAX(" + COLUMN_TIMESTAMP + ") FROM " + RATE_CHANGES_TABLE
+                    + " WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_TIMESTAMP + " < ?)");
+        }
+        deleteRateChangesStatement.bindLong(1, sensor);
+        deleteRateChangesStatement.bindLong(2, sensor);
+        deleteRateChangesStatement.bindLong(3, cutoffNanos);
+        return deleteRateChangesStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Deletes up to {@code limit} of the oldest rollup buckets older than {@code cutoffNanos}.
+     *
+     * @return number of rows deleted
+     */
+    synchronized int deleteRollupBefore(int sensor, int resolution, long cutoffNanos, int limit) {
+        SQLiteStatement statement = deleteRollupStatements[resolution];
+        if (statement == null) {
+            String table = ROLLUP_TABLES[resolution];
+            statement = getWritableDatabase().compileStatement("DELETE FROM " + table
+                    + " WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_BUCKET + " IN (SELECT " + COLUMN_BUCKET
+                    + " FROM " + table + " WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_BUCKET + " < ?"
+                    + " ORDER BY " + COLUMN_BUCKET + " LIMIT ?)");
+            deleteRollupStatements[resolution] = statement;
+        }
+        statement.bindLong(1, sensor);
+        statement.bindLong(2, sensor);
+        statement.bindLong(3, cutoffNanos);
+        statement.bindLong(4, limit);
+        return statement.executeUpdateDelete();
+    }
+
+    /**
+     * Deletes up to {@code limit} of the oldest feature windows that started before
+     * {@code cutoffNanos}.
+     *
+     * @return number of rows deleted
+     */
+    synchronized int deleteFeaturesBefore(int sensor, long cutoffNanos, int limit) {
+        if (deleteFeaturesStatement == null) {
+            deleteFeaturesStatement = getWritableDatabase().compileStatement("DELETE FROM " + FEATURES_TABLE
+                    + " WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_TIMESTAMP + " IN (SELECT " + COLUMN_TIMESTAMP
+                    + " FROM " + FEATURES_TABLE + " WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_TIMESTAMP + " < ?"
+                    + " ORDER BY " + COLUMN_TIMESTAMP + " LIMIT ?)");
+        }
+        deleteFeaturesStatement.bindLong(1, sensor);
+        deleteFeaturesStatement.bindLong(2, sensor);
+        deleteFeaturesStatement.bindLong(3, cutoffNanos);
+        deleteFeaturesStatement.bindLong(4, limit);
+        return deleteFeaturesStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Returns up to {@code pages} free pages to the file system.
+     *
+     * @return free pages still left in the file
+     */
+    synchronized long incrementalVacuum(int pages) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (queryLong(db, "PRAGMA auto_vacuum") != 2) {
+            // Files created before version 3 need one full VACUUM to switch to incremental mode
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            releaseStatements();
+        }
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + pages + ")", null);
+        try {
+            // Stepping the cursor is what runs the pragma
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+        return queryLong(db, "PRAGMA freelist_count");
+    }
+
+    /**
+     * Moves the WAL contents into the database file and truncates the WAL, if the tuning asks
+     * for it. Frames a reader still needs are left for the next maintenance cycle.
+     */
+    synchronized void checkpointWal() {
+        SqliteTuning current = getTuning();
+        if (!current.isWriteAheadLogging() || !current.isTruncateWalWhenIdle()) {
+            return;
+        }
+        Cursor cursor = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Size of the append-only log files in bytes.
+     */
+    public long getLogSizeBytes() {
+        return logStore.getSizeBytes();
+    }
+
+    /**
+     * Size of the database file in bytes, including free pages not yet vacuumed.
+     */
+    public long getDatabaseSizeBytes() {
+        SQLiteDatabase db = getReadableDatabase();
+        return queryLong(db, "PRAGMA page_count") * queryLong(db, "PRAGMA page_size");
+    }
+
+    private static long queryLong(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Batched writes
+
+    /**
+     * Records that a sensor's sampling period changed at {@code timestamp}, so stored rows can
+     * later be read with the rate they were captured at. The insert runs on the writer thread;
+     * this never touches SQLite itself.
+     *
+     * @param samplingPeriodUs period from this point on, or 0 while the sensor is off and waiting
+     *                         for a wake-up trigger
+     * @param active           whether the change was into the high-rate active state
+     */
+    public void logRateChange(final int sensor, final long timestamp, final int samplingPeriodUs,
+                              final boolean active) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                insertRateChange(sensor, timestamp, samplingPeriodUs, active);
+            }
+        });
+    }
+
+    private synchronized void insertRateChange(int sensor, long timestamp, int samplingPeriodUs, boolean active) {
+        if (insertRateChangeStatement == null) {
+            insertRateChangeStatement = getWritableDatabase().compileStatement("INSERT OR REPLACE INTO "
+                    + RATE_CHANGES_TABLE + " (" + COLUMN_SENSOR + ", " + COLUMN_TIMESTAMP + ", "
+                    + COLUMN_SAMPLING_PERIOD + ", " + COLUMN_ACTIVE + ") VALUES (?, ?, ?, ?)");
+        }
+        insertRateChangeStatement.bindLong(1, sensor);
+        insertRateChangeStatement.bindLong(2, timestamp);
+        insertRateChangeStatement.bindLong(3, samplingPeriodUs);
+        insertRateChangeStatement.bindLong(4, active ? 1 : 0);
+        insertRateChangeStatement.executeInsert();
+    }
+
+    /**
+     * Stores one window of derived features. Takes a copy, since extractors reuse theirs, and
+     * inserts it on the writer thread.
+     */
+    public void writeFeatures(SensorFeatures features) {
+        final SensorFeatures copy = features.copy();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                insertFeatures(copy);
+            }
+        });
+    }
+
+    private synchronized void insertFeatures(SensorFeatures features) {
+        SQLiteStatement statement = insertFeaturesStatement;
+        if (statement == null) {
+            StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO " + FEATURES_TABLE
+                    + " (" + COLUMN_SENSOR + ", " + COLUMN_TIMESTAMP);
+            for (String column : FEATURE_COLUMNS) {
+                sql.append(", ").append(column);
+            }
+            sql.append(") VALUES (?, ?");
+            for (int i = 0; i < FEATURE_COLUMNS.length; i++) {
+                sql.append(", ?");
+            }
+            statement = getWritableDatabase().compileStatement(sql.append(')').toString());
+            insertFeaturesStatement = statement;
+        }
+        statement.bindLong(1, features.sensor);
+        statement.bindLong(2, features.startTimestamp);
+        statement.bindLong(3, features.endTimestamp);
+        statement.bindLong(4, features.count);
+        bindReal(statement, 5, features.mean);
+        bindReal(statement, 6, features.stdDev);
+        bindReal(statement, 7, features.min);
+        bindReal(statement, 8, features.max);
+        bindReal(statement, 9, features.rms);
+        statement.bindLong(10, features.peakCount);
+        bindReal(statement, 11, features.dominantFrequency);
+        bindReal(statement, 12, features.dominantAmplitude);
+        statement.executeInsert();
+    }
+
+    // SQLite has no NaN, so features that were not computed are stored as NULL
+    private static void bindReal(SQLiteStatement statement, int index, double value) {
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    /**
+     * Blocks until every queued row has been written by the writer thread.
+     */
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * Writes a batch in a single transaction. Only called from the {@link SensorWriter} thread.
+     */
+    synchronized void writeBatch(SensorWriteBuffer batch) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        Arrays.fill(batchWritten, 0);
+        Arrays.fill(batchRejected, 0);
+        boolean committed = false;
+        try {
+            db.beginTransaction();
+            try {
+                appendBatch(db, batch);
+                db.setTransactionSuccessful();
+            } finally {
+                // Throws if the commit itself fails
+                db.endTransaction();
+            }
+            committed = true;
+        } finally {
+            if (committed) {
+                logStore.commit();
+            } else {
+                discardBatch();
+            }
+        }
+        recordBatch(batch);
+    }
+
+    // Runs inside the batch transaction
+    private void appendBatch(SQLiteDatabase db, SensorWriteBuffer batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            int sensor = batch.getSensor(i);
+            if (!stores[sensor].append(sensor, batch.getTimestamp(i),
+                    batch.getX(i), batch.getY(i), batch.getZ(i), batch.getAccuracy(i))) {
+                // Skipped as out of order, so it must not count in the rollups either
+                batchRejected[sensor]++;
+                continue;
+            }
+            batchWritten[sensor]++;
+            updateRollups(db, batch.getSensor(i), batch.getTimestamp(i),
+                    batch.getX(i), batch.getY(i), batch.getZ(i));
+        }
+        // Buckets left open are merged now and topped up again by later batches
+        for (int sensor = 0; sensor < CHANNEL_COUNT; sensor++) {
+            for (int r = 0; r < ROLLUP_TABLES.length; r++) {
+                mergeRollup(db, sensor, r);
+            }
+        }
+        compressedStore.commit();
+    }
+
+    // The transaction rolled back: undo what the batch did outside SQLite
+    private void discardBatch() {
+        logStore.rollback();
+        compressedStore.rollback();
+        // Every bucket is merged at the end of a batch, so they were all empty before this one
+        for (int sensor = 0; sensor < CHANNEL_COUNT; sensor++) {
+            for (int r = 0; r < ROLLUP_TABLES.length; r++) {
+                rollups[sensor][r].reset();
+            }
+        }
+    }
+
+    // Counts are only published for a committed batch; a failed one is counted by the writer
+    private void recordBatch(SensorWriteBuffer batch) {
+        long committedAt = System.currentTimeMillis() * 1000000L;
+        for (int i = 0; i < batch.size(); i++) {
+            metrics.getSensorToDisk().record(committedAt - batch.getTimestamp(i));
+        }
+        for (int sensor = 0; sensor < CHANNEL_COUNT; sensor++) {
+            metrics.onWritten(sensor, batchWritten[sensor]);
+            metrics.onRejected(sensor, batchRejected[sensor]);
+        }
+    }
+
+    private void updateRollups(SQLiteDatabase db, int sensor, long timestamp, float x, float y, float z) {
+        for (int r = 0; r < ROLLUP_TABLES.length; r++) {
+            RollupAccumulator rollup = rollups[sensor][r];
+            if (!rollup.isEmpty() && rollup.bucketOf(timestamp) != rollup.getBucket()) {
+                mergeRollup(db, sensor, r);
+            }
+            rollup.add(timestamp, x, y, z);
+        }
+    }
+
+    // Adds an accumulated bucket into its rollup row, creating the row if needed
+    private void mergeRollup(SQLiteDatabase db, int sensor, int resolution) {
+        RollupAccumulator rollup = rollups[sensor][resolution];
+        if (rollup.isEmpty()) {
+            return;
+        }
+
+        // New rows start empty (all statistics NULL); the update below fills them in
+        SQLiteStatement insert = rollupInsertStatements[resolution];
+        if (insert == null) {
+            insert = db.compileStatement("INSERT OR IGNORE INTO " + ROLLUP_TABLES[resolution]
+                    + " (" + COLUMN_SENSOR + ", " + COLUMN_BUCKET + ", " + COLUMN_COUNT + ") VALUES (?, ?, 0)");
+            rollupInsertStatements[resolution] = insert;
+        }
+        insert.bindLong(1, sensor);
+        insert.bindLong(2, rollup.getBucket());
+        insert.executeInsert();
+
+        SQLiteStatement update = rollupUpdateStatements[resolution];
+        if (update == null) {
+            // Every statistic is written as COALESCE(combined, old, new), so an axis missing
+            // on either side (NULL) keeps the other side's value instead of nulling it out
+            StringBuilder sql = new StringBuilder("UPDATE " + ROLLUP_TABLES[resolution]
+                    + " SET " + COLUMN_COUNT + " = " + COLUMN_COUNT + " + ?");
+            for (String axis : AXIS_COLUMNS) {
+                appendMerge(sql, "min_" + axis, "MIN(min_" + axis + ", ?)");
+                appendMerge(sql, "max_" + axis, "MAX(max_" + axis + ", ?)");
+                appendMerge(sql, "sum_" + axis, "sum_" + axis + " + ?");
+                appendMerge(sql, "sumsq_" + axis, "sumsq_" + axis + " + ?");
+            }
+            sql.append(" WHERE " + COLUMN_SENSOR + " = ? AND " + COLUMN_BUCKET + " = ?");
+            update = db.compileStatement(sql.toString());
+            rollupUpdateStatements[resolution] = update;
+        }
+        update.bindLong(1, rollup.getCount());
+        int index = 2;
+        for (int axis = 0; axis < AXIS_COLUMNS.length; axis++) {
+            boolean present = rollup.hasAxis(axis);
+            index = bindMerge(update, index, present, rollup.getMin(axis));
+            index = bindMerge(update, index, present, rollup.getMax(axis));
+            index = bindMerge(update, index, present, rollup.getSum(axis));
+            index = bindMerge(update, index, present, rollup.getSumOfSquares(axis));
+        }
+        update.bindLong(index, sensor);
+        update.bindLong(index + 1, rollup.getBucket());
+        update.executeUpdateDelete();
+
+        rollup.reset();
+    }
+
+    private static void appendMerge(StringBuilder sql, String column, String combined) {
+        sql.append(", ").append(column).append(" = COALESCE(").append(combined).append(", ")
+                .append(column).append(", ?)");
+    }
+
+    // Binds the two parameters written by appendMerge
+    private static int bindMerge(SQLiteStatement statement, int index, boolean present, double value) {
+        if (present) {
+            statement.bindDouble(index, value);
+            statement.bindDouble(index + 1, value);
+        } else {
+            statement.bindNull(index);
+            statement.bindNull(index + 1);
+        }
+        return index + 2;
+    }
+
+    @Override
+    public void close() {
+        flush();
+        releaseStatements();
+        logStore.close();
+        super.close();
+    }
+
+    private synchronized void releaseStatements() {
+        sqliteStore.close();
+        compressedStore.close();
+        closeStatements(rollupInsertStatements);
+        closeStatements(rollupUpdateStatements);
+        closeStatements(deleteRollupStatements);
+        if (insertRateChangeStatement != null) {
+            insertRateChangeStatement.close();
+            insertRateChangeStatement = null;
+        }
+        if (deleteRateChangesStatement != null) {
+            deleteRateChangesStatement.close();
+            deleteRateChangesStatement = null;
+        }
+        if (insertFeaturesStatement != null) {
+            insertFeaturesStatement.close();
+            insertFeaturesStatement = null;
+        }
+        if (deleteFeaturesStatement != null) {
+            deleteFeaturesStatement.close();
+            deleteFeaturesStatement = null;
+        }
+    }
+
+    private static void closeStatements(SQLiteStatement[] statements) {
+        for (int i = 0; i < statements.length; i++) {
+            if (statements[i] != null) {
+                statements[i].close();
+                statements[i] = null;
+            }
+        }
     }
 }
@@ -0,0 +1,35 @@
+package com.example.sensor_app;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link SampleSource} on a single-threaded {@link ScheduledExecutorService}, for driving
+ * synthetic and replayed sources on a plain JVM. Calls into the source must also go through
+ * the executor, since the source is only safe on its thread.
+ */
+public class ExecutorSampleScheduler implements SampleSource.Scheduler {
+    private final ScheduledExecutorService executor;
+    // The latest scheduled run of each task, for cancelling it
+    private final Map<Runnable, ScheduledFuture<?>> scheduled = new IdentityHashMap<>();
+
+    public ExecutorSampleScheduler(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void schedule(Runnable task, long delayMs) {
+        scheduled.put(task, executor.schedule(task, delayMs, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public synchronized void cancel(Runnable task) {
+        ScheduledFuture<?> future = scheduled.remove(task);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
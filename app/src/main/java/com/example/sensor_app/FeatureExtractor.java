@@ -0,0 +1,173 @@
+package com.example.sensor_app;
+
+/**
+ * Streaming feature stage for one channel, fed every stored sample on the sensor thread.
+ * Samples are grouped into fixed windows; when a window closes, its {@link RollingStats}, the
+ * number of peaks and the dominant frequency of the last {@code fftSize} samples are made
+ * available from {@link #getFeatures}. Every buffer is allocated up front, so
+ * {@link #onSample} never allocates.
+ */
+public class FeatureExtractor {
+    // A peak must clear the running mean by this many standard deviations
+    private static final float PEAK_SENSITIVITY = 2.5f;
+    // Peaks closer than this are one event; faster than anyone walks or taps
+    private static final long PEAK_REFRACTORY_MS = 250;
+
+    private final int axisCount;
+    private final long windowNanos;
+    private final SensorFeatures features = new SensorFeatures();
+    private final RollingStats stats = new RollingStats();
+    private final PeakDetector peakDetector;
+
+    // Last fftSize magnitudes and their timestamps, oldest at ringStart once full
+    private final Fft fft;
+    private final float[] ringValues;
+    private final long[] ringTimestamps;
+    private int ringStart;
+    private int ringSize;
+    private final float[] window;
+    private final float[] real;
+    private final float[] imaginary;
+    private float windowSum;
+
+    private long windowStart = Long.MIN_VALUE;
+    private long lastTimestamp;
+    private int peakCount;
+
+    /**
+     * @param fftSize       samples per FFT, a power of two, or 0 for no spectrum or peaks
+     * @param minProminence smallest rise above the running mean that counts as a peak, in the
+     *                      channel's unit
+     */
+    public FeatureExtractor(int sensor, int axisCount, long windowMs, int fftSize, float minProminence) {
+        this.axisCount = axisCount;
+        this.windowNanos = windowMs * 1000000L;
+        features.sensor = sensor;
+        if (fftSize > 0) {
+            fft = new Fft(fftSize);
+            peakDetector = new PeakDetector(PEAK_SENSITIVITY, minProminence, PEAK_REFRACTORY_MS);
+            ringValues = new float[fftSize];
+            ringTimestamps = new long[fftSize];
+            real = new float[fftSize];
+            imaginary = new float[fftSize];
+            // Hann window against leakage from the window edges
+            window = new float[fftSize];
+            for (int i = 0; i < fftSize; i++) {
+                window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (fftSize - 1)));
+                windowSum += window[i];
+            }
+        } else {
+            fft = null;
+            peakDetector = null;
+            ringValues = null;
+            ringTimestamps = null;
+            real = null;
+            imaginary = null;
+            window = null;
+        }
+    }
+
+    /**
+     * Adds a sample; axes the channel does not have are NaN.
+     *
+     * @return true if the sample closed a window, whose features are now in {@link #getFeatures}
+     */
+    public boolean onSample(long timestamp, float x, float y, float z) {
+        boolean closed = false;
+        if (windowStart != Long.MIN_VALUE && timestamp - windowStart >= windowNanos) {
+            closeWindow();
+            closed = true;
+        }
+        if (windowStart == Long.MIN_VALUE) {
+            windowStart = timestamp;
+        }
+        lastTimestamp = timestamp;
+
+        float value = axisCount == 1 ? x : (float) Math.sqrt(x * x + y * y + (axisCount > 2 ? z * z : 0));
+        stats.add(value);
+        if (fft != null) {
+            if (peakDetector.onSample(timestamp, value)) {
+                peakCount++;
+            }
+            int end = (ringStart + ringSize) % ringValues.length;
+            ringValues[end] = value;
+            ringTimestamps[end] = timestamp;
+            if (ringSize < ringValues.length) {
+                ringSize++;
+            } else {
+                ringStart = (ringStart + 1) % ringValues.length;
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Features of the window closed last. Overwritten by the next window; copy to keep.
+     */
+    public SensorFeatures getFeatures() {
+        return features;
+    }
+
+    /**
+     * Forgets the samples held for the FFT, e.g. after the sampling rate changed, so a spectrum
+     * is never computed over samples taken at different rates.
+     */
+    public void restartSpectrum() {
+        ringStart = 0;
+        ringSize = 0;
+    }
+
+    private void closeWindow() {
+        features.startTimestamp = windowStart;
+        features.endTimestamp = lastTimestamp;
+        features.count = stats.getCount();
+        features.mean = stats.getMean();
+        features.stdDev = stats.getStdDev();
+        features.min = stats.getMin();
+        features.max = stats.getMax();
+        features.rms = stats.getRms();
+        features.peakCount = fft != null ? peakCount : 0;
+        features.dominantFrequency = Float.NaN;
+        features.dominantAmplitude = Float.NaN;
+        if (fft != null && ringSize == ringValues.length) {
+            computeSpectrum();
+        }
+
+        stats.reset();
+        peakCount = 0;
+        windowStart = Long.MIN_VALUE;
+    }
+
+    private void computeSpectrum() {
+        int size = ringValues.length;
+        float mean = 0;
+        for (int i = 0; i < size; i++) {
+            mean += ringValues[i];
+        }
+        mean /= size;
+        // Unroll the ring oldest first, without the mean so the DC bin does not dominate
+        for (int i = 0; i < size; i++) {
+            real[i] = (ringValues[(ringStart + i) % size] - mean) * window[i];
+            imaginary[i] = 0;
+        }
+        fft.transform(real, imaginary);
+
+        int peakBin = 0;
+        float peakPower = 0;
+        for (int bin = 1; bin <= size / 2; bin++) {
+            float power = real[bin] * real[bin] + imaginary[bin] * imaginary[bin];
+            if (power > peakPower) {
+                peakPower = power;
+                peakBin = bin;
+            }
+        }
+        long span = ringTimestamps[(ringStart + size - 1) % size] - ringTimestamps[ringStart];
+        if (peakBin == 0 || span <= 0) {
+            return;
+        }
+        // Sensors do not sample exactly at the requested rate; use the rate actually seen
+        double sampleRate = (size - 1) * 1e9 / span;
+        features.dominantFrequency = (float) (peakBin * sampleRate / size);
+        features.dominantAmplitude = (float) (2 * Math.sqrt(peakPower) / windowSum);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.sensor_app;
+
+/**
+ * Formats floats into a caller-owned char array, so per-event UI updates do not allocate
+ * the Strings that {@code String.valueOf} or concatenation would.
+ */
+public final class FloatFormat {
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private FloatFormat() {
+    }
+
+    /**
+     * Copies {@code text} into {@code dst} at {@code offset}.
+     *
+     * @return offset just past the copied characters
+     */
+    public static int append(char[] dst, int offset, char[] text) {
+        System.arraycopy(text, 0, dst, offset, text.length);
+        return offset + text.length;
+    }
+
+    /**
+     * Writes {@code value} rounded to {@code decimals} places (at most 6) into {@code dst}.
+     *
+     * @return offset just past the written characters
+     */
+    public static int append(char[] dst, int offset, float value, int decimals) {
+        if (Float.isNaN(value)) {
+            dst[offset++] = 'N';
+            dst[offset++] = 'a';
+            dst[offset++] = 'N';
+            return offset;
+        }
+        if (value < 0) {
+            dst[offset++] = '-';
+            value = -value;
+        }
+
+        int scale = POWERS_OF_TEN[decimals];
+        long scaled = (long) ((double) value * scale + 0.5);
+        long integerPart = scaled / scale;
+        long fraction = scaled % scale;
+
+        offset = appendLong(dst, offset, integerPart);
+        if (decimals > 0) {
+            dst[offset++] = '.';
+            for (int divisor = scale / 10; divisor > 0; divisor /= 10) {
+                dst[offset++] = (char) ('0' + (fraction / divisor) % 10);
+            }
+        }
+        return offset;
+    }
+
+    private static int appendLong(char[] dst, int offset, long value) {
+        if (value == 0) {
+            dst[offset++] = '0';
+            return offset;
+        }
+        int start = offset;
+        while (value > 0) {
+            dst[offset++] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        // Digits were written least significant first
+        for (int i = start, j = offset - 1; i < j; i++, j--) {
+            char tmp = dst[i];
+            dst[i] = dst[j];
+            dst[j] = tmp;
+        }
+        return offset;
+    }
+}
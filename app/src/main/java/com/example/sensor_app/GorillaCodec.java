@@ -0,0 +1,312 @@
+package com.example.sensor_app;
+
+import java.util.Arrays;
+
+/**
+ * Bit-packed encoding of a block of samples, after Facebook's Gorilla time series format.
+ *
+ * Timestamps are stored as the change in the gap between samples (delta of delta), so a
+ * regularly sampled channel costs one bit per timestamp plus whatever the jitter needs. The
+ * first timestamp is kept by the caller. Each axis value is XORed with the previous value of
+ * that axis; an unchanged value costs one bit, and a small change only stores the bits that
+ * differ, reusing the previous leading and trailing zero counts when they still fit.
+ *
+ * Timestamp buckets are sized for nanosecond sensor timestamps, whose jitter is far larger
+ * than the millisecond series Gorilla was designed for.
+ */
+public class GorillaCodec {
+    // Signed widths of the delta of delta after the prefixes 10, 110, 1110, 11110; 11111 is raw
+    private static final int[] DOD_BITS = {12, 20, 28, 36};
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * Appends samples to a growing block. Reused for block after block through {@link #reset}.
+     */
+    public static class Encoder {
+        private final int axisCount;
+        private final BitWriter out;
+
+        private int count;
+        private long firstTimestamp;
+        private long previousTimestamp;
+        private long previousDelta;
+        private final int[] previousBits = new int[3];
+        private final int[] previousLeading = new int[3];
+        private final int[] previousTrailing = new int[3];
+
+        public Encoder(int axisCount, int initialBytes) {
+            this.axisCount = axisCount;
+            out = new BitWriter(initialBytes);
+        }
+
+        public void reset() {
+            out.reset();
+            count = 0;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getFirstTimestamp() {
+            return firstTimestamp;
+        }
+
+        public long getLastTimestamp() {
+            return previousTimestamp;
+        }
+
+        public int getByteLength() {
+            return out.getByteLength();
+        }
+
+        /**
+         * Copy of the encoded bytes, trimmed to length.
+         */
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        /**
+         * Adds a sample; timestamps must increase. Only the first {@code axisCount} axes are kept.
+         */
+        public void add(long timestamp, float x, float y, float z) {
+            if (count == 0) {
+                firstTimestamp = timestamp;
+                previousTimestamp = timestamp;
+                previousDelta = 0;
+            } else {
+                long delta = timestamp - previousTimestamp;
+                writeDeltaOfDelta(delta - previousDelta);
+                previousTimestamp = timestamp;
+                previousDelta = delta;
+            }
+            writeValue(0, x);
+            if (axisCount > 1) {
+                writeValue(1, y);
+            }
+            if (axisCount > 2) {
+                writeValue(2, z);
+            }
+            count++;
+        }
+
+        private void writeDeltaOfDelta(long dod) {
+            if (dod == 0) {
+                out.writeBits(0, 1);
+                return;
+            }
+            for (int i = 0; i < DOD_BITS.length; i++) {
+                int bits = DOD_BITS[i];
+                long bound = 1L << (bits - 1);
+                if (dod >= -bound && dod < bound) {
+                    // i + 1 one bits and a terminating zero
+                    out.writeBits((1L << (i + 2)) - 2, i + 2);
+                    out.writeBits(dod, bits);
+                    return;
+                }
+            }
+            out.writeBits(0x1f, 5);
+            out.writeBits(dod, 64);
+        }
+
+        private void writeValue(int axis, float value) {
+            int bits = Float.floatToRawIntBits(value);
+            if (count == 0) {
+                out.writeBits(bits, 32);
+                previousBits[axis] = bits;
+                previousLeading[axis] = -1;
+                return;
+            }
+            int xor = bits ^ previousBits[axis];
+            previousBits[axis] = bits;
+            if (xor == 0) {
+                out.writeBits(0, 1);
+                return;
+            }
+            int leading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+            int trailing = Integer.numberOfTrailingZeros(xor);
+            if (previousLeading[axis] >= 0 && leading >= previousLeading[axis]
+                    && trailing >= previousTrailing[axis]) {
+                // Fits in the previous window of meaningful bits
+                out.writeBits(2, 2);
+                out.writeBits(xor >>> previousTrailing[axis], 32 - previousLeading[axis] - previousTrailing[axis]);
+                return;
+            }
+            int meaningful = 32 - leading - trailing;
+            out.writeBits(3, 2);
+            out.writeBits(leading, 5);
+            out.writeBits(meaningful - 1, 5);
+            out.writeBits(xor >>> trailing, meaningful);
+            previousLeading[axis] = leading;
+            previousTrailing[axis] = trailing;
+        }
+    }
+
+    /**
+     * Reads a block back one sample at a time, so a reader can stop as soon as it has what it
+     * needs. Reusable through {@link #reset}.
+     */
+    public static class Decoder {
+        private final int axisCount;
+        private final BitReader in = new BitReader();
+
+        private int remaining;
+        private boolean first;
+        private long timestamp;
+        private long previousDelta;
+        private final int[] previousBits = new int[3];
+        private final int[] previousLeading = new int[3];
+        private final int[] previousTrailing = new int[3];
+        private final float[] values = new float[3];
+
+        public Decoder(int axisCount) {
+            this.axisCount = axisCount;
+        }
+
+        public void reset(byte[] data, int count, long firstTimestamp) {
+            in.reset(data);
+            remaining = count;
+            first = true;
+            timestamp = firstTimestamp;
+            previousDelta = 0;
+        }
+
+        /**
+         * @return false once every sample of the block has been read
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            if (!first) {
+                previousDelta += readDeltaOfDelta();
+                timestamp += previousDelta;
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                values[axis] = axis < axisCount ? readValue(axis) : Float.NaN;
+            }
+            first = false;
+            return true;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public float getX() {
+            return values[0];
+        }
+
+        public float getY() {
+            return values[1];
+        }
+
+        public float getZ() {
+            return values[2];
+        }
+
+        private long readDeltaOfDelta() {
+            int ones = 0;
+            while (ones < 5 && in.readBit()) {
+                ones++;
+            }
+            if (ones == 0) {
+                return 0;
+            }
+            int bits = ones <= DOD_BITS.length ? DOD_BITS[ones - 1] : 64;
+            long raw = in.readBits(bits);
+            // Sign-extend
+            return bits == 64 ? raw : (raw << (64 - bits)) >> (64 - bits);
+        }
+
+        private float readValue(int axis) {
+            if (first) {
+                previousBits[axis] = (int) in.readBits(32);
+                return Float.intBitsToFloat(previousBits[axis]);
+            }
+            if (in.readBit()) {
+                int leading;
+                int trailing;
+                if (in.readBit()) {
+                    leading = (int) in.readBits(5);
+                    int meaningful = (int) in.readBits(5) + 1;
+                    trailing = 32 - leading - meaningful;
+                    previousLeading[axis] = leading;
+                    previousTrailing[axis] = trailing;
+                } else {
+                    leading = previousLeading[axis];
+                    trailing = previousTrailing[axis];
+                }
+                int xor = (int) in.readBits(32 - leading - trailing) << trailing;
+                previousBits[axis] ^= xor;
+            }
+            return Float.intBitsToFloat(previousBits[axis]);
+        }
+    }
+
+    /**
+     * Big-endian bit stream into a byte array that grows as needed.
+     */
+    private static class BitWriter {
+        private byte[] buffer;
+        private long bitLength;
+
+        BitWriter(int initialBytes) {
+            buffer = new byte[Math.max(initialBytes, 16)];
+        }
+
+        void reset() {
+            Arrays.fill(buffer, 0, getByteLength(), (byte) 0);
+            bitLength = 0;
+        }
+
+        int getByteLength() {
+            return (int) ((bitLength + 7) >>> 3);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, getByteLength());
+        }
+
+        // Writes the low {@code bits} bits of {@code value}, most significant first
+        void writeBits(long value, int bits) {
+            if (((bitLength + bits + 7) >>> 3) > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2 + 8);
+            }
+            for (int i = bits - 1; i >= 0; i--) {
+                if (((value >>> i) & 1) != 0) {
+                    buffer[(int) (bitLength >>> 3)] |= (byte) (0x80 >>> (bitLength & 7));
+                }
+                bitLength++;
+            }
+        }
+    }
+
+    private static class BitReader {
+        private byte[] buffer;
+        private long position;
+
+        void reset(byte[] data) {
+            buffer = data;
+            position = 0;
+        }
+
+        boolean readBit() {
+            boolean bit = (buffer[(int) (position >>> 3)] & (0x80 >>> (position & 7))) != 0;
+            position++;
+            return bit;
+        }
+
+        long readBits(int bits) {
+            long value = 0;
+            for (int i = 0; i < bits; i++) {
+                value = (value << 1) | (readBit() ? 1 : 0);
+            }
+            return value;
+        }
+    }
+}
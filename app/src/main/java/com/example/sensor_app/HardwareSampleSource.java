@@ -0,0 +1,110 @@
+package com.example.sensor_app;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * The device's sensors, through {@link SensorManager}. Events arrive on the handler given to
+ * the constructor, and their boot-time timestamps are shifted to the epoch.
+ */
+public class HardwareSampleSource implements SampleSource, SensorEventListener2 {
+    private final SensorManager sensorManager;
+    private final SensorChannelRegistry channels;
+    private final Handler handler;
+    // Indexed by SensorChannel id; null if the device lacks that sensor
+    private final Sensor[] sensors = new Sensor[SensorChannelRegistry.getChannelCount()];
+    private final boolean[] registered = new boolean[sensors.length];
+    private Listener listener;
+
+    // SensorEvent.timestamp counts from boot; adding this gives nanoseconds since the epoch
+    private final long bootTimeOffsetNanos;
+
+    public HardwareSampleSource(Context context, Handler handler) {
+        this.handler = handler;
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        channels = SensorChannelRegistry.getInstance(context);
+        for (int i = 0; i < sensors.length; i++) {
+            sensors[i] = channels.getSensor(i);
+        }
+        bootTimeOffsetNanos = System.currentTimeMillis() * 1000000L - SystemClock.elapsedRealtimeNanos();
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean isAvailable(int channel) {
+        return sensors[channel] != null && channels.hasPermission(channel);
+    }
+
+    @Override
+    public boolean register(int channel, int samplingPeriodUs, int maxReportLatencyUs) {
+        if (!isAvailable(channel)) {
+            return false;
+        }
+        unregister(channel);
+        registered[channel] = sensorManager.registerListener(this, sensors[channel], samplingPeriodUs,
+                maxReportLatencyUs, handler);
+        return registered[channel];
+    }
+
+    @Override
+    public void unregister(int channel) {
+        if (registered[channel]) {
+            sensorManager.unregisterListener(this, sensors[channel]);
+            registered[channel] = false;
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        for (boolean isRegistered : registered) {
+            if (isRegistered) {
+                return sensorManager.flush(this);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getTimeNanos() {
+        return SystemClock.elapsedRealtimeNanos() + bootTimeOffsetNanos;
+    }
+
+    @Override
+    public void close() {
+        sensorManager.unregisterListener(this);
+        for (int i = 0; i < registered.length; i++) {
+            registered[i] = false;
+        }
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        SensorChannel channel = channels.getChannelForType(event.sensor.getType());
+        if (channel != null && listener != null) {
+            // Keep the sensor's own timestamp, shifted from boot time to wall-clock time
+            listener.onSample(channel.getId(), event.timestamp + bootTimeOffsetNanos, event.values, event.accuracy);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+    }
+
+    @Override
+    public void onFlushCompleted(Sensor sensor) {
+        SensorChannel channel = channels.getChannelForType(sensor.getType());
+        if (channel != null && listener != null) {
+            listener.onFlushCompleted(channel.getId());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.sensor_app;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest sample of every channel, shared between the sensor thread and the UI without locks.
+ *
+ * Each channel has one slot guarded by a sequence number (a seqlock): the writer makes the
+ * sequence odd, writes the fields and makes it even again; a reader retries if the sequence
+ * was odd or changed while it copied the fields. All slot fields live in an
+ * {@link AtomicLongArray}, so every access is a volatile access and the protocol holds under
+ * the Java memory model. Slots are a cache line apart so channels do not share lines.
+ *
+ * Each channel must have a single writing thread. Any number of threads may read.
+ */
+public class LatestSampleStore {
+    // Package-private so tests can hold a slot mid-write
+    static final int SEQUENCE = 0;
+    private static final int TIMESTAMP = 1;
+    private static final int XY = 2;
+    private static final int Z_ACCURACY = 3;
+    // 8 longs = 64 bytes per slot
+    static final int SLOT_LONGS = 8;
+
+    private static final LatestSampleStore INSTANCE =
+            new LatestSampleStore(SensorChannelRegistry.getChannelCount());
+
+    private final AtomicLongArray slots;
+
+    /**
+     * Reusable copy of one slot, filled by {@link #read}.
+     */
+    public static class Sample {
+        public long sequence;
+        public long timestamp;
+        public float x;
+        public float y;
+        public float z;
+        public int accuracy;
+    }
+
+    public static LatestSampleStore getInstance() {
+        return INSTANCE;
+    }
+
+    public LatestSampleStore(int channelCount) {
+        this(new AtomicLongArray(channelCount * SLOT_LONGS));
+    }
+
+    // For tests, which reach into the slots to stage a write in progress
+    LatestSampleStore(AtomicLongArray slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * Replaces a channel's latest sample. Only one thread may publish to a given channel.
+     */
+    public void publish(int channel, long timestamp, float x, float y, float z, int accuracy) {
+        int base = channel * SLOT_LONGS;
+        long sequence = slots.get(base + SEQUENCE);
+        slots.set(base + SEQUENCE, sequence + 1);
+        slots.set(base + TIMESTAMP, timestamp);
+        slots.set(base + XY, ((long) Float.floatToRawIntBits(x) << 32) | (Float.floatToRawIntBits(y) & 0xffffffffL));
+        slots.set(base + Z_ACCURACY, ((long) Float.floatToRawIntBits(z) << 32) | (accuracy & 0xffffffffL));
+        slots.set(base + SEQUENCE, sequence + 2);
+    }
+
+    /**
+     * Publishes a full sensor vector; axes the channel does not have are stored as NaN.
+     */
+    public void publish(int channel, long timestamp, float[] values, int accuracy) {
+        int axes = Math.min(DatabaseHelper.getAxisCount(channel), values.length);
+        publish(channel, timestamp,
+                values[0],
+                axes > 1 ? values[1] : Float.NaN,
+                axes > 2 ? values[2] : Float.NaN,
+                accuracy);
+    }
+
+    /**
+     * Number of samples published for a channel so far, times two. Cheap enough to poll every
+     * frame to see whether anything changed.
+     */
+    public long getSequence(int channel) {
+        return slots.get(channel * SLOT_LONGS + SEQUENCE);
+    }
+
+    /**
+     * Copies a channel's latest sample into {@code out}.
+     *
+     * @return false if nothing has been published for the channel yet
+     */
+    public boolean read(int channel, Sample out) {
+        int base = channel * SLOT_LONGS;
+        while (true) {
+            long before = slots.get(base + SEQUENCE);
+            if (before == 0) {
+                return false;
+            }
+            if ((before & 1) != 0) {
+                // Write in progress; it is only a few stores long
+                continue;
+            }
+            long timestamp = slots.get(base + TIMESTAMP);
+            long xy = slots.get(base + XY);
+            long zAccuracy = slots.get(base + Z_ACCURACY);
+            if (slots.get(base + SEQUENCE) == before) {
+                out.sequence = before;
+                out.timestamp = timestamp;
+                out.x = Float.intBitsToFloat((int) (xy >>> 32));
+                out.y = Float.intBitsToFloat((int) xy);
+                out.z = Float.intBitsToFloat((int) (zAccuracy >>> 32));
+                out.accuracy = (int) zAccuracy;
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,629 @@
+package com.example.sensor_app;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Raw rows as fixed-width records in segmented append-only files, one directory per channel.
+ * A sample record is the timestamp delta from the previous sample (int nanoseconds) followed
+ * by the channel's axis floats: 16 bytes for a 3-axis sample, with no B-tree or per-row
+ * overhead.
+ *
+ * A negative delta marks a record of the same width that holds an int instead of a sample:
+ * {@link #GAP_RECORD} adds whole seconds to the time, for gaps that do not fit in an int, and
+ * {@link #ACCURACY_RECORD} changes the accuracy of the samples after it. Slow and on-change
+ * channels therefore share segments like any other, however long they pause.
+ *
+ * Each segment starts with a header holding the timestamp of its first record and the
+ * accuracy in effect at its start. A new segment is started when the segment reaches its size
+ * limit, {@link #SEGMENT_BYTES} by default. Segments are named after their first timestamp, so
+ * finding the segments for a time range only needs the file names. Within a segment a sparse
+ * index of the time and accuracy before every {@link #INDEX_INTERVAL}th record narrows range
+ * reads to a short scan.
+ *
+ * Records must arrive in time order per channel; anything at or before the last stored
+ * timestamp is dropped. Data is handed to the OS on every commit and forced to disk when a
+ * segment is closed. A rollback truncates the files back to the last commit.
+ */
+public class LogSensorStore implements SensorStore {
+    private static final String TAG = "LogSensorStore";
+
+    private static final int MAGIC = 0x534c4f47; // "SLOG"
+    // Version 1 segments never hold meta records, so they read as version 2
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final int INDEX_INTERVAL = 256;
+    private static final int STAGING_BYTES = 64 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Deltas of meta records; sample deltas are never negative
+    private static final int GAP_RECORD = -1;
+    private static final int ACCURACY_RECORD = -2;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final ChannelLog[] logs;
+
+    /**
+     * @param directory parent directory; each channel gets a subdirectory named after its table
+     */
+    public LogSensorStore(File directory, int channelCount) {
+        this(directory, channelCount, SEGMENT_BYTES);
+    }
+
+    // Smaller segments let tests cover rollover
+    LogSensorStore(File directory, int channelCount, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        logs = new ChannelLog[channelCount];
+    }
+
+    private synchronized ChannelLog getLog(int sensor) {
+        ChannelLog log = logs[sensor];
+        if (log == null) {
+            SensorChannel channel = SensorChannelRegistry.getChannel(sensor);
+            log = new ChannelLog(sensor, new File(directory, channel.getTableName()), channel.getAxisCount(),
+                    segmentBytes);
+            logs[sensor] = log;
+        }
+        return log;
+    }
+
+    @Override
+    public boolean append(int sensor, long timestamp, float x, float y, float z, int accuracy) {
+        return getLog(sensor).append(timestamp, x, y, z, accuracy);
+    }
+
+    @Override
+    public void commit() {
+        for (ChannelLog log : snapshotLogs()) {
+            log.commit();
+        }
+    }
+
+    @Override
+    public void rollback() {
+        for (ChannelLog log : snapshotLogs()) {
+            log.rollback();
+        }
+    }
+
+    @Override
+    public int readRange(int sensor, long afterNanos, long toNanos, SensorWriteBuffer out) {
+        return getLog(sensor).readRange(afterNanos, toNanos, out);
+    }
+
+    @Override
+    public long getFirstTimestamp(int sensor) {
+        return getLog(sensor).getFirstTimestamp();
+    }
+
+    @Override
+    public int deleteBefore(int sensor, long cutoffNanos, int limit) {
+        return getLog(sensor).deleteBefore(cutoffNanos, limit);
+    }
+
+    @Override
+    public long getSizeBytes() {
+        long bytes = 0;
+        for (int sensor = 0; sensor < logs.length; sensor++) {
+            if (SensorChannelRegistry.getChannel(sensor).getStorageEngine() == StorageEngine.LOG) {
+                bytes += getLog(sensor).getSizeBytes();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        for (ChannelLog log : snapshotLogs()) {
+            log.close();
+        }
+    }
+
+    private synchronized ChannelLog[] snapshotLogs() {
+        List<ChannelLog> open = new ArrayList<>(logs.length);
+        for (ChannelLog log : logs) {
+            if (log != null) {
+                open.add(log);
+            }
+        }
+        return open.toArray(new ChannelLog[0]);
+    }
+
+    /**
+     * Segments of one channel. The writer thread appends while readers scan, so every method
+     * holds the log's lock; appends only copy into the staging buffer.
+     */
+    private static class ChannelLog {
+        private final int sensor;
+        private final File directory;
+        private final int axisCount;
+        private final int recordBytes;
+        private final int segmentBytes;
+
+        private final ArrayList<Segment> segments = new ArrayList<>();
+        // Segment being appended to, always the last one; null until the first append
+        private Segment active;
+        private long lastTimestamp = Long.MIN_VALUE;
+        // Accuracy of the last record appended to the active segment
+        private int lastAccuracy;
+        private final ByteBuffer staging;
+        private final ByteBuffer readBuffer;
+        private long droppedCount;
+
+        // State as of the last commit, restored by rollback
+        private int committedSegmentCount;
+        private Segment committedActive;
+        private long committedSizeBytes;
+        private int committedRecordCount;
+        private int committedIndexSize;
+        private long committedLastTimestamp = Long.MIN_VALUE;
+        private int committedLastAccuracy;
+
+        ChannelLog(int sensor, File directory, int axisCount, int segmentBytes) {
+            this.sensor = sensor;
+            this.directory = directory;
+            this.axisCount = axisCount;
+            this.recordBytes = 4 + 4 * axisCount;
+            this.segmentBytes = segmentBytes;
+            staging = ByteBuffer.allocateDirect(STAGING_BYTES - STAGING_BYTES % recordBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readBuffer = ByteBuffer.allocateDirect(recordBytes * INDEX_INTERVAL).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.e(TAG, "Cannot create " + directory);
+            }
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    if (name.endsWith(SEGMENT_SUFFIX)) {
+                        try {
+                            long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                            segments.add(new Segment(file, base));
+                        } catch (NumberFormatException e) {
+                            Log.w(TAG, "Ignoring " + file);
+                        }
+                    }
+                }
+            }
+            Collections.sort(segments);
+            committedSegmentCount = segments.size();
+        }
+
+        synchronized boolean append(long timestamp, float x, float y, float z, int accuracy) {
+            if (active == null && lastTimestamp == Long.MIN_VALUE && !segments.isEmpty()) {
+                // Resume after the newest record already on disk
+                Segment last = segments.get(segments.size() - 1);
+                try {
+                    last.open(recordBytes);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to read " + last.file, e);
+                }
+                lastTimestamp = last.lastTimestamp;
+            }
+            if (timestamp <= lastTimestamp) {
+                droppedCount++;
+                if (Long.bitCount(droppedCount) == 1) {
+                    Log.w(TAG, "Dropped " + droppedCount + " out-of-order samples for sensor " + sensor);
+                }
+                return false;
+            }
+            // Room for the sample plus an accuracy change and a gap record
+            if (active == null || active.sizeBytes + staging.position() + 3 * recordBytes > segmentBytes) {
+                startSegment(timestamp, accuracy);
+            }
+            if (accuracy != lastAccuracy) {
+                putMetaRecord(ACCURACY_RECORD, accuracy);
+                lastAccuracy = accuracy;
+            }
+            long delta = timestamp - lastTimestamp;
+            while (delta > Integer.MAX_VALUE) {
+                int seconds = (int) Math.min(delta / NANOS_PER_SECOND, Integer.MAX_VALUE);
+                putMetaRecord(GAP_RECORD, seconds);
+                lastTimestamp += seconds * NANOS_PER_SECOND;
+                delta -= seconds * NANOS_PER_SECOND;
+            }
+
+            startRecord();
+            staging.putInt((int) delta);
+            staging.putFloat(x);
+            if (axisCount > 1) {
+                staging.putFloat(y);
+            }
+            if (axisCount > 2) {
+                staging.putFloat(z);
+            }
+            lastTimestamp = timestamp;
+            return true;
+        }
+
+        // Makes room for a record in the staging buffer and indexes it if it starts an interval
+        private void startRecord() {
+            if (staging.remaining() < recordBytes) {
+                writeStaging();
+            }
+            int record = active.recordCount++;
+            if (record % INDEX_INTERVAL == 0) {
+                active.addIndex(lastTimestamp, lastAccuracy);
+            }
+        }
+
+        // A record holding one int instead of a sample, padded to the record width
+        private void putMetaRecord(int type, int value) {
+            startRecord();
+            staging.putInt(type);
+            staging.putInt(value);
+            for (int i = 1; i < axisCount; i++) {
+                staging.putInt(0);
+            }
+        }
+
+        synchronized void commit() {
+            if (active != null) {
+                writeStaging();
+                committedSizeBytes = active.sizeBytes;
+                committedRecordCount = active.recordCount;
+                committedIndexSize = active.indexSize;
+            }
+            committedSegmentCount = segments.size();
+            committedActive = active;
+            committedLastTimestamp = lastTimestamp;
+            committedLastAccuracy = lastAccuracy;
+        }
+
+        // Deletes segments started since the last commit and truncates the one active then
+        synchronized void rollback() {
+            staging.clear();
+            while (segments.size() > committedSegmentCount) {
+                Segment segment = segments.remove(segments.size() - 1);
+                segment.close();
+                if (!segment.file.delete()) {
+                    Log.w(TAG, "Cannot delete " + segment.file);
+                }
+            }
+            active = committedActive;
+            if (active != null) {
+                try {
+                    if (active.channel != null) {
+                        active.channel.truncate(committedSizeBytes);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to truncate " + active.file, e);
+                }
+                active.sizeBytes = committedSizeBytes;
+                active.recordCount = committedRecordCount;
+                active.indexSize = committedIndexSize;
+            }
+            lastTimestamp = committedLastTimestamp;
+            lastAccuracy = committedLastAccuracy;
+        }
+
+        private void startSegment(long timestamp, int accuracy) {
+            if (active != null) {
+                writeStaging();
+                active.seal();
+            }
+            Segment segment = new Segment(new File(directory, timestamp + SEGMENT_SUFFIX), timestamp);
+            try {
+                segment.create(axisCount, accuracy);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot create " + segment.file, e);
+            }
+            segments.add(segment);
+            active = segment;
+            // The first record's delta is 0 from the base timestamp
+            lastTimestamp = timestamp;
+            lastAccuracy = accuracy;
+        }
+
+        private void writeStaging() {
+            staging.flip();
+            try {
+                if (active.channel != null) {
+                    while (staging.hasRemaining()) {
+                        active.sizeBytes += active.channel.write(staging);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to append to " + active.file, e);
+            } finally {
+                staging.clear();
+            }
+        }
+
+        synchronized int readRange(long afterNanos, long toNanos, SensorWriteBuffer out) {
+            int added = 0;
+            for (int i = 0; i < segments.size() && !out.isFull(); i++) {
+                Segment segment = segments.get(i);
+                if (segment.baseTimestamp > toNanos) {
+                    break;
+                }
+                // Every record in a segment is older than the next segment's first one
+                if (i + 1 < segments.size() && segments.get(i + 1).baseTimestamp <= afterNanos + 1) {
+                    continue;
+                }
+                try {
+                    added += readSegment(segment, afterNanos, toNanos, out);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to read " + segment.file, e);
+                }
+            }
+            return added;
+        }
+
+        private int readSegment(Segment segment, long afterNanos, long toNanos, SensorWriteBuffer out)
+                throws IOException {
+            if (!segment.open(recordBytes)) {
+                return 0;
+            }
+            // Written records only; staged ones are not in the file yet
+            int recordCount = (int) ((segment.sizeBytes - HEADER_BYTES) / recordBytes);
+            int index = segment.findIndex(afterNanos);
+            int record = index * INDEX_INTERVAL;
+            // The state before the indexed record is known; every record after applies to it
+            long timestamp = segment.indexTimestamps[index];
+            int accuracy = segment.indexAccuracies[index];
+            int added = 0;
+
+            while (record < recordCount) {
+                int count = Math.min(INDEX_INTERVAL, recordCount - record);
+                readRecords(segment.channel, readBuffer, record, count, recordBytes);
+
+                for (int i = 0; i < count && readBuffer.remaining() >= recordBytes; i++) {
+                    int start = readBuffer.position();
+                    int delta = readBuffer.getInt();
+                    if (delta < 0) {
+                        int value = readBuffer.getInt();
+                        if (delta == GAP_RECORD) {
+                            timestamp += value * NANOS_PER_SECOND;
+                        } else if (delta == ACCURACY_RECORD) {
+                            accuracy = value;
+                        }
+                        readBuffer.position(start + recordBytes);
+                        continue;
+                    }
+                    timestamp += delta;
+                    float x = readBuffer.getFloat();
+                    float y = axisCount > 1 ? readBuffer.getFloat() : Float.NaN;
+                    float z = axisCount > 2 ? readBuffer.getFloat() : Float.NaN;
+                    if (timestamp > toNanos) {
+                        return added;
+                    }
+                    if (timestamp > afterNanos) {
+                        out.add(sensor, timestamp, x, y, z, accuracy);
+                        added++;
+                        if (out.isFull()) {
+                            return added;
+                        }
+                    }
+                }
+                record += count;
+            }
+            return added;
+        }
+
+        synchronized long getFirstTimestamp() {
+            return segments.isEmpty() ? Long.MAX_VALUE : segments.get(0).baseTimestamp;
+        }
+
+        // Deletes whole segments; a segment goes once the next one starts at or before the cutoff.
+        // Meta records are counted as rows, so the count may run a little high
+        synchronized int deleteBefore(long cutoffNanos, int limit) {
+            int deleted = 0;
+            while (deleted < limit && segments.size() > 1 && segments.get(1).baseTimestamp <= cutoffNanos) {
+                Segment segment = segments.remove(0);
+                // Keep the committed state pointing at the same segments for rollback
+                if (committedSegmentCount > 0) {
+                    committedSegmentCount--;
+                }
+                if (segment == committedActive) {
+                    committedActive = null;
+                }
+                segment.close();
+                long bytes = segment.file.length();
+                if (segment.file.delete()) {
+                    deleted += (int) Math.max(0, (bytes - HEADER_BYTES) / recordBytes);
+                } else {
+                    Log.w(TAG, "Cannot delete " + segment.file);
+                }
+            }
+            return deleted;
+        }
+
+        synchronized long getSizeBytes() {
+            long bytes = 0;
+            for (Segment segment : segments) {
+                bytes += segment.file.length();
+            }
+            return bytes;
+        }
+
+        synchronized void close() {
+            if (active != null) {
+                writeStaging();
+                active.seal();
+                active = null;
+            }
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    // Reads count whole records starting at record into buffer, ready for reading
+    private static void readRecords(FileChannel channel, ByteBuffer buffer, int record, int count, int recordBytes)
+            throws IOException {
+        buffer.clear();
+        buffer.limit(count * recordBytes);
+        long position = HEADER_BYTES + (long) record * recordBytes;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * One segment file plus its sparse index, loaded on first read.
+     */
+    private static class Segment implements Comparable<Segment> {
+        final File file;
+        final long baseTimestamp;
+        FileChannel channel;
+        int accuracy;
+        long sizeBytes;
+        int recordCount;
+        long lastTimestamp = Long.MIN_VALUE;
+        // Time and accuracy before every INDEX_INTERVAL-th record; null until the segment has
+        // been opened
+        long[] indexTimestamps;
+        int[] indexAccuracies;
+        int indexSize;
+
+        Segment(File file, long baseTimestamp) {
+            this.file = file;
+            this.baseTimestamp = baseTimestamp;
+        }
+
+        void create(int axisCount, int accuracy) throws IOException {
+            this.accuracy = accuracy;
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).put((byte) VERSION).put((byte) axisCount).put((byte) accuracy).put((byte) 0)
+                    .putLong(baseTimestamp);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            sizeBytes = HEADER_BYTES;
+            indexTimestamps = new long[16];
+            indexAccuracies = new int[16];
+        }
+
+        void addIndex(long timestamp, int accuracy) {
+            if (indexSize == indexTimestamps.length) {
+                indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+                indexAccuracies = Arrays.copyOf(indexAccuracies, indexSize * 2);
+            }
+            indexTimestamps[indexSize] = timestamp;
+            indexAccuracies[indexSize] = accuracy;
+            indexSize++;
+        }
+
+        /**
+         * Opens a segment written by an earlier run and builds its index by scanning the deltas.
+         *
+         * @return false if the file is unusable
+         */
+        boolean open(int recordBytes) throws IOException {
+            if (indexTimestamps != null) {
+                return channel != null;
+            }
+            channel = new RandomAccessFile(file, "r").getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            int version = header.remaining() < HEADER_BYTES || header.getInt() != MAGIC ? -1 : header.get();
+            if (version < 1 || version > VERSION) {
+                Log.w(TAG, "Bad segment header in " + file);
+                close();
+                indexTimestamps = new long[0];
+                indexAccuracies = new int[0];
+                return false;
+            }
+            header.get();
+            accuracy = header.get();
+
+            // A partly written last record from a crash is ignored
+            recordCount = (int) ((channel.size() - HEADER_BYTES) / recordBytes);
+            sizeBytes = HEADER_BYTES + (long) recordCount * recordBytes;
+            int length = recordCount / INDEX_INTERVAL + 1;
+            indexTimestamps = new long[length];
+            indexAccuracies = new int[length];
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(recordBytes * INDEX_INTERVAL).order(ByteOrder.LITTLE_ENDIAN);
+            long timestamp = baseTimestamp;
+            int current = accuracy;
+            boolean hasSample = false;
+            for (int record = 0; record < recordCount || record == 0; record += INDEX_INTERVAL) {
+                indexTimestamps[indexSize] = timestamp;
+                indexAccuracies[indexSize] = current;
+                indexSize++;
+                int count = Math.min(INDEX_INTERVAL, recordCount - record);
+                if (count <= 0) {
+                    break;
+                }
+                readRecords(channel, buffer, record, count, recordBytes);
+                for (int i = 0; i < count; i++) {
+                    int delta = buffer.getInt(i * recordBytes);
+                    if (delta == GAP_RECORD) {
+                        timestamp += buffer.getInt(i * recordBytes + 4) * NANOS_PER_SECOND;
+                    } else if (delta == ACCURACY_RECORD) {
+                        current = buffer.getInt(i * recordBytes + 4);
+                    } else if (delta >= 0) {
+                        timestamp += delta;
+                        hasSample = true;
+                    }
+                }
+            }
+            lastTimestamp = hasSample ? timestamp : Long.MIN_VALUE;
+            return true;
+        }
+
+        // Index entry to start scanning from for records after afterNanos
+        int findIndex(long afterNanos) {
+            int low = 0;
+            int high = indexSize - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (indexTimestamps[mid] <= afterNanos) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        // Forces the finished segment to disk; it stays open for reads
+        void seal() {
+            try {
+                if (channel != null) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to sync " + file, e);
+            }
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close " + file, e);
+                }
+                channel = null;
+            }
+        }
+
+        @Override
+        public int compareTo(Segment other) {
+            return Long.compare(baseTimestamp, other.baseTimestamp);
+        }
+    }
+}
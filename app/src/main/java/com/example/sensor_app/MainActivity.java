@@ -1,48 +1,75 @@
 package com.example.sensor_app;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
+import android.view.Choreographer;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.NotificationCompat;
 
-import com.example.sensor_app.DatabaseHelper;
-import com.example.sensor_app.LightSensorChartActivity;
 import com.example.sensor_app.R;
 
-import java.util.List;
-
-public class MainActivity extends AppCompatActivity implements SensorEventListener {
-    private SensorManager sensorManager;
-    private Sensor lightSensor;
-    private Sensor proximitySensor;
-    private Sensor accelerometerSensor;
-    private Sensor gyroscopeSensor;
-    private TextView lightSensorValue;
-    private TextView proximitySensorValue;
-    private TextView accelerometerSensorValue;
-    private TextView gyroscopeSensorValue;
+/**
+ * Shows the latest value of every channel. It only consumes: samples come from the bound
+ * {@link SensorService}, which does all sensor reading and storage.
+ */
+public class MainActivity extends AppCompatActivity implements Choreographer.FrameCallback,
+        SensorService.SampleListener {
+    private SensorChannelRegistry channels;
+    // Indexed by SensorChannel id; null for channels this device has no sensor for
+    private final TextView[] sensorValueViews = new TextView[SensorChannelRegistry.getChannelCount()];
 
     private static final String CHANNEL_ID = "sensor_notifications";
     private static final int NOTIFICATION_ID = 1;
+    // The combined notification is rebuilt at most this often
+    private static final long NOTIFICATION_INTERVAL = 1000;
+    private NotificationPublisher notificationPublisher;
+
+    private static final int PERMISSION_REQUEST_CODE = 1;
+
+    // Live values are requested at SENSOR_DELAY_UI, about 15 per second
+    private static final int UI_SAMPLING_PERIOD_US = 66667;
+
+    private final Handler handler = new Handler();
+    private SensorService sensorService;
+    private boolean frameScheduled;
+
+    // Written by SensorService on its sensor thread, read here once per frame
+    private final LatestSampleStore latestSamples = LatestSampleStore.getInstance();
+    private final LatestSampleStore.Sample sample = new LatestSampleStore.Sample();
+    // Sequence last rendered per channel, indexed by SensorChannel id
+    private final long[] renderedSequences = new long[SensorChannelRegistry.getChannelCount()];
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            sensorService = ((SensorService.LocalBinder) service).getService();
+            for (int id = 0; id < sensorValueViews.length; id++) {
+                if (sensorValueViews[id] != null) {
+                    sensorService.subscribe(MainActivity.this, id, UI_SAMPLING_PERIOD_US, handler);
+                }
+            }
+        }
 
-    private Handler handler;
-    private static final long INTERVAL = 5000; // 5 sec
-
-    private DatabaseHelper dbHelper;
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            sensorService = null;
+        }
+    };
+    private final char[] textBuffer = new char[64];
+    private final char[][] valueLabels = new char[SensorChannelRegistry.getChannelCount()][];
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,171 +79,150 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
         setContentView(R.layout.activity_main);
 
-        // Initialize sensor manager and sensors
-        sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
-        lightSensor = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
-        proximitySensor = sensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
-        accelerometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        gyroscopeSensor = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
-
-        // Initialize UI elements
-        lightSensorValue = findViewById(R.id.lightSensorValue);
-        proximitySensorValue = findViewById(R.id.proximitySensorValue);
-        accelerometerSensorValue = findViewById(R.id.accelerometerSensorValue);
-        gyroscopeSensorValue = findViewById(R.id.gyroscopeSensorValue);
+        // Channels available on this device
+        channels = SensorChannelRegistry.getInstance(this);
 
         // Set up notification channel
         createNotificationChannel();
+        notificationPublisher = new NotificationPublisher(this, CHANNEL_ID, NOTIFICATION_ID, NOTIFICATION_INTERVAL);
 
-        // Set click listener for the "Light Sensor Chart" button
-        Button lightSensorChartButton = findViewById(R.id.lightSensorButton);
-        lightSensorChartButton.setOnClickListener(new View.OnClickListener() {
+        findViewById(R.id.metricsButton).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                startActivity(new Intent(MainActivity.this, LightSensorChartActivity.class));
+                startActivity(new Intent(MainActivity.this, MetricsActivity.class));
             }
         });
-
-
-        // Set click listener for the "Proximity Sensor Chart" button
-        Button proximitySensorChartButton = findViewById(R.id.proximitySensorButton);
-        proximitySensorChartButton.setOnClickListener(new View.OnClickListener() {
+        findViewById(R.id.stopButton).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                startActivity(new Intent(MainActivity.this, ProximitySensorChartActivity.class));
+                // The service goes once this activity unbinds as it finishes
+                stopService(new Intent(MainActivity.this, SensorService.class));
+                finish();
             }
         });
 
-
-        // Set click listener for the "Accelerometer Sensor Chart" button
-        Button accelerometerSensorChartButton = findViewById(R.id.accelerometerSensorButton);
-        accelerometerSensorChartButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                startActivity(new Intent(MainActivity.this, AccelerometerSensorChartActivity.class));
+        // One chart button and value card per available channel
+        ViewGroup cardContainer = findViewById(R.id.cardContainer);
+        for (int id = 0; id < SensorChannelRegistry.getChannelCount(); id++) {
+            if (!channels.isAvailable(id)) {
+                continue;
             }
-        });
+            final SensorChannel channel = SensorChannelRegistry.getChannel(id);
+            View item = getLayoutInflater().inflate(R.layout.item_sensor_channel, cardContainer, false);
+
+            Button chartButton = item.findViewById(R.id.chartButton);
+            chartButton.setText(channel.getName() + " Sensor Chart");
+            chartButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    Intent intent = new Intent(MainActivity.this, SensorChartActivity.class);
+                    intent.putExtra(SensorChartActivity.EXTRA_CHANNEL, channel.getId());
+                    startActivity(intent);
+                }
+            });
+
+            valueLabels[id] = (channel.getName() + " Sensor Value: ").toCharArray();
+            sensorValueViews[id] = item.findViewById(R.id.sensorValue);
+            sensorValueViews[id].setText(valueLabels[id], 0, valueLabels[id].length);
+            cardContainer.addView(item);
+        }
 
+        // Only on first launch, not again after every rotation once denied
+        if (savedInstanceState == null) {
+            requestMissingPermissions();
+        }
+    }
 
-        // Set click listener for the "Gyroscope Sensor Chart" button
-        Button gyroscopeSensorChartButton = findViewById(R.id.gyroscopeSensorButton);
-        gyroscopeSensorChartButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                startActivity(new Intent(MainActivity.this, GyroscopeSensorChartActivity.class));
+    // Asks for the runtime permissions of channels whose sensor exists but may not be read yet
+    private void requestMissingPermissions() {
+        String[] missing = new String[SensorChannelRegistry.getChannelCount()];
+        int count = 0;
+        for (int id = 0; id < SensorChannelRegistry.getChannelCount(); id++) {
+            String permission = SensorChannelRegistry.getRequiredPermission(id);
+            if (permission != null && channels.getSensor(id) != null && !channels.hasPermission(id)) {
+                missing[count++] = permission;
             }
-        });
-
-        // Create instance of DatabaseHelper
-        dbHelper = new DatabaseHelper(this);
+        }
+        if (count > 0) {
+            String[] permissions = new String[count];
+            System.arraycopy(missing, 0, permissions, 0, count);
+            requestPermissions(permissions, PERMISSION_REQUEST_CODE);
+        }
+    }
 
-        // Set up handler for periodic database operations
-        handler = new Handler();
-        handler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                // Perform database operations here
-                recordSensorData();
-                handler.postDelayed(this, INTERVAL);
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode != PERMISSION_REQUEST_CODE) {
+            return;
+        }
+        for (int result : grantResults) {
+            if (result == PackageManager.PERMISSION_GRANTED) {
+                // Rebuild the cards; subscribing to the new channel also starts its capture
+                recreate();
+                return;
             }
-        }, INTERVAL);
+        }
+        // Denied channels stay unavailable and get no card
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-
-        // Register sensor listeners
-        sensorManager.registerListener(this, lightSensor, SensorManager.SENSOR_DELAY_NORMAL);
-        sensorManager.registerListener(this, proximitySensor, SensorManager.SENSOR_DELAY_NORMAL);
-        sensorManager.registerListener(this, accelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
-        sensorManager.registerListener(this, gyroscopeSensor, SensorManager.SENSOR_DELAY_NORMAL);
+    protected void onStart() {
+        super.onStart();
+
+        // Subscribe to live values while visible
+        bindService(new Intent(this, SensorService.class), connection, Context.BIND_AUTO_CREATE);
     }
 
     @Override
-    protected void onPause() {
-        super.onPause();
+    protected void onStop() {
+        super.onStop();
+
+        if (sensorService != null) {
+            sensorService.unsubscribe(this);
+            sensorService = null;
+        }
+        unbindService(connection);
+        Choreographer.getInstance().removeFrameCallback(this);
+        frameScheduled = false;
+    }
 
-        // Unregister sensor listeners
-        sensorManager.unregisterListener(this);
+    @Override
+    public void onSample(int channel, LatestSampleStore.Sample latest) {
+        // Render on the next frame, however many samples arrive before it
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
     }
 
+    // Capture keeps running across rotations and after the activity is closed; only the stop
+    // button ends it
     @Override
     protected void onDestroy() {
-        Intent serviceIntent = new Intent(this, SensorService.class);
-        stopService(serviceIntent);
+        notificationPublisher.stop();
 
         super.onDestroy();
-        stopService(serviceIntent);
     }
 
     @Override
-    public void onSensorChanged(SensorEvent event) {
-        // Update UI based on sensor values
-        Sensor sensor = event.sensor;
-        float value = event.values[0];
-
-        if (sensor.getType() == Sensor.TYPE_LIGHT) {
-            lightSensorValue.setText("Light Sensor Value: " + value);
-        } else if (sensor.getType() == Sensor.TYPE_PROXIMITY) {
-            proximitySensorValue.setText("Proximity Sensor Value: " + value);
-        } else if (sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            accelerometerSensorValue.setText("Accelerometer Sensor Value: " + value);
-        } else if (sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-            gyroscopeSensorValue.setText("Gyroscope Sensor Value: " + value);
-        }
-
-        // Get sensor values as strings
-        String lightValueText = lightSensorValue.getText().toString().substring(19);
-        String proximityValueText = proximitySensorValue.getText().toString().substring(24);
-        String accelerometerValueText = accelerometerSensorValue.getText().toString().length() >= 29
-                ? accelerometerSensorValue.getText().toString().substring(29)
-                : "N/A";
-        String gyroscopeValueText = gyroscopeSensorValue.getText().toString().length() >= 25
-                ? gyroscopeSensorValue.getText().toString().substring(25)
-                : "N/A";
-
-        // Parse sensor values to float with error handling
-        float lightValue = 0.0f;
-        float proximityValue = 0.0f;
-        float accelerometerValue = 0.0f;
-        float gyroscopeValue = 0.0f;
-
-        try {
-            if (lightValueText.length() >= 19) {
-                lightValue = Float.parseFloat(lightValueText);
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        for (int id = 0; id < sensorValueViews.length; id++) {
+            // Skip channels without a view or without a new sample since the last frame
+            if (sensorValueViews[id] == null || latestSamples.getSequence(id) == renderedSequences[id]
+                    || !latestSamples.read(id, sample)) {
+                continue;
             }
+            renderedSequences[id] = sample.sequence;
 
-            if (proximityValueText.length() >= 24) {
-                proximityValue = Float.parseFloat(proximityValueText);
-            }
+            // Render into a reused char buffer instead of building Strings for every update
+            int length = FloatFormat.append(textBuffer, 0, valueLabels[id]);
+            length = FloatFormat.append(textBuffer, length, sample.x, 3);
+            sensorValueViews[id].setText(textBuffer, 0, length);
 
-            if (!accelerometerValueText.equals("N/A")) {
-                accelerometerValue = Float.parseFloat(accelerometerValueText);
-            }
-
-            if (!gyroscopeValueText.equals("N/A")) {
-                gyroscopeValue = Float.parseFloat(gyroscopeValueText);
-            }
-        } catch (NumberFormatException e) {
-            // Handle the parsing error here
-            e.printStackTrace();
-            // Set default values
-            lightValue = 0.0f;
-            proximityValue = 0.0f;
-            accelerometerValue = 0.0f;
-            gyroscopeValue = 0.0f;
+            notificationPublisher.update(id, sample.x);
         }
-
-        String[] sensorValues = { String.valueOf(lightValue), String.valueOf(proximityValue),
-                String.valueOf(accelerometerValue), String.valueOf(gyroscopeValue) };
-
-        showNotification(sensorValues);
-    }
-
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-
     }
 
     private void createNotificationChannel() {
@@ -232,81 +238,5 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
-    private void showNotification(String[] sensorValues) {
-        NotificationManager notificationManager = getSystemService(NotificationManager.class);
-
-        for (int i = 0; i < sensorValues.length; i++) {
-            String sensorName = "";
-            String contentText = "";
-
-            switch (i) {
-                case 0:
-                    sensorName = "Light Sensor";
-                    contentText = "Light Sensor Value: " + sensorValues[i];
-                    break;
-                case 1:
-                    sensorName = "Proximity Sensor";
-                    contentText = "Proximity Sensor Value: " + sensorValues[i];
-                    break;
-                case 2:
-                    sensorName = "Accelerometer Sensor";
-                    contentText = "Accelerometer Sensor Value: " + sensorValues[i];
-                    break;
-                case 3:
-                    sensorName = "Gyroscope Sensor";
-                    contentText = "Gyroscope Sensor Value: " + sensorValues[i];
-                    break;
-            }
-
-            Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                    .setContentTitle(sensorName)
-                    .setContentText(contentText)
-                    .setSmallIcon(R.mipmap.ic_launcher)
-                    .build();
-
-            notificationManager.notify(NOTIFICATION_ID + i, notification);
-
-        }
-    }
-
-    private void recordSensorData() {
-        // Retrieve sensor values from UI or other sources
-        String lightSensorText = lightSensorValue.getText().toString();
-        String proximitySensorText = proximitySensorValue.getText().toString();
-        String accelerometerSensorText = accelerometerSensorValue.getText().toString();
-        String gyroscopeSensorText = gyroscopeSensorValue.getText().toString();
-
-        // Parse float values or assign default values if the text is null or empty
-        float lightValue = parseFloatOrDefault(lightSensorText, 19, 0.0f);
-        float proximityValue = parseFloatOrDefault(proximitySensorText, 24, 0.0f);
-        float accelerometerValue = parseFloatOrDefault(accelerometerSensorText, 29, 0.0f);
-        float gyroscopeValue = parseFloatOrDefault(gyroscopeSensorText, 25, 0.0f);
-
-        // Create SensorData objects with timestamp and sensor values
-        long timestamp = System.currentTimeMillis();
-        DatabaseHelper.SensorData lightSensorData = new DatabaseHelper.SensorData(timestamp, lightValue);
-        DatabaseHelper.SensorData proximitySensorData = new DatabaseHelper.SensorData(timestamp, proximityValue);
-        DatabaseHelper.SensorData accelerometerSensorData = new DatabaseHelper.SensorData(timestamp, accelerometerValue);
-        DatabaseHelper.SensorData gyroscopeSensorData = new DatabaseHelper.SensorData(timestamp, gyroscopeValue);
-
-        // Insert sensor values into the database
-        dbHelper.insertLightSensorValue(lightSensorData);
-        dbHelper.insertProximitySensorValue(proximitySensorData);
-        dbHelper.insertAccelerometerSensorValue(accelerometerSensorData);
-        dbHelper.insertGyroscopeSensorValue(gyroscopeSensorData);
-    }
-
-    private float parseFloatOrDefault(String value, int startIndex, float defaultValue) {
-        if (value != null && value.length() >= startIndex) {
-            String floatValue = value.substring(startIndex);
-            try {
-                return Float.parseFloat(floatValue);
-            } catch (NumberFormatException e) {
-                e.printStackTrace();
-            }
-        }
-        return defaultValue;
-    }
-
 }
-//...
+//...
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.example.sensor_app;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.sensor_app.R;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Debug screen with the {@link PipelineMetrics} snapshot, refreshed every second while
+ * visible. Shows the same text as {@code dumpsys} on {@link SensorService}.
+ */
+public class MetricsActivity extends AppCompatActivity {
+    private static final long REFRESH_INTERVAL = 1000;
+
+    private final Handler handler = new Handler();
+    // The snapshot reads the database size, so it is built off the main thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private DatabaseHelper dbHelper;
+    private TextView metricsText;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    StringWriter text = new StringWriter();
+                    PipelineMetrics.getInstance().dump(new PrintWriter(text), dbHelper);
+                    final String snapshot = text.toString();
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            metricsText.setText(snapshot);
+                        }
+                    });
+                }
+            });
+            handler.postDelayed(this, REFRESH_INTERVAL);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        setTitle("Pipeline Metrics");
+        metricsText = findViewById(R.id.metricsText);
+        dbHelper = DatabaseHelper.getInstance(this);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        handler.post(refresh);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
+    }
+}
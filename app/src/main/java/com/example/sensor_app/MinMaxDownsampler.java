@@ -0,0 +1,93 @@
+package com.example.sensor_app;
+
+/**
+ * Reduces a time-ordered series to at most two points per bucket, the minimum and the
+ * maximum, which keeps spikes visible at any zoom level. Points are streamed in one at a time
+ * and memory is fixed by the bucket count, so arbitrarily long ranges can be reduced to
+ * roughly one bucket per pixel.
+ */
+public class MinMaxDownsampler {
+    private final long start;
+    private final long bucketWidth;
+    private final int bucketCount;
+
+    private final int[] counts;
+    private final long[] minTimestamps;
+    private final float[] minValues;
+    private final long[] maxTimestamps;
+    private final float[] maxValues;
+
+    public MinMaxDownsampler(long start, long end, int bucketCount) {
+        this.start = start;
+        this.bucketCount = bucketCount;
+        this.bucketWidth = Math.max(1, (end - start + bucketCount - 1) / bucketCount);
+        counts = new int[bucketCount];
+        minTimestamps = new long[bucketCount];
+        minValues = new float[bucketCount];
+        maxTimestamps = new long[bucketCount];
+        maxValues = new float[bucketCount];
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * @return the largest number of points {@link #copyTo} can produce
+     */
+    public int getMaxPoints() {
+        return bucketCount * 2;
+    }
+
+    public void add(long timestamp, float value) {
+        long offset = timestamp - start;
+        if (offset < 0 || Float.isNaN(value)) {
+            return;
+        }
+        int bucket = (int) Math.min(offset / bucketWidth, bucketCount - 1);
+
+        if (counts[bucket] == 0) {
+            minTimestamps[bucket] = timestamp;
+            minValues[bucket] = value;
+            maxTimestamps[bucket] = timestamp;
+            maxValues[bucket] = value;
+        } else if (value < minValues[bucket]) {
+            minTimestamps[bucket] = timestamp;
+            minValues[bucket] = value;
+        } else if (value > maxValues[bucket]) {
+            maxTimestamps[bucket] = timestamp;
+            maxValues[bucket] = value;
+        }
+        counts[bucket]++;
+    }
+
+    /**
+     * Writes the reduced series, in time order, into the caller's arrays.
+     *
+     * @return number of points written
+     */
+    public int copyTo(long[] timestamps, float[] values) {
+        int n = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            boolean minFirst = minTimestamps[i] <= maxTimestamps[i];
+            timestamps[n] = minFirst ? minTimestamps[i] : maxTimestamps[i];
+            values[n] = minFirst ? minValues[i] : maxValues[i];
+            n++;
+            if (minTimestamps[i] != maxTimestamps[i]) {
+                timestamps[n] = minFirst ? maxTimestamps[i] : minTimestamps[i];
+                values[n] = minFirst ? maxValues[i] : minValues[i];
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public void clear() {
+        for (int i = 0; i < bucketCount; i++) {
+            counts[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.sensor_app;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+/**
+ * Shows the latest value of every channel in one combined notification. Updates only record
+ * the value; the notification is rebuilt at most once per interval, with a reused builder, and
+ * {@code notify} is skipped when the values as displayed have not changed. This keeps binder
+ * calls into the system to a handful per second however fast sensor events arrive.
+ *
+ * Must be used from the thread of the looper it was created on.
+ */
+public class NotificationPublisher {
+    // Values are shown, and compared, with this many decimals
+    private static final int DECIMALS = 2;
+    private static final float SCALE = 100f;
+
+    private final NotificationManager notificationManager;
+    private final NotificationCompat.Builder builder;
+    private final NotificationCompat.BigTextStyle style = new NotificationCompat.BigTextStyle();
+    private final int notificationId;
+    private final long minIntervalMs;
+    private final Handler handler = new Handler(Looper.myLooper());
+
+    private final float[] latestValues = new float[SensorChannelRegistry.getChannelCount()];
+    // Rounded values last published; Long.MIN_VALUE where nothing was shown
+    private final long[] publishedValues = new long[latestValues.length];
+    private final char[] valueBuffer = new char[32];
+    private final StringBuilder text = new StringBuilder();
+
+    private long lastPublishTime;
+    private boolean scheduled;
+
+    private final Runnable publishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            scheduled = false;
+            publish();
+        }
+    };
+
+    public NotificationPublisher(Context context, String channelId, int notificationId, long minIntervalMs) {
+        this.notificationManager = context.getSystemService(NotificationManager.class);
+        this.notificationId = notificationId;
+        this.minIntervalMs = minIntervalMs;
+        builder = new NotificationCompat.Builder(context, channelId)
+                .setContentTitle("Sensor Values")
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setOnlyAlertOnce(true)
+                .setShowWhen(false)
+                .setStyle(style);
+        for (int i = 0; i < latestValues.length; i++) {
+            latestValues[i] = Float.NaN;
+            publishedValues[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Records the latest value of a channel and schedules a rebuild if none is pending.
+     */
+    public void update(int channel, float value) {
+        latestValues[channel] = value;
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        long delay = lastPublishTime + minIntervalMs - SystemClock.uptimeMillis();
+        handler.postDelayed(publishRunnable, Math.max(0, delay));
+    }
+
+    /**
+     * Drops any pending rebuild; the last published notification stays up.
+     */
+    public void stop() {
+        handler.removeCallbacks(publishRunnable);
+        scheduled = false;
+    }
+
+    private void publish() {
+        lastPublishTime = SystemClock.uptimeMillis();
+
+        boolean changed = false;
+        for (int i = 0; i < latestValues.length; i++) {
+            long rounded = Float.isNaN(latestValues[i]) ? Long.MIN_VALUE : Math.round(latestValues[i] * SCALE);
+            if (rounded != publishedValues[i]) {
+                publishedValues[i] = rounded;
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return;
+        }
+
+        text.setLength(0);
+        for (int i = 0; i < latestValues.length; i++) {
+            if (publishedValues[i] == Long.MIN_VALUE) {
+                continue;
+            }
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            SensorChannel channel = SensorChannelRegistry.getChannel(i);
+            int length = FloatFormat.append(valueBuffer, 0, latestValues[i], DECIMALS);
+            text.append(channel.getName()).append(": ").append(valueBuffer, 0, length)
+                    .append(' ').append(channel.getUnit());
+        }
+        // Collapsed view shows the first line; expanded shows every channel
+        String content = text.toString();
+        int firstLine = content.indexOf('\n');
+        builder.setContentText(firstLine < 0 ? content : content.substring(0, firstLine));
+        style.bigText(content);
+        notificationManager.notify(notificationId, builder.build());
+    }
+}
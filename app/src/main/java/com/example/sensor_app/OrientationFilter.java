@@ -0,0 +1,263 @@
+package com.example.sensor_app;
+
+/**
+ * Madgwick's IMU filter fusing the accelerometer and gyroscope into an orientation quaternion,
+ * fed on the sensor thread. Gyroscope samples drive the filter: each one is integrated and
+ * corrected towards the gravity direction of the accelerometer, interpolated to the gyroscope
+ * sample's timestamp.
+ *
+ * The two sensors report in batches that need not interleave in time, so gyroscope samples
+ * wait in a ring until the accelerometer has caught up with them. If it stops, e.g. while its
+ * adaptive rate is off, waiting samples are fused with the last accelerometer reading while it
+ * is recent enough, then on the gyroscope alone.
+ *
+ * Each fused sample gives roll, pitch and yaw in degrees and the linear acceleration (the
+ * accelerometer minus gravity, in the device frame). Yaw has no magnetic reference and drifts.
+ * All state is preallocated; feeding samples never allocates.
+ */
+public class OrientationFilter {
+    public interface Listener {
+        /**
+         * One fused sample. Both arrays are reused between calls.
+         *
+         * @param orientation        roll, pitch and yaw in degrees
+         * @param linearAcceleration x, y and z in m/s^2, gravity removed
+         */
+        void onFused(long timestamp, float[] orientation, float[] linearAcceleration);
+    }
+
+    // SensorManager.GRAVITY_EARTH, kept here so the filter runs on a plain JVM
+    private static final double GRAVITY = 9.80665;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double DEGREES_PER_RADIAN = 180 / Math.PI;
+    // Gaps longer than this restart integration instead of integrating across them; twice the
+    // one-second idle period of adaptive capture, so fusion keeps integrating while it idles
+    private static final long MAX_GYRO_GAP_NANOS = 2000000000L;
+    // How far the nearest accelerometer reading may be from a gyroscope sample to correct it
+    private static final long MAX_ACCEL_AGE_NANOS = 500000000L;
+
+    private final float beta;
+    private final Listener listener;
+
+    // Orientation quaternion, sensor frame to earth frame
+    private double q0 = 1;
+    private double q1;
+    private double q2;
+    private double q3;
+    private boolean initialized;
+
+    // Gyroscope samples waiting for the accelerometer to catch up, oldest at gyroStart
+    private final long[] gyroTimestamps;
+    private final float[] gyroValues;
+    private int gyroStart;
+    private int gyroSize;
+    private long lastGyroTimestamp = Long.MIN_VALUE;
+
+    // The two newest accelerometer samples, to interpolate between
+    private long previousAccelTimestamp = Long.MIN_VALUE;
+    private final float[] previousAccel = new float[3];
+    private long accelTimestamp = Long.MIN_VALUE;
+    private final float[] accel = new float[3];
+    private final float[] accelAtGyro = new float[3];
+
+    private final float[] orientation = new float[3];
+    private final float[] linearAcceleration = new float[3];
+
+    /**
+     * @param beta         how strongly the accelerometer pulls the estimate, in rad/s; Madgwick
+     *                     suggests about 0.1, higher converges faster but follows shaking more
+     * @param gyroCapacity gyroscope samples that may wait for the accelerometer, e.g. a
+     *                     batch's worth
+     */
+    public OrientationFilter(float beta, int gyroCapacity, Listener listener) {
+        this.beta = beta;
+        this.listener = listener;
+        gyroTimestamps = new long[gyroCapacity];
+        gyroValues = new float[gyroCapacity * 3];
+    }
+
+    public void onAccelerometer(long timestamp, float x, float y, float z) {
+        if (timestamp <= accelTimestamp) {
+            return;
+        }
+        previousAccelTimestamp = accelTimestamp;
+        previousAccel[0] = accel[0];
+        previousAccel[1] = accel[1];
+        previousAccel[2] = accel[2];
+        accelTimestamp = timestamp;
+        accel[0] = x;
+        accel[1] = y;
+        accel[2] = z;
+        if (!initialized) {
+            initialize(x, y, z);
+        }
+        fuseReady();
+    }
+
+    public void onGyroscope(long timestamp, float x, float y, float z) {
+        int last = gyroSize == 0 ? -1 : (gyroStart + gyroSize - 1) % gyroTimestamps.length;
+        if (timestamp <= (last < 0 ? lastGyroTimestamp : gyroTimestamps[last])) {
+            return;
+        }
+        if (gyroSize == gyroTimestamps.length) {
+            // Waited as long as it can; fuse the oldest with what the accelerometer last said
+            fuseOldest();
+        }
+        int slot = (gyroStart + gyroSize) % gyroTimestamps.length;
+        gyroTimestamps[slot] = timestamp;
+        gyroValues[slot * 3] = x;
+        gyroValues[slot * 3 + 1] = y;
+        gyroValues[slot * 3 + 2] = z;
+        gyroSize++;
+        fuseReady();
+    }
+
+    /**
+     * Fuses every waiting gyroscope sample without waiting for the accelerometer, e.g. when
+     * the sensors have been flushed.
+     */
+    public void flush() {
+        while (gyroSize > 0) {
+            fuseOldest();
+        }
+    }
+
+    /**
+     * Forgets the orientation and any waiting samples.
+     */
+    public void reset() {
+        q0 = 1;
+        q1 = q2 = q3 = 0;
+        initialized = false;
+        gyroSize = 0;
+        lastGyroTimestamp = Long.MIN_VALUE;
+        previousAccelTimestamp = Long.MIN_VALUE;
+        accelTimestamp = Long.MIN_VALUE;
+    }
+
+    // Fuses the waiting gyroscope samples the accelerometer has caught up with
+    private void fuseReady() {
+        while (gyroSize > 0 && gyroTimestamps[gyroStart] <= accelTimestamp) {
+            fuseOldest();
+        }
+    }
+
+    private void fuseOldest() {
+        long timestamp = gyroTimestamps[gyroStart];
+        int base = gyroStart * 3;
+        float gx = gyroValues[base];
+        float gy = gyroValues[base + 1];
+        float gz = gyroValues[base + 2];
+        gyroStart = (gyroStart + 1) % gyroTimestamps.length;
+        gyroSize--;
+
+        long previous = lastGyroTimestamp;
+        lastGyroTimestamp = timestamp;
+        if (!initialized || previous == Long.MIN_VALUE || timestamp - previous > MAX_GYRO_GAP_NANOS) {
+            // Nothing to integrate from yet
+            return;
+        }
+        boolean corrected = accelAt(timestamp);
+        update(gx, gy, gz, corrected, (timestamp - previous) / NANOS_PER_SECOND);
+        emit(timestamp, corrected);
+    }
+
+    // Fills accelAtGyro with the accelerometer at timestamp; false if there is no recent reading
+    private boolean accelAt(long timestamp) {
+        if (accelTimestamp == Long.MIN_VALUE || Math.abs(timestamp - accelTimestamp) > MAX_ACCEL_AGE_NANOS) {
+            return false;
+        }
+        if (timestamp >= accelTimestamp || previousAccelTimestamp == Long.MIN_VALUE
+                || timestamp <= previousAccelTimestamp) {
+            accelAtGyro[0] = accel[0];
+            accelAtGyro[1] = accel[1];
+            accelAtGyro[2] = accel[2];
+            return true;
+        }
+        float fraction = (float) (timestamp - previousAccelTimestamp) / (accelTimestamp - previousAccelTimestamp);
+        for (int i = 0; i < 3; i++) {
+            accelAtGyro[i] = previousAccel[i] + (accel[i] - previousAccel[i]) * fraction;
+        }
+        return true;
+    }
+
+    // Starts from the tilt the accelerometer shows, so the filter need not converge from flat
+    private void initialize(float ax, float ay, float az) {
+        double roll = Math.atan2(ay, az);
+        double pitch = Math.atan2(-ax, Math.sqrt(ay * ay + az * az));
+        double cr = Math.cos(roll / 2);
+        double sr = Math.sin(roll / 2);
+        double cp = Math.cos(pitch / 2);
+        double sp = Math.sin(pitch / 2);
+        q0 = cr * cp;
+        q1 = sr * cp;
+        q2 = cr * sp;
+        q3 = -sr * sp;
+        initialized = true;
+    }
+
+    // One step of Madgwick's gradient descent IMU update
+    private void update(double gx, double gy, double gz, boolean corrected, double dt) {
+        double qDot0 = 0.5 * (-q1 * gx - q2 * gy - q3 * gz);
+        double qDot1 = 0.5 * (q0 * gx + q2 * gz - q3 * gy);
+        double qDot2 = 0.5 * (q0 * gy - q1 * gz + q3 * gx);
+        double qDot3 = 0.5 * (q0 * gz + q1 * gy - q2 * gx);
+
+        double ax = accelAtGyro[0];
+        double ay = accelAtGyro[1];
+        double az = accelAtGyro[2];
+        double norm = Math.sqrt(ax * ax + ay * ay + az * az);
+        if (corrected && norm > 0) {
+            ax /= norm;
+            ay /= norm;
+            az /= norm;
+            double s0 = 4 * q0 * q2 * q2 + 2 * q2 * ax + 4 * q0 * q1 * q1 - 2 * q1 * ay;
+            double s1 = 4 * q1 * q3 * q3 - 2 * q3 * ax + 4 * q0 * q0 * q1 - 2 * q0 * ay - 4 * q1
+                    + 8 * q1 * q1 * q1 + 8 * q1 * q2 * q2 + 4 * q1 * az;
+            double s2 = 4 * q0 * q0 * q2 + 2 * q0 * ax + 4 * q2 * q3 * q3 - 2 * q3 * ay - 4 * q2
+                    + 8 * q2 * q1 * q1 + 8 * q2 * q2 * q2 + 4 * q2 * az;
+            double s3 = 4 * q1 * q1 * q3 - 2 * q1 * ax + 4 * q2 * q2 * q3 - 2 * q2 * ay;
+            double sNorm = Math.sqrt(s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3);
+            if (sNorm > 0) {
+                qDot0 -= beta * s0 / sNorm;
+                qDot1 -= beta * s1 / sNorm;
+                qDot2 -= beta * s2 / sNorm;
+                qDot3 -= beta * s3 / sNorm;
+            }
+        }
+
+        q0 += qDot0 * dt;
+        q1 += qDot1 * dt;
+        q2 += qDot2 * dt;
+        q3 += qDot3 * dt;
+        double qNorm = Math.sqrt(q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3);
+        q0 /= qNorm;
+        q1 /= qNorm;
+        q2 /= qNorm;
+        q3 /= qNorm;
+    }
+
+    private void emit(long timestamp, boolean haveAccel) {
+        orientation[0] = (float) (Math.atan2(2 * (q0 * q1 + q2 * q3), 1 - 2 * (q1 * q1 + q2 * q2))
+                * DEGREES_PER_RADIAN);
+        double sinPitch = Math.max(-1, Math.min(1, 2 * (q0 * q2 - q3 * q1)));
+        orientation[1] = (float) (Math.asin(sinPitch) * DEGREES_PER_RADIAN);
+        orientation[2] = (float) (Math.atan2(2 * (q0 * q3 + q1 * q2), 1 - 2 * (q2 * q2 + q3 * q3))
+                * DEGREES_PER_RADIAN);
+
+        if (haveAccel) {
+            // Gravity, which reads as +1 g upwards at rest, rotated into the device frame
+            double gravityX = 2 * (q1 * q3 - q0 * q2) * GRAVITY;
+            double gravityY = 2 * (q0 * q1 + q2 * q3) * GRAVITY;
+            double gravityZ = (q0 * q0 - q1 * q1 - q2 * q2 + q3 * q3) * GRAVITY;
+            linearAcceleration[0] = (float) (accelAtGyro[0] - gravityX);
+            linearAcceleration[1] = (float) (accelAtGyro[1] - gravityY);
+            linearAcceleration[2] = (float) (accelAtGyro[2] - gravityZ);
+        } else {
+            linearAcceleration[0] = Float.NaN;
+            linearAcceleration[1] = Float.NaN;
+            linearAcceleration[2] = Float.NaN;
+        }
+        listener.onFused(timestamp, orientation, linearAcceleration);
+    }
+}
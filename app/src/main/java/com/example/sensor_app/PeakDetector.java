@@ -0,0 +1,77 @@
+package com.example.sensor_app;
+
+/**
+ * Finds peaks such as steps or taps in a stream of values. A peak starts when the signal rises
+ * more than {@code sensitivity} standard deviations (and at least {@code minProminence}) above
+ * its running mean and is confirmed once it falls back to the mean; the highest value in
+ * between is the peak. Peaks closer together than the refractory time count once.
+ * O(1) and allocation-free per value.
+ */
+public class PeakDetector {
+    // Weight of the newest value in the running mean and variance
+    private static final float ALPHA = 0.02f;
+
+    private final float sensitivity;
+    private final float minProminence;
+    private final long refractoryNanos;
+
+    private boolean primed;
+    private float mean;
+    private float variance;
+    private boolean inPeak;
+    private float peakValue;
+    private long peakTimestamp;
+    private long lastPeakTimestamp = Long.MIN_VALUE;
+
+    public PeakDetector(float sensitivity, float minProminence, long refractoryMs) {
+        this.sensitivity = sensitivity;
+        this.minProminence = minProminence;
+        this.refractoryNanos = refractoryMs * 1000000L;
+    }
+
+    /**
+     * @return true if this value confirmed a peak, see {@link #getPeakValue}
+     */
+    public boolean onSample(long timestamp, float value) {
+        if (Float.isNaN(value)) {
+            return false;
+        }
+        if (!primed) {
+            mean = value;
+            primed = true;
+            return false;
+        }
+
+        boolean confirmed = false;
+        float threshold = Math.max(sensitivity * (float) Math.sqrt(variance), minProminence);
+        if (!inPeak) {
+            if (value - mean > threshold) {
+                inPeak = true;
+                peakValue = value;
+                peakTimestamp = timestamp;
+            }
+        } else if (value > peakValue) {
+            peakValue = value;
+            peakTimestamp = timestamp;
+        } else if (value <= mean) {
+            inPeak = false;
+            if (lastPeakTimestamp == Long.MIN_VALUE || peakTimestamp - lastPeakTimestamp >= refractoryNanos) {
+                lastPeakTimestamp = peakTimestamp;
+                confirmed = true;
+            }
+        }
+
+        float delta = value - mean;
+        mean += ALPHA * delta;
+        variance += ALPHA * (delta * delta - variance);
+        return confirmed;
+    }
+
+    public float getPeakValue() {
+        return peakValue;
+    }
+
+    public long getPeakTimestamp() {
+        return peakTimestamp;
+    }
+}
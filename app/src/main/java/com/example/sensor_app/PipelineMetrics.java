@@ -0,0 +1,156 @@
+package com.example.sensor_app;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms across the sample pipeline, from the source to storage and
+ * the chart screens, so missing or late data can be traced to the stage that lost it:
+ * <ul>
+ * <li>received: delivered by the sample source to the service</li>
+ * <li>dropped and coalesced: lost or merged by writer backpressure, kept by
+ * {@link SensorWriter}</li>
+ * <li>rejected: reached storage but were not newer than the channel's stored rows</li>
+ * <li>written: appended by a storage engine in a committed batch</li>
+ * </ul>
+ * Gauges (writer queue occupancy, database and log size) are read when {@link #dump} runs.
+ *
+ * Everything is lock-free and allocation-free to record, from any thread.
+ */
+public class PipelineMetrics {
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics(SensorChannelRegistry.getChannelCount());
+
+    // Indexed by SensorChannel id
+    private final AtomicLongArray received;
+    private final AtomicLongArray written;
+    private final AtomicLongArray rejected;
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong registrationFailures = new AtomicLong();
+
+    // From the sample's timestamp to the commit of the batch holding it
+    private final LatencyHistogram sensorToDisk = new LatencyHistogram();
+    private final LatencyHistogram batchWrite = new LatencyHistogram();
+    private final LatencyHistogram query = new LatencyHistogram();
+    private final LatencyHistogram chartLoad = new LatencyHistogram();
+
+    public static PipelineMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public PipelineMetrics(int channelCount) {
+        received = new AtomicLongArray(channelCount);
+        written = new AtomicLongArray(channelCount);
+        rejected = new AtomicLongArray(channelCount);
+    }
+
+    public void onReceived(int channel) {
+        received.incrementAndGet(channel);
+    }
+
+    public void onWritten(int channel, int rows) {
+        if (rows > 0) {
+            written.addAndGet(channel, rows);
+        }
+    }
+
+    public void onRejected(int channel, int rows) {
+        if (rows > 0) {
+            rejected.addAndGet(channel, rows);
+        }
+    }
+
+    /**
+     * A batch failed to commit and its rows were lost.
+     */
+    public void onBatchFailed(int rows) {
+        failedBatches.incrementAndGet();
+        failedRows.addAndGet(rows);
+    }
+
+    /**
+     * A sample source refused to start a channel it claimed to have.
+     */
+    public void onRegistrationFailed() {
+        registrationFailures.incrementAndGet();
+    }
+
+    public long getReceivedCount(int channel) {
+        return received.get(channel);
+    }
+
+    public long getWrittenCount(int channel) {
+        return written.get(channel);
+    }
+
+    public long getRejectedCount(int channel) {
+        return rejected.get(channel);
+    }
+
+    public long getFailedRowCount() {
+        return failedRows.get();
+    }
+
+    /**
+     * Only meaningful for live sources; replayed and synthetic timestamps are not wall-clock
+     * arrival times.
+     */
+    public LatencyHistogram getSensorToDisk() {
+        return sensorToDisk;
+    }
+
+    public LatencyHistogram getBatchWrite() {
+        return batchWrite;
+    }
+
+    public LatencyHistogram getQuery() {
+        return query;
+    }
+
+    public LatencyHistogram getChartLoad() {
+        return chartLoad;
+    }
+
+    /**
+     * Writes a readable snapshot of every counter, gauge and histogram. Reads the database
+     * size, so keep it off the main thread.
+     */
+    public void dump(PrintWriter out, DatabaseHelper dbHelper) {
+        SensorWriter writer = dbHelper.getWriter();
+        out.println("Samples per channel");
+        out.println(String.format(Locale.US, "  %-14s %12s %12s %10s %10s %10s", "channel", "received", "written",
+                "rejected", "dropped", "coalesced"));
+        for (int i = 0; i < received.length(); i++) {
+            out.println(String.format(Locale.US, "  %-14s %12d %12d %10d %10d %10d",
+                    SensorChannelRegistry.getChannel(i).getName(), received.get(i), written.get(i), rejected.get(i),
+                    writer.getDroppedCount(i), writer.getCoalescedCount(i)));
+        }
+        out.println(String.format(Locale.US, "  failed batches %d (%d rows), failed registrations %d",
+                failedBatches.get(), failedRows.get(), registrationFailures.get()));
+
+        out.println("Gauges");
+        out.println(String.format(Locale.US, "  writer queue   %d / %d samples (%s backpressure)",
+                writer.getPendingCount(), writer.getCapacity(), writer.getBackpressurePolicy()));
+        out.println(String.format(Locale.US, "  database       %.1f KiB", dbHelper.getDatabaseSizeBytes() / 1024.0));
+        out.println(String.format(Locale.US, "  sample log     %.1f KiB", dbHelper.getLogSizeBytes() / 1024.0));
+
+        out.println("Latency (ms)");
+        out.println(String.format(Locale.US, "  %-14s %10s %9s %9s %9s %9s %9s %9s", "", "count", "mean", "p50", "p90",
+                "p99", "p99.9", "max"));
+        dumpHistogram(out, "sensor-to-disk", sensorToDisk);
+        dumpHistogram(out, "batch write", batchWrite);
+        dumpHistogram(out, "query", query);
+        dumpHistogram(out, "chart load", chartLoad);
+        out.flush();
+    }
+
+    private static void dumpHistogram(PrintWriter out, String name, LatencyHistogram histogram) {
+        out.println(String.format(Locale.US, "  %-14s %10d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f", name,
+                histogram.getCount(), histogram.getMeanNanos() / 1e6,
+                histogram.getValueAtQuantile(0.50) / 1e6, histogram.getValueAtQuantile(0.90) / 1e6,
+                histogram.getValueAtQuantile(0.99) / 1e6, histogram.getValueAtQuantile(0.999) / 1e6,
+                histogram.getMaxNanos() / 1e6));
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.sensor_app;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Plays back a recording in the binary format of {@link SensorExporter}. The channels in the
+ * file are available, at the rate they were recorded at whatever rate is registered, merged in
+ * time order and shifted so the recording starts when playback does.
+ *
+ * In real time samples are delivered when the wall clock reaches them; otherwise as fast as
+ * the listener keeps up, with the clock following the samples. Samples of a channel fall due
+ * while it is unregistered are skipped, as a sensor's would be.
+ */
+public class ReplaySampleSource implements SampleSource {
+    private static final String TAG = "ReplaySampleSource";
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // Samples delivered per scheduling turn when running as fast as possible
+    private static final int FAST_BATCH = 4096;
+    private static final int INPUT_BUFFER_BYTES = 64 * 1024;
+
+    private final Scheduler scheduler;
+    private final File recording;
+    private final boolean realTime;
+    private Listener listener;
+
+    // Indexed by the channel id byte of the file, which may hold channels this build lacks;
+    // 0 for channels the recording does not have
+    private final int[] axisCounts = new int[256];
+    // Indexed by SensorChannel id
+    private final Cursor[] cursors = new Cursor[SensorChannelRegistry.getChannelCount()];
+    private final boolean[] registered = new boolean[cursors.length];
+    private final float[] values = new float[3];
+    // Recorded timestamp + offset = delivered timestamp, set when the first sample is due
+    private long offsetNanos;
+    private boolean started;
+    private long clockNanos;
+    private boolean tickScheduled;
+    private boolean flushPending;
+
+    /**
+     * Reads the header of {@code recording}; samples are read as they are replayed.
+     */
+    public ReplaySampleSource(Scheduler scheduler, File recording, boolean realTime) throws IOException {
+        this.scheduler = scheduler;
+        this.recording = recording;
+        this.realTime = realTime;
+        this.clockNanos = System.currentTimeMillis() * NANOS_PER_MILLI;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(recording)));
+        try {
+            readHeader(in, axisCounts);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean isAvailable(int channel) {
+        return axisCounts[channel] > 0;
+    }
+
+    @Override
+    public boolean register(int channel, int samplingPeriodUs, int maxReportLatencyUs) {
+        if (axisCounts[channel] == 0) {
+            return false;
+        }
+        if (cursors[channel] == null) {
+            try {
+                cursors[channel] = new Cursor(channel);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open " + recording, e);
+                return false;
+            }
+            // Joining a replay in progress starts from now, not from the start of the file
+            Cursor cursor = cursors[channel];
+            while (started && !cursor.ended && cursor.timestamp() + offsetNanos <= getTimeNanos()) {
+                cursor.advance();
+            }
+        }
+        registered[channel] = true;
+        // A tick may be waiting for a later sample than this channel's next one
+        scheduler.cancel(tick);
+        tickScheduled = false;
+        scheduleTick(0);
+        return true;
+    }
+
+    @Override
+    public void unregister(int channel) {
+        registered[channel] = false;
+    }
+
+    @Override
+    public boolean flush() {
+        if (!isAnyRegistered()) {
+            return false;
+        }
+        flushPending = true;
+        scheduler.schedule(flushTask, 0);
+        return true;
+    }
+
+    @Override
+    public long getTimeNanos() {
+        return realTime ? System.currentTimeMillis() * NANOS_PER_MILLI : clockNanos;
+    }
+
+    /**
+     * @return true once every channel that was opened has played to its end
+     */
+    public boolean isFinished() {
+        for (Cursor cursor : cursors) {
+            if (cursor != null && !cursor.ended) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        scheduler.cancel(tick);
+        scheduler.cancel(flushTask);
+        tickScheduled = false;
+        for (int i = 0; i < cursors.length; i++) {
+            registered[i] = false;
+            if (cursors[i] != null) {
+                cursors[i].close();
+                cursors[i] = null;
+            }
+        }
+    }
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            tickScheduled = false;
+            if (!isAnyRegistered()) {
+                return;
+            }
+            long nextDue = replay();
+            if (nextDue == Long.MAX_VALUE) {
+                return;
+            }
+            scheduleTick(realTime ? Math.max(0, (nextDue - getTimeNanos()) / NANOS_PER_MILLI) : 0);
+        }
+    };
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!flushPending) {
+                return;
+            }
+            flushPending = false;
+            // Nothing is held back: every sample is delivered as soon as it is due
+            for (int i = 0; i < registered.length; i++) {
+                if (registered[i] && listener != null) {
+                    listener.onFlushCompleted(i);
+                }
+            }
+        }
+    };
+
+    private void scheduleTick(long delayMs) {
+        if (!tickScheduled) {
+            tickScheduled = true;
+            scheduler.schedule(tick, delayMs);
+        }
+    }
+
+    private boolean isAnyRegistered() {
+        for (boolean isRegistered : registered) {
+            if (isRegistered) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Delivers the due samples of every open channel in time order; returns when the next one
+    // is due, or Long.MAX_VALUE at the end of the recording
+    private long replay() {
+        if (!started) {
+            long first = Long.MAX_VALUE;
+            for (Cursor cursor : cursors) {
+                if (cursor != null && !cursor.ended) {
+                    first = Math.min(first, cursor.timestamp());
+                }
+            }
+            if (first == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            offsetNanos = getTimeNanos() - first;
+            started = true;
+        }
+        int delivered = 0;
+        while (true) {
+            Cursor next = null;
+            for (Cursor cursor : cursors) {
+                if (cursor != null && !cursor.ended && (next == null || cursor.timestamp() < next.timestamp())) {
+                    next = cursor;
+                }
+            }
+            if (next == null) {
+                return Long.MAX_VALUE;
+            }
+            long timestamp = next.timestamp() + offsetNanos;
+            if (realTime ? timestamp > getTimeNanos() : delivered == FAST_BATCH) {
+                return timestamp;
+            }
+            if (!realTime) {
+                clockNanos = timestamp;
+            }
+            if (registered[next.channel] && listener != null) {
+                values[0] = next.xs[next.position];
+                values[1] = next.ys[next.position];
+                values[2] = next.zs[next.position];
+                listener.onSample(next.channel, timestamp, values, next.accuracies[next.position]);
+                delivered++;
+            }
+            next.advance();
+        }
+    }
+
+    private static void readHeader(DataInputStream in, int[] axisCounts) throws IOException {
+        if (in.readInt() != SensorExporter.MAGIC) {
+            throw new IOException("Not a sensor export");
+        }
+        int version = in.readShort();
+        if (version != SensorExporter.VERSION) {
+            throw new IOException("Unsupported export version " + version);
+        }
+        int channelCount = in.readUnsignedByte();
+        for (int i = 0; i < channelCount; i++) {
+            int channel = in.readUnsignedByte();
+            int axisCount = in.readUnsignedByte();
+            in.readUTF();
+            in.readUTF();
+            axisCounts[channel] = axisCount;
+        }
+    }
+
+    /**
+     * Reads one channel's chunks from its own stream over the file, skipping everyone else's.
+     * Channels are exported one after another, so each needs its own position to merge them.
+     */
+    private class Cursor {
+        final int channel;
+        final DataInputStream in;
+        long[] timestamps = new long[0];
+        float[] xs = new float[0];
+        float[] ys = new float[0];
+        float[] zs = new float[0];
+        byte[] accuracies = new byte[0];
+        int size;
+        int position;
+        boolean ended;
+
+        Cursor(int channel) throws IOException {
+            this.channel = channel;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(recording), INPUT_BUFFER_BYTES));
+            readHeader(in, new int[axisCounts.length]);
+            readChunk();
+        }
+
+        long timestamp() {
+            return timestamps[position];
+        }
+
+        void advance() {
+            if (++position == size) {
+                readChunk();
+            }
+        }
+
+        private void readChunk() {
+            try {
+                while (true) {
+                    int chunkChannel = in.readUnsignedByte();
+                    int rows = in.readInt();
+                    if (rows == 0) {
+                        end();
+                        return;
+                    }
+                    // Decoded even when skipped: the varint deltas leave no other way to the next chunk
+                    decode(rows, axisCounts[chunkChannel]);
+                    if (chunkChannel == channel) {
+                        return;
+                    }
+                }
+            } catch (EOFException e) {
+                Log.w(TAG, "Recording " + recording + " ends without an end marker");
+                end();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read " + recording, e);
+                end();
+            }
+        }
+
+        private void decode(int rows, int axisCount) throws IOException {
+            if (timestamps.length < rows) {
+                timestamps = new long[rows];
+                xs = new float[rows];
+                ys = new float[rows];
+                zs = new float[rows];
+                accuracies = new byte[rows];
+            }
+            long timestamp = in.readLong();
+            timestamps[0] = timestamp;
+            for (int i = 1; i < rows; i++) {
+                long zigzag = readVarLong(in);
+                timestamp += (zigzag >>> 1) ^ -(zigzag & 1);
+                timestamps[i] = timestamp;
+            }
+            readAxis(xs, rows, axisCount > 0);
+            readAxis(ys, rows, axisCount > 1);
+            readAxis(zs, rows, axisCount > 2);
+            in.readFully(accuracies, 0, rows);
+            size = rows;
+            position = 0;
+        }
+
+        private void readAxis(float[] axis, int rows, boolean present) throws IOException {
+            for (int i = 0; i < rows; i++) {
+                axis[i] = present ? in.readFloat() : Float.NaN;
+            }
+        }
+
+        private void end() {
+            ended = true;
+            close();
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close " + recording, e);
+            }
+        }
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
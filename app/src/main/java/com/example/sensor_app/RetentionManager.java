@@ -0,0 +1,110 @@
+package com.example.sensor_app;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Applies each sensor's {@link RetentionPolicy} during the writer's idle time. Work is split
+ * into small steps (one bounded delete or vacuum chunk each) so a maintenance cycle never holds
+ * the database for long and the writer can flush batches in between.
+ */
+public class RetentionManager implements SensorWriter.MaintenanceTask {
+    private static final String TAG = "RetentionManager";
+    private static final int DELETE_CHUNK_ROWS = 2000;
+    private static final int VACUUM_PAGES_PER_STEP = 256;
+    private static final int FEATURE_TIER = DatabaseHelper.ROLLUP_RESOLUTIONS_NANOS.length + 1;
+
+    private final DatabaseHelper dbHelper;
+    // Set from any thread, read by the writer thread
+    private final AtomicReferenceArray<RetentionPolicy> policies;
+
+    // Cursor into the current cycle: tier 0 is raw rows, tier r + 1 is rollup resolution r and
+    // the last tier is the feature windows
+    private int sensor;
+    private int tier;
+    private boolean vacuuming;
+    private long cycleStart;
+    private long deletedRows;
+
+    public RetentionManager(DatabaseHelper dbHelper, RetentionPolicy[] policies) {
+        this.dbHelper = dbHelper;
+        this.policies = new AtomicReferenceArray<>(policies);
+    }
+
+    /**
+     * Safe from any thread; takes effect from the writer's next delete step.
+     */
+    public void setPolicy(int sensor, RetentionPolicy policy) {
+        policies.set(sensor, policy);
+    }
+
+    @Override
+    public boolean runStep() {
+        if (cycleStart == 0) {
+            cycleStart = System.currentTimeMillis();
+            deletedRows = 0;
+        }
+
+        if (!vacuuming) {
+            if (deleteChunk()) {
+                return true;
+            }
+            // Move to the next tier, then the next sensor
+            tier++;
+            if (tier > FEATURE_TIER) {
+                tier = 0;
+                sensor++;
+            }
+            if (sensor < policies.length()) {
+                return true;
+            }
+            vacuuming = true;
+            return true;
+        }
+
+        // Give the pages freed by the deletes back to the file system, a chunk at a time
+        if (dbHelper.incrementalVacuum(VACUUM_PAGES_PER_STEP) > 0) {
+            return true;
+        }
+        dbHelper.checkpointWal();
+
+        Log.i(TAG, "Retention cycle deleted " + deletedRows + " rows in "
+                + (System.currentTimeMillis() - cycleStart) + " ms, database is "
+                + dbHelper.getDatabaseSizeBytes() + " bytes, logs are " + dbHelper.getLogSizeBytes() + " bytes");
+        sensor = 0;
+        tier = 0;
+        vacuuming = false;
+        cycleStart = 0;
+        return false;
+    }
+
+    // Deletes one chunk for the current sensor and tier; true if that tier may have more to delete
+    private boolean deleteChunk() {
+        RetentionPolicy policy = policies.get(sensor);
+        long maxAge;
+        if (tier == 0) {
+            maxAge = policy.getRawMillis();
+        } else if (tier == FEATURE_TIER) {
+            // A feature window is a few seconds of data, so it is kept as long as the 1 s rollups
+            maxAge = policy.getRollupMillis(0);
+        } else {
+            maxAge = policy.getRollupMillis(tier - 1);
+        }
+        if (maxAge == RetentionPolicy.UNLIMITED) {
+            return false;
+        }
+
+        long cutoffNanos = (cycleStart - maxAge) * 1000000L;
+        int deleted;
+        if (tier == 0) {
+            deleted = dbHelper.deleteRawBefore(sensor, cutoffNanos, DELETE_CHUNK_ROWS);
+        } else if (tier == FEATURE_TIER) {
+            deleted = dbHelper.deleteFeaturesBefore(sensor, cutoffNanos, DELETE_CHUNK_ROWS);
+        } else {
+            deleted = dbHelper.deleteRollupBefore(sensor, tier - 1, cutoffNanos, DELETE_CHUNK_ROWS);
+        }
+        deletedRows += deleted;
+        return deleted >= DELETE_CHUNK_ROWS;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.sensor_app;
+
+/**
+ * How long one sensor's data is kept at each tier. Raw rows go first; the rollups outlive them,
+ * coarsest longest, so old history is still chartable at reduced resolution.
+ */
+public class RetentionPolicy {
+    // Keep forever
+    public static final long UNLIMITED = 0;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final long rawMillis;
+    private final long[] rollupMillis;
+
+    /**
+     * @param rawMillis    age after which raw rows are deleted, or {@link #UNLIMITED}
+     * @param rollupMillis age limit per rollup resolution, in DatabaseHelper.ROLLUP_RESOLUTIONS_NANOS order
+     */
+    public RetentionPolicy(long rawMillis, long... rollupMillis) {
+        this.rawMillis = rawMillis;
+        this.rollupMillis = rollupMillis;
+    }
+
+    /**
+     * Raw rows for {@code rawDays}, 1 s rollups for 30 days, 1 min rollups for a year, 1 h rollups forever.
+     */
+    public static RetentionPolicy days(int rawDays) {
+        return new RetentionPolicy(rawDays * MILLIS_PER_DAY, 30 * MILLIS_PER_DAY, 365 * MILLIS_PER_DAY, UNLIMITED);
+    }
+
+    public long getRawMillis() {
+        return rawMillis;
+    }
+
+    public long getRollupMillis(int resolution) {
+        return resolution < rollupMillis.length ? rollupMillis[resolution] : UNLIMITED;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.sensor_app;
+
+/**
+ * Mean, variance, min, max and RMS of a stream of values, updated in O(1) per value with
+ * Welford's algorithm, which stays accurate where a plain sum of squares would cancel out.
+ * {@link #reset} starts a new window.
+ */
+public class RollingStats {
+    private int count;
+    private double mean;
+    // Sum of squared differences from the current mean
+    private double m2;
+    private double sumOfSquares;
+    private float min;
+    private float max;
+
+    public void add(float value) {
+        if (Float.isNaN(value)) {
+            return;
+        }
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        sumOfSquares += (double) value * value;
+        if (count == 1 || value < min) {
+            min = value;
+        }
+        if (count == 1 || value > max) {
+            max = value;
+        }
+    }
+
+    public void reset() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        sumOfSquares = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * Population variance of the window.
+     */
+    public double getVariance() {
+        return count > 0 ? m2 / count : Double.NaN;
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    public float getMin() {
+        return count > 0 ? min : Float.NaN;
+    }
+
+    public float getMax() {
+        return count > 0 ? max : Float.NaN;
+    }
+
+    public double getRms() {
+        return count > 0 ? Math.sqrt(sumOfSquares / count) : Double.NaN;
+    }
+}
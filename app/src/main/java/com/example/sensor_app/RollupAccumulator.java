@@ -0,0 +1,108 @@
+package com.example.sensor_app;
+
+/**
+ * Running min, max, sum and sum of squares per axis for one rollup bucket of one sensor.
+ * {@link DatabaseHelper} keeps one per sensor and resolution on the writer thread and merges it
+ * into the rollup tables whenever a batch moves past the bucket.
+ */
+public class RollupAccumulator {
+    public static final int AXES = 3;
+
+    private final long resolutionNanos;
+
+    private long bucket = Long.MIN_VALUE;
+    private int count;
+    private final float[] min = new float[AXES];
+    private final float[] max = new float[AXES];
+    private final double[] sum = new double[AXES];
+    private final double[] sumOfSquares = new double[AXES];
+    // Number of non-NaN values seen per axis
+    private final int[] axisCount = new int[AXES];
+
+    public RollupAccumulator(long resolutionNanos) {
+        this.resolutionNanos = resolutionNanos;
+    }
+
+    public long getResolutionNanos() {
+        return resolutionNanos;
+    }
+
+    /**
+     * Start of the bucket {@code timestamp} falls into.
+     */
+    public long bucketOf(long timestamp) {
+        long remainder = timestamp % resolutionNanos;
+        return remainder >= 0 ? timestamp - remainder : timestamp - remainder - resolutionNanos;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long getBucket() {
+        return bucket;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Adds a sample. The caller must merge and {@link #reset} first if the sample falls into a
+     * different bucket.
+     */
+    public void add(long timestamp, float x, float y, float z) {
+        if (count == 0) {
+            bucket = bucketOf(timestamp);
+        }
+        addAxis(0, x);
+        addAxis(1, y);
+        addAxis(2, z);
+        count++;
+    }
+
+    private void addAxis(int axis, float value) {
+        if (Float.isNaN(value)) {
+            return;
+        }
+        if (axisCount[axis] == 0 || value < min[axis]) {
+            min[axis] = value;
+        }
+        if (axisCount[axis] == 0 || value > max[axis]) {
+            max[axis] = value;
+        }
+        sum[axis] += value;
+        sumOfSquares[axis] += (double) value * value;
+        axisCount[axis]++;
+    }
+
+    public boolean hasAxis(int axis) {
+        return axisCount[axis] > 0;
+    }
+
+    public float getMin(int axis) {
+        return min[axis];
+    }
+
+    public float getMax(int axis) {
+        return max[axis];
+    }
+
+    public double getSum(int axis) {
+        return sum[axis];
+    }
+
+    public double getSumOfSquares(int axis) {
+        return sumOfSquares[axis];
+    }
+
+    public void reset() {
+        count = 0;
+        bucket = Long.MIN_VALUE;
+        for (int axis = 0; axis < AXES; axis++) {
+            axisCount[axis] = 0;
+            sum[axis] = 0;
+            sumOfSquares[axis] = 0;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.sensor_app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated single-producer/single-consumer ring of sensor samples for one sensor.
+ * Samples live in parallel primitive arrays, so offering and draining never allocate.
+ *
+ * The producer (the sensor callback thread) only calls {@link #offer}; the consumer (the
+ * writer thread) only calls {@link #drainTo}. {@code head} is written by the producer alone.
+ * {@code tail} is advanced by the consumer, and by the producer when it drops the oldest
+ * sample, so both sides move it with compare-and-set.
+ */
+public class SampleRingBuffer {
+    private final int mask;
+    private final int sensor;
+    private final BackpressurePolicy policy;
+
+    private final long[] timestamps;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+    private final int[] accuracies;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Newest sample held back while the ring is full under COALESCE, producer thread only
+    private boolean pendingValid;
+    private long pendingTimestamp;
+    private float pendingX;
+    private float pendingY;
+    private float pendingZ;
+    private int pendingAccuracy;
+
+    // Only written by the producer thread
+    private volatile long droppedCount;
+    private volatile long coalescedCount;
+
+    /**
+     * @param capacity number of samples, rounded up to a power of two
+     */
+    public SampleRingBuffer(int sensor, int capacity, BackpressurePolicy policy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sensor = sensor;
+        this.policy = policy;
+        timestamps = new long[size];
+        xs = new float[size];
+        ys = new float[size];
+        zs = new float[size];
+        accuracies = new int[size];
+    }
+
+    public int getSensor() {
+        return sensor;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    /**
+     * Adds a sample, applying the backpressure policy when the ring is full.
+     *
+     * @return false if the sample was not added to the ring (coalesced or dropped)
+     */
+    public boolean offer(long timestamp, float x, float y, float z, int accuracy) {
+        // Room again: release the coalesced sample before the new one
+        publishPending();
+
+        if (!hasRoom()) {
+            if (policy == BackpressurePolicy.BLOCK) {
+                while (!hasRoom()) {
+                    LockSupport.parkNanos(100000L);
+                }
+            } else if (policy == BackpressurePolicy.COALESCE) {
+                if (pendingValid) {
+                    coalescedCount++;
+                }
+                pendingValid = true;
+                pendingTimestamp = timestamp;
+                pendingX = x;
+                pendingY = y;
+                pendingZ = z;
+                pendingAccuracy = accuracy;
+                return false;
+            } else {
+                // DROP_OLDEST: claim the oldest slot from the consumer before reusing it
+                long t = tail.get();
+                if (head.get() - t > mask && tail.compareAndSet(t, t + 1)) {
+                    droppedCount++;
+                }
+            }
+        }
+
+        publish(timestamp, x, y, z, accuracy);
+        return true;
+    }
+
+    /**
+     * Releases a sample held back under COALESCE if the consumer has made room. Producer thread
+     * only; call it when the stream pauses so the newest sample is not left behind.
+     */
+    public void publishPending() {
+        if (pendingValid && hasRoom()) {
+            pendingValid = false;
+            publish(pendingTimestamp, pendingX, pendingY, pendingZ, pendingAccuracy);
+        }
+    }
+
+    private boolean hasRoom() {
+        return head.get() - tail.get() <= mask;
+    }
+
+    private void publish(long timestamp, float x, float y, float z, int accuracy) {
+        long h = head.get();
+        int index = (int) h & mask;
+        timestamps[index] = timestamp;
+        xs[index] = x;
+        ys[index] = y;
+        zs[index] = z;
+        accuracies[index] = accuracy;
+        // Ordered store: the slot is fully written before the consumer can see it
+        head.lazySet(h + 1);
+    }
+
+    /**
+     * Moves queued samples into {@code batch}, up to its remaining capacity.
+     *
+     * @return number of samples moved
+     */
+    public int drainTo(SensorWriteBuffer batch) {
+        int start = batch.size();
+        while (true) {
+            long t = tail.get();
+            long h = head.get();
+            int count = (int) Math.min(h - t, batch.capacity() - start);
+            if (count <= 0) {
+                return 0;
+            }
+            for (int i = 0; i < count; i++) {
+                int index = (int) (t + i) & mask;
+                batch.add(sensor, timestamps[index], xs[index], ys[index], zs[index], accuracies[index]);
+            }
+            // If the producer dropped samples meanwhile, some of what was copied may be overwritten
+            if (tail.compareAndSet(t, t + count)) {
+                return count;
+            }
+            batch.truncate(start);
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.sensor_app;
+
+/**
+ * Where samples come from: the device's sensors, a synthetic generator or a recording.
+ * {@link SensorService} drives one source, and tests and benchmarks can drive the others
+ * without a device. Channels are {@link SensorChannel} ids, and timestamps are nanoseconds
+ * since the epoch on the source's clock.
+ *
+ * A source is single-threaded. Its methods and every listener call run on one thread: the
+ * handler thread for the hardware source, or whatever runs its {@link Scheduler} for the
+ * others.
+ */
+public interface SampleSource {
+    interface Listener {
+        /**
+         * One sample. {@code values} is reused between calls and holds at least the channel's
+         * axes.
+         */
+        void onSample(int channel, long timestamp, float[] values, int accuracy);
+
+        /**
+         * Everything the channel had buffered when {@link #flush} was called has been delivered.
+         */
+        void onFlushCompleted(int channel);
+    }
+
+    /**
+     * Runs a source's work on the caller's thread of choice, e.g. a Handler on Android or a
+     * scheduled executor on a plain JVM.
+     */
+    interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+    }
+
+    void setListener(Listener listener);
+
+    boolean isAvailable(int channel);
+
+    /**
+     * Starts delivering a channel, or changes its rate if it is already running.
+     *
+     * @param maxReportLatencyUs how long samples may be held back and delivered in a batch
+     * @return false if the channel cannot be delivered
+     */
+    boolean register(int channel, int samplingPeriodUs, int maxReportLatencyUs);
+
+    void unregister(int channel);
+
+    /**
+     * Asks every registered channel to deliver what it holds back, followed by
+     * {@link Listener#onFlushCompleted}.
+     *
+     * @return false if no channel is registered
+     */
+    boolean flush();
+
+    /**
+     * Current time on the clock samples are stamped with.
+     */
+    long getTimeNanos();
+
+    /**
+     * Unregisters everything and releases the source.
+     */
+    void close();
+}
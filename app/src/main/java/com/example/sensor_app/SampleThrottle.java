@@ -0,0 +1,29 @@
+package com.example.sensor_app;
+
+/**
+ * Lets through at most one sample per period of sample time, e.g. to deliver a fast sensor to
+ * a listener at the rate it asked for. The first sample always passes. Not thread-safe.
+ */
+public class SampleThrottle {
+    private final long periodNanos;
+    // Whether anything passed yet; lastTimestamp is meaningless until then
+    private boolean started;
+    private long lastTimestamp;
+
+    public SampleThrottle(long periodNanos) {
+        this.periodNanos = periodNanos;
+    }
+
+    /**
+     * @return true if the sample at {@code timestamp} should be passed on, which makes it the
+     *         start of the next period
+     */
+    public boolean tryPass(long timestamp) {
+        if (started && timestamp - lastTimestamp < periodNanos) {
+            return false;
+        }
+        started = true;
+        lastTimestamp = timestamp;
+        return true;
+    }
+}
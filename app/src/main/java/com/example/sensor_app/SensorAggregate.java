@@ -0,0 +1,91 @@
+package com.example.sensor_app;
+
+/**
+ * Count, min, max, mean and standard deviation per axis of one channel over a time window, as
+ * filled in by {@link DatabaseHelper#aggregate}. Callers keep one and reuse it between queries.
+ */
+public class SensorAggregate {
+    public static final int AXES = 3;
+
+    private long count;
+    private final long[] axisCount = new long[AXES];
+    private final float[] min = new float[AXES];
+    private final float[] max = new float[AXES];
+    private final double[] sum = new double[AXES];
+    private final double[] sumOfSquares = new double[AXES];
+
+    public void reset() {
+        count = 0;
+        for (int axis = 0; axis < AXES; axis++) {
+            axisCount[axis] = 0;
+            sum[axis] = 0;
+            sumOfSquares[axis] = 0;
+        }
+    }
+
+    /**
+     * Adds one raw sample; NaN axes are skipped.
+     */
+    public void add(float x, float y, float z) {
+        addAxis(0, x);
+        addAxis(1, y);
+        addAxis(2, z);
+        count++;
+    }
+
+    private void addAxis(int axis, float value) {
+        if (!Float.isNaN(value)) {
+            merge(axis, 1, value, value, value, (double) value * value);
+        }
+    }
+
+    /**
+     * Adds the statistics of {@code count} values of one axis, e.g. from a rollup bucket.
+     */
+    void merge(int axis, long count, float min, float max, double sum, double sumOfSquares) {
+        if (axisCount[axis] == 0 || min < this.min[axis]) {
+            this.min[axis] = min;
+        }
+        if (axisCount[axis] == 0 || max > this.max[axis]) {
+            this.max[axis] = max;
+        }
+        this.sum[axis] += sum;
+        this.sumOfSquares[axis] += sumOfSquares;
+        axisCount[axis] += count;
+    }
+
+    void addCount(long rows) {
+        count += rows;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean hasAxis(int axis) {
+        return axisCount[axis] > 0;
+    }
+
+    // The getters below are NaN for an axis without values
+
+    public float getMin(int axis) {
+        return hasAxis(axis) ? min[axis] : Float.NaN;
+    }
+
+    public float getMax(int axis) {
+        return hasAxis(axis) ? max[axis] : Float.NaN;
+    }
+
+    public double getMean(int axis) {
+        return hasAxis(axis) ? sum[axis] / axisCount[axis] : Double.NaN;
+    }
+
+    public double getStdDev(int axis) {
+        if (!hasAxis(axis)) {
+            return Double.NaN;
+        }
+        double mean = sum[axis] / axisCount[axis];
+        // Rounding can take the difference slightly below zero for a constant signal
+        return Math.sqrt(Math.max(sumOfSquares[axis] / axisCount[axis] - mean * mean, 0));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.sensor_app;
+
+/**
+ * Per-sensor capture settings used by {@link SensorService}.
+ */
+public class SensorCaptureConfig {
+    private volatile CaptureMode mode;
+    private final int samplingPeriodUs;
+    private final int maxReportLatencyUs;
+    private final long snapshotIntervalMs;
+    private final int idleSamplingPeriodUs;
+    private final float activityThreshold;
+
+    /**
+     * @param samplingPeriodUs   requested time between events in continuous mode
+     * @param maxReportLatencyUs how long the hardware may hold events in its FIFO before delivering
+     *                           them; 0 disables batching
+     * @param snapshotIntervalMs time between readings in periodic snapshot mode
+     * @param idleSamplingPeriodUs time between events in adaptive mode while the signal is idle;
+     *                             0 turns the sensor off until significant motion
+     * @param activityThreshold    change that switches adaptive mode to the full rate, or NaN if
+     *                             the sensor cannot be captured adaptively
+     */
+    public SensorCaptureConfig(CaptureMode mode, int samplingPeriodUs, int maxReportLatencyUs,
+                               long snapshotIntervalMs, int idleSamplingPeriodUs, float activityThreshold) {
+        this.mode = mode;
+        this.samplingPeriodUs = samplingPeriodUs;
+        this.maxReportLatencyUs = maxReportLatencyUs;
+        this.snapshotIntervalMs = snapshotIntervalMs;
+        this.idleSamplingPeriodUs = idleSamplingPeriodUs;
+        this.activityThreshold = activityThreshold;
+    }
+
+    public CaptureMode getMode() {
+        return mode;
+    }
+
+    public void setMode(CaptureMode mode) {
+        this.mode = mode;
+    }
+
+    public int getSamplingPeriodUs() {
+        return samplingPeriodUs;
+    }
+
+    public int getMaxReportLatencyUs() {
+        return maxReportLatencyUs;
+    }
+
+    public long getSnapshotIntervalMs() {
+        return snapshotIntervalMs;
+    }
+
+    public int getIdleSamplingPeriodUs() {
+        return idleSamplingPeriodUs;
+    }
+
+    public float getActivityThreshold() {
+        return activityThreshold;
+    }
+}
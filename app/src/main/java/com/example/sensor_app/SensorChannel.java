@@ -0,0 +1,117 @@
+package com.example.sensor_app;
+
+/**
+ * Everything the app needs to know about one recorded sensor type: where its samples are
+ * stored, how it is captured by default and how it is labelled on screen. Channels are listed
+ * in {@link SensorChannelRegistry}; the id is the dense index used by the write path, rollups
+ * and retention.
+ */
+public class SensorChannel {
+    /**
+     * Sensor type of channels computed from other channels rather than read from a sensor.
+     */
+    public static final int TYPE_DERIVED = -1;
+
+    private final int id;
+    private final int sensorType;
+    private final String name;
+    private final String unit;
+    private final int axisCount;
+    private final String tableName;
+    private final StorageEngine storageEngine;
+    private final CaptureMode captureMode;
+    private final int samplingPeriodUs;
+    private final int maxReportLatencyUs;
+    private final int rawRetentionDays;
+    private final int idleSamplingPeriodUs;
+    private final float activityThreshold;
+    private final int fftSize;
+
+    /**
+     * @param sensorType one of the {@code Sensor.TYPE_*} constants, or {@link #TYPE_DERIVED}
+     * @param axisCount  number of values stored per sample, at most three
+     * @param samplingPeriodUs     time between events in microseconds, not a
+     *                             {@code SensorManager.SENSOR_DELAY_*} constant
+     * @param idleSamplingPeriodUs rate while idle in {@link CaptureMode#ADAPTIVE}; 0 waits for
+     *                             significant motion instead
+     * @param activityThreshold    change in the channel's unit that counts as activity, or NaN
+     *                             for channels that are never captured adaptively
+     * @param fftSize              samples per FFT in the feature stage, a power of two, or 0
+     *                             for statistics only
+     */
+    public SensorChannel(int id, int sensorType, String name, String unit, int axisCount, String tableName,
+                         StorageEngine storageEngine, CaptureMode captureMode, int samplingPeriodUs,
+                         int maxReportLatencyUs, int rawRetentionDays, int idleSamplingPeriodUs,
+                         float activityThreshold, int fftSize) {
+        this.id = id;
+        this.sensorType = sensorType;
+        this.name = name;
+        this.unit = unit;
+        this.axisCount = axisCount;
+        this.tableName = tableName;
+        this.storageEngine = storageEngine;
+        this.captureMode = captureMode;
+        this.samplingPeriodUs = samplingPeriodUs;
+        this.maxReportLatencyUs = maxReportLatencyUs;
+        this.rawRetentionDays = rawRetentionDays;
+        this.idleSamplingPeriodUs = idleSamplingPeriodUs;
+        this.activityThreshold = activityThreshold;
+        this.fftSize = fftSize;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getSensorType() {
+        return sensorType;
+    }
+
+    public boolean isDerived() {
+        return sensorType == TYPE_DERIVED;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public int getAxisCount() {
+        return axisCount;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Engine holding the raw rows; the table name doubles as the log directory name.
+     */
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
+    public int getRawRetentionDays() {
+        return rawRetentionDays;
+    }
+
+    /**
+     * Feature stage for this channel's stored samples. Peaks must rise at least the activity
+     * threshold above the signal's running mean.
+     */
+    public FeatureExtractor newFeatureExtractor(long windowMs) {
+        return new FeatureExtractor(id, axisCount, windowMs, fftSize,
+                Float.isNaN(activityThreshold) ? 0 : activityThreshold);
+    }
+
+    /**
+     * Fresh capture settings with this channel's defaults; the caller may change the mode.
+     */
+    public SensorCaptureConfig newCaptureConfig(long snapshotIntervalMs) {
+        return new SensorCaptureConfig(captureMode, samplingPeriodUs, maxReportLatencyUs, snapshotIntervalMs,
+                idleSamplingPeriodUs, activityThreshold);
+    }
+}
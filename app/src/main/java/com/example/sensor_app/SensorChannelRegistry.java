@@ -0,0 +1,194 @@
+package com.example.sensor_app;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.List;
+
+/**
+ * The table of recorded sensor channels, plus the hardware sensors found on this device.
+ * Adding a sensor means adding one line to {@link #CHANNELS}; storage, capture, retention and
+ * the chart screen are all driven from it.
+ *
+ * Channel ids are stored in the rollup tables, so entries must only ever be appended.
+ */
+public class SensorChannelRegistry {
+    private static final String TAG = "SensorChannelRegistry";
+
+    public static final int LIGHT = 0;
+    public static final int PROXIMITY = 1;
+    public static final int ACCELEROMETER = 2;
+    public static final int GYROSCOPE = 3;
+    public static final int PRESSURE = 4;
+    public static final int MAGNETOMETER = 5;
+    public static final int STEP_COUNTER = 6;
+    // Derived by fusing the accelerometer and gyroscope
+    public static final int ORIENTATION = 7;
+    public static final int LINEAR_ACCELERATION = 8;
+
+    private static final int ONE_SECOND_US = 1000000;
+    // The period SENSOR_DELAY_NORMAL stands for; periods are always microseconds here, never the
+    // SENSOR_DELAY_* constants, since subscriber rates, the rate log and synthetic sources do
+    // arithmetic on them
+    private static final int NORMAL_PERIOD_US = 200000;
+    // 2.56 s of motion at 100 Hz, enough to resolve gait and tremor frequencies
+    private static final int FFT_SIZE = 256;
+
+    // Light and proximity only matter around changes, so they stream into a trigger engine; other
+    // slow sensors are snapshotted or batched for long periods and kept compressed in SQLite; motion
+    // sensors stream at 50-100 Hz into the append-only log, dropping to a low rate (or off,
+    // until significant motion) while the device is still
+    private static final SensorChannel[] CHANNELS = {
+            new SensorChannel(LIGHT, Sensor.TYPE_LIGHT, "Light", "lx", 1, "light_sensor",
+                    StorageEngine.COMPRESSED, CaptureMode.TRIGGERED, NORMAL_PERIOD_US, 0, 30,
+                    ONE_SECOND_US, 20f, 0),
+            new SensorChannel(PROXIMITY, Sensor.TYPE_PROXIMITY, "Proximity", "cm", 1, "proximity_sensor",
+                    StorageEngine.COMPRESSED, CaptureMode.TRIGGERED, NORMAL_PERIOD_US, 0, 30,
+                    ONE_SECOND_US, 1f, 0),
+            new SensorChannel(ACCELEROMETER, Sensor.TYPE_ACCELEROMETER, "Accelerometer", "m/s\u00b2", 3,
+                    "accelerometer_sensor", StorageEngine.LOG, CaptureMode.ADAPTIVE, 10000, ONE_SECOND_US, 7,
+                    ONE_SECOND_US / 5, 0.3f, FFT_SIZE),
+            new SensorChannel(GYROSCOPE, Sensor.TYPE_GYROSCOPE, "Gyroscope", "rad/s", 3, "gyroscope_sensor",
+                    StorageEngine.LOG, CaptureMode.ADAPTIVE, 10000, ONE_SECOND_US, 7,
+                    ONE_SECOND_US, 0.1f, FFT_SIZE),
+            new SensorChannel(PRESSURE, Sensor.TYPE_PRESSURE, "Pressure", "hPa", 1, "pressure_sensor",
+                    StorageEngine.COMPRESSED, CaptureMode.CONTINUOUS_STREAM, ONE_SECOND_US, 10 * ONE_SECOND_US, 30,
+                    10 * ONE_SECOND_US, 0.05f, 0),
+            new SensorChannel(MAGNETOMETER, Sensor.TYPE_MAGNETIC_FIELD, "Magnetometer", "\u00b5T", 3,
+                    "magnetometer_sensor", StorageEngine.LOG, CaptureMode.ADAPTIVE, 20000, ONE_SECOND_US, 7,
+                    0, 2f, 0),
+            // On-change: the period only caps the rate, events come when the count changes
+            new SensorChannel(STEP_COUNTER, Sensor.TYPE_STEP_COUNTER, "Step Counter", "steps", 1,
+                    "step_counter_sensor", StorageEngine.COMPRESSED, CaptureMode.CONTINUOUS_STREAM,
+                    NORMAL_PERIOD_US, 10 * ONE_SECOND_US, 30, 0, Float.NaN, 0),
+            // Computed at ingest, one sample per gyroscope sample; the rate fields are unused
+            new SensorChannel(ORIENTATION, SensorChannel.TYPE_DERIVED, "Orientation", "\u00b0", 3,
+                    "orientation", StorageEngine.LOG, CaptureMode.CONTINUOUS_STREAM, 10000, 0, 7, 0, Float.NaN,
+                    0),
+            new SensorChannel(LINEAR_ACCELERATION, SensorChannel.TYPE_DERIVED, "Linear Acceleration", "m/s\u00b2",
+                    3, "linear_acceleration", StorageEngine.LOG, CaptureMode.CONTINUOUS_STREAM, 10000, 0, 7, 0,
+                    Float.NaN, FFT_SIZE)
+    };
+
+    // Events captured in full in CaptureMode.TRIGGERED, indexed by channel id
+    private static final TriggerRule[][] TRIGGER_RULES = {
+            {TriggerRule.rateOfChange("Light spike", 0, 500f)},
+            {TriggerRule.below("Proximity near", 0, 1f)},
+            {TriggerRule.above("Shock", TriggerRule.MAGNITUDE, 3 * SensorManager.GRAVITY_EARTH),
+                    TriggerRule.windowAbove("Shaking", TriggerRule.MAGNITUDE, TriggerRule.Statistic.STD_DEV, 50, 4f)},
+            {TriggerRule.above("Fast rotation", TriggerRule.MAGNITUDE, 6f)},
+            {TriggerRule.rateOfChange("Pressure jump", 0, 1f)},
+            {},
+            {},
+            {},
+            {TriggerRule.above("Shock", TriggerRule.MAGNITUDE, 2 * SensorManager.GRAVITY_EARTH)}
+    };
+    private static SensorChannelRegistry instance;
+    // The application context, so the singleton does not hold on to an activity
+    private final Context context;
+
+    // Indexed by channel id; null where the device has no such sensor
+    private final Sensor[] sensors = new Sensor[CHANNELS.length];
+    // Sensor.TYPE_* to channel, for dispatching events without comparing types one by one
+    private final SparseArray<SensorChannel> channelsByType = new SparseArray<>();
+
+    public static synchronized SensorChannelRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new SensorChannelRegistry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SensorChannelRegistry(Context context) {
+        this.context = context;
+        SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        SparseArray<SensorChannel> knownTypes = new SparseArray<>(CHANNELS.length);
+        for (SensorChannel channel : CHANNELS) {
+            if (channel.isDerived()) {
+                continue;
+            }
+            knownTypes.put(channel.getSensorType(), channel);
+        }
+
+        List<Sensor> available = sensorManager.getSensorList(Sensor.TYPE_ALL);
+        for (Sensor sensor : available) {
+            SensorChannel channel = knownTypes.get(sensor.getType());
+            if (channel == null) {
+                Log.d(TAG, "No channel for " + sensor.getStringType() + " (" + sensor.getName() + ")");
+                continue;
+            }
+            if (sensors[channel.getId()] == null) {
+                // Several sensors may share a type (e.g. wake-up variants); record the default one
+                sensors[channel.getId()] = sensorManager.getDefaultSensor(channel.getSensorType());
+                channelsByType.put(channel.getSensorType(), channel);
+            }
+        }
+    }
+
+    public static int getChannelCount() {
+        return CHANNELS.length;
+    }
+
+    public static SensorChannel getChannel(int id) {
+        return CHANNELS[id];
+    }
+
+    /**
+     * @return the default trigger rules of a channel, possibly none
+     */
+    public static TriggerRule[] getTriggerRules(int id) {
+        return TRIGGER_RULES[id].clone();
+    }
+
+    /**
+     * @return the channel recording {@code sensorType}, or null if it is not recorded
+     */
+    public SensorChannel getChannelForType(int sensorType) {
+        return channelsByType.get(sensorType);
+    }
+
+    /**
+     * @return the hardware sensor behind a channel, or null if this device does not have one
+     */
+    public Sensor getSensor(int id) {
+        return sensors[id];
+    }
+
+    /**
+     * @return the runtime permission needed to read a channel's sensor, or null if none is
+     */
+    public static String getRequiredPermission(int id) {
+        // The step counter counts as physical activity data from Android 10 on
+        if (id == STEP_COUNTER && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return Manifest.permission.ACTIVITY_RECOGNITION;
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the app holds the runtime permission a channel needs, if any; checked on
+     *         every call, as the user may grant or revoke it at any time
+     */
+    public boolean hasPermission(int id) {
+        String permission = getRequiredPermission(id);
+        return permission == null
+                || context.checkSelfPermission(permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * @return whether the device has the sensor behind a channel, or for derived channels the
+     *         sensors it is computed from, and the app may read it
+     */
+    public boolean isAvailable(int id) {
+        if (CHANNELS[id].isDerived()) {
+            return sensors[ACCELEROMETER] != null && sensors[GYROSCOPE] != null;
+        }
+        return sensors[id] != null && hasPermission(id);
+    }
+}
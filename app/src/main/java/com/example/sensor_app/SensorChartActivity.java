@@ -0,0 +1,224 @@
+package com.example.sensor_app;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.view.Choreographer;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.sensor_app.R;
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.Description;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time series chart for any sensor channel; the channel id is passed in {@link #EXTRA_CHANNEL}.
+ *
+ * The last hour is loaded from storage when the screen opens. While the screen is visible it
+ * also subscribes to the channel's live samples and appends them to a fixed-size
+ * {@link CircularEntryList}, following the newest minute. Samples only update the series; the
+ * chart is redrawn at most once per display frame.
+ */
+public class SensorChartActivity extends AppCompatActivity implements Choreographer.FrameCallback,
+        SensorService.SampleListener {
+    public static final String EXTRA_CHANNEL = "com.example.sensor_app.CHANNEL";
+
+    private LineChart chart;
+    private SensorChartLoader loader;
+
+    // Visible time window: the last hour
+    private static final long WINDOW_NANOS = 60L * 60 * 1000000000L;
+    private static final float NANOS_PER_SECOND = 1e9f;
+    // Live values are requested at 50 per second and the newest minute is kept and shown
+    private static final int LIVE_SAMPLING_PERIOD_US = 20000;
+    private static final int LIVE_CAPACITY = 3000;
+    private static final float LIVE_WINDOW_SECONDS = 60f;
+
+    private SensorChannel channel;
+    // Chart x is seconds since this time, for the loaded history and the live series alike
+    private long originNanos;
+    private LineDataSet liveDataSet;
+    private final CircularEntryList liveEntries = new CircularEntryList(LIVE_CAPACITY);
+    private boolean following = true;
+    private boolean frameScheduled;
+
+    private final Handler handler = new Handler();
+    private SensorService sensorService;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            sensorService = ((SensorService.LocalBinder) service).getService();
+            sensorService.subscribe(SensorChartActivity.this, channel.getId(), LIVE_SAMPLING_PERIOD_US, handler);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            sensorService = null;
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sensor_chart);
+
+        channel = SensorChannelRegistry.getChannel(
+                getIntent().getIntExtra(EXTRA_CHANNEL, SensorChannelRegistry.LIGHT));
+
+        chart = findViewById(R.id.chart);
+
+        // Set chart title
+        TextView chartTitle = findViewById(R.id.chartTitle);
+        chartTitle.setText(channel.getName() + " Sensor Time Series Chart");
+        setTitle(channel.getName() + " Sensor Chart");
+
+        // Create an empty dataset; the loader fills it in as pages are read
+        final LineDataSet dataSet = new LineDataSet(new ArrayList<Entry>(),
+                channel.getName() + " Sensor Values (" + channel.getUnit() + ")");
+
+        // Customize the dataset's appearance
+        dataSet.setColor(Color.BLUE);
+        dataSet.setLineWidth(2f);
+        dataSet.setValueTextSize(12f);
+        // Circles and value labels are unreadable at one point per pixel
+        dataSet.setDrawCircles(false);
+        dataSet.setDrawValues(false);
+
+        // Live samples go into their own series, which holds the ring itself rather than a copy
+        liveDataSet = new LineDataSet(liveEntries, channel.getName() + " live");
+        liveDataSet.setColor(Color.RED);
+        liveDataSet.setLineWidth(2f);
+        liveDataSet.setDrawCircles(false);
+        liveDataSet.setDrawValues(false);
+
+        // Create a LineData object with the datasets
+        LineData lineData = new LineData(dataSet, liveDataSet);
+
+        // Set the LineData to the chart
+        chart.setData(lineData);
+
+        // Set chart description
+        Description description = new Description();
+        description.setText("Seconds vs " + channel.getName() + " Sensor Values");
+        chart.setDescription(description);
+
+        // Load the visible window off the UI thread, reduced to about one point per pixel
+        final long now = System.currentTimeMillis() * 1000000L;
+        originNanos = now - WINDOW_NANOS;
+        loader = new SensorChartLoader(this);
+        loader.load(channel.getId(), now - WINDOW_NANOS, now,
+                getResources().getDisplayMetrics().widthPixels, new SensorChartLoader.Listener() {
+                    @Override
+                    public void onEntries(List<Entry> entries, boolean complete) {
+                        dataSet.setValues(entries);
+                        chart.getData().notifyDataChanged();
+                        chart.notifyDataSetChanged();
+                        // Refresh the chart
+                        chart.invalidate();
+                    }
+                });
+
+        // Pausing stops following the newest values so older data can be scrolled through
+        final Button liveButton = findViewById(R.id.liveButton);
+        liveButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                following = !following;
+                liveButton.setText(following ? "Pause" : "Follow");
+                if (!following) {
+                    // Allow zooming out to the whole loaded hour again
+                    chart.setVisibleXRangeMaximum(WINDOW_NANOS / NANOS_PER_SECOND);
+                }
+                scheduleFrame();
+            }
+        });
+
+        // Share the raw rows behind the chart; the provider streams them as the reader asks
+        findViewById(R.id.exportButton).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Uri uri = SensorExportProvider.buildUri(SensorExporter.Format.CSV,
+                        new int[]{channel.getId()}, now - WINDOW_NANOS, now);
+                Intent share = new Intent(Intent.ACTION_SEND)
+                        .setType(SensorExporter.Format.CSV.getMimeType())
+                        .putExtra(Intent.EXTRA_STREAM, uri)
+                        .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                startActivity(Intent.createChooser(share, "Export " + channel.getName()));
+            }
+        });
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        // Stream live values while visible
+        bindService(new Intent(this, SensorService.class), connection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        if (sensorService != null) {
+            sensorService.unsubscribe(this);
+            sensorService = null;
+        }
+        unbindService(connection);
+        Choreographer.getInstance().removeFrameCallback(this);
+        frameScheduled = false;
+    }
+
+    @Override
+    public void onSample(int id, LatestSampleStore.Sample sample) {
+        // Appending reuses the ring's entries; the chart catches up on the next frame
+        if (liveEntries.add((sample.timestamp - originNanos) / NANOS_PER_SECOND, sample.x)) {
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        liveDataSet.notifyDataSetChanged();
+        chart.getData().notifyDataChanged();
+        chart.notifyDataSetChanged();
+        if (following && !liveEntries.isEmpty()) {
+            // Only the newest window is laid out and drawn; moving the view redraws it
+            chart.setVisibleXRangeMaximum(LIVE_WINDOW_SECONDS);
+            float newest = liveEntries.get(liveEntries.size() - 1).getX();
+            chart.moveViewToX(Math.max(newest - LIVE_WINDOW_SECONDS, 0));
+        } else {
+            chart.invalidate();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        loader.cancel();
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.sensor_app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.github.mikephil.charting.data.Entry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads one sensor's visible time window for a chart screen off the UI thread. Rows are read
+ * in pages and streamed through a {@link MinMaxDownsampler}, so memory stays proportional to
+ * the chart width no matter how much history is stored. Wide windows are read from the rollup
+ * tables rather than raw rows. Partial results are posted while the read is still running.
+ */
+public class SensorChartLoader {
+    public interface Listener {
+        /**
+         * Called on the main thread with the reduced series; x is seconds since the window start.
+         *
+         * @param complete false while more pages are still being read
+         */
+        void onEntries(List<Entry> entries, boolean complete);
+    }
+
+    private static final int PAGE_ROWS = 5000;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    // Shared by all chart screens so at most one window is being read at a time
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final DatabaseHelper dbHelper;
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean cancelled;
+
+    public SensorChartLoader(Context context) {
+        dbHelper = DatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * Reads {@code fromNanos..toNanos} for {@code sensor} reduced to {@code bucketCount} buckets,
+     * normally the chart width in pixels.
+     */
+    public void load(final int sensor, final long fromNanos, final long toNanos, final int bucketCount,
+                     final Listener listener) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                MinMaxDownsampler downsampler = new MinMaxDownsampler(fromNanos, toNanos, bucketCount);
+                long[] timestamps = new long[downsampler.getMaxPoints()];
+                float[] values = new float[downsampler.getMaxPoints()];
+
+                // Read pre-aggregated buckets instead of raw rows when they are fine enough
+                int rollup = DatabaseHelper.chooseRollup((toNanos - fromNanos) / bucketCount);
+                long rollupWidth = rollup >= 0 ? DatabaseHelper.ROLLUP_RESOLUTIONS_NANOS[rollup] : 0;
+
+                long after = rollup >= 0 ? fromNanos - rollupWidth : fromNanos - 1;
+                SensorWriteBuffer page = rollup >= 0 ? null : new SensorWriteBuffer(PAGE_ROWS);
+                long lastPost = SystemClock.uptimeMillis();
+                boolean morePages = true;
+                while (morePages && !cancelled) {
+                    int rows = 0;
+                    if (rollup >= 0) {
+                        Cursor cursor = dbHelper.queryRollupRange(sensor, rollup, after, toNanos, PAGE_ROWS);
+                        try {
+                            while (cursor.moveToNext()) {
+                                // Keep both extremes of the bucket; the max is placed at its end
+                                after = cursor.getLong(0);
+                                downsampler.add(after, cursor.getFloat(1));
+                                downsampler.add(after + rollupWidth - 1, cursor.getFloat(2));
+                                rows++;
+                            }
+                        } finally {
+                            cursor.close();
+                        }
+                    } else {
+                        // Raw rows come from whichever storage engine the channel uses
+                        page.clear();
+                        rows = dbHelper.readRawRange(sensor, after, toNanos, page);
+                        for (int i = 0; i < rows; i++) {
+                            downsampler.add(page.getTimestamp(i), page.getX(i));
+                        }
+                        if (rows > 0) {
+                            after = page.getTimestamp(rows - 1);
+                        }
+                    }
+                    morePages = rows > 0 && (rollup < 0 || rows == PAGE_ROWS);
+
+                    long now = SystemClock.uptimeMillis();
+                    if (morePages && now - lastPost >= PROGRESS_INTERVAL_MS) {
+                        lastPost = now;
+                        post(listener, toEntries(downsampler, timestamps, values, fromNanos), false);
+                    }
+                }
+                if (!cancelled) {
+                    metrics.getChartLoad().record(System.nanoTime() - start);
+                    post(listener, toEntries(downsampler, timestamps, values, fromNanos), true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops any running load; no further callbacks are delivered.
+     */
+    public void cancel() {
+        cancelled = true;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private static List<Entry> toEntries(MinMaxDownsampler downsampler, long[] timestamps, float[] values,
+                                         long fromNanos) {
+        int count = downsampler.copyTo(timestamps, values);
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry((timestamps[i] - fromNanos) / NANOS_PER_SECOND, values[i]));
+        }
+        return entries;
+    }
+
+    private void post(final Listener listener, final List<Entry> entries, final boolean complete) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled) {
+                    listener.onEntries(entries, complete);
+                }
+            }
+        });
+    }
+}
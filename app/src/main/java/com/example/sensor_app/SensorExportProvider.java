@@ -0,0 +1,203 @@
+package com.example.sensor_app;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serves exports as streams, so they can be shared with any app that reads a content URI.
+ * {@link #openFile} returns the read end of a pipe and runs {@link SensorExporter} into the
+ * write end on its own thread; nothing is staged in memory or on disk. When the reader closes
+ * the pipe early the next write fails and the export stops; when the caller cancels the
+ * open, it stops at the next page.
+ *
+ * URIs look like {@code content://<authority>/csv?channels=0,2&from=<ns>&to=<ns>}; see
+ * {@link #buildUri}.
+ */
+public class SensorExportProvider extends ContentProvider {
+    private static final String TAG = "SensorExportProvider";
+    public static final String AUTHORITY = "com.example.sensor_app.export";
+
+    private static final String PARAM_CHANNELS = "channels";
+    private static final String PARAM_FROM = "from";
+    private static final String PARAM_TO = "to";
+
+    /**
+     * URI for an export of {@code channels} with {@code fromNanos < timestamp <= toNanos}.
+     */
+    public static Uri buildUri(SensorExporter.Format format, int[] channels, long fromNanos, long toNanos) {
+        StringBuilder ids = new StringBuilder();
+        for (int channel : channels) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(channel);
+        }
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(format.getExtension())
+                .appendQueryParameter(PARAM_CHANNELS, ids.toString())
+                .appendQueryParameter(PARAM_FROM, Long.toString(fromNanos))
+                .appendQueryParameter(PARAM_TO, Long.toString(toNanos))
+                .build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        SensorExporter.Format format = parseFormat(uri);
+        return format != null ? format.getMimeType() : null;
+    }
+
+    /**
+     * Only answers the {@link OpenableColumns} that share targets ask for; the size is unknown.
+     */
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        SensorExporter.Format format = parseFormat(uri);
+        if (format == null) {
+            return null;
+        }
+        if (projection == null) {
+            projection = new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            if (OpenableColumns.DISPLAY_NAME.equals(projection[i])) {
+                row[i] = "sensor_export_" + uri.getQueryParameter(PARAM_FROM) + "." + format.getExtension();
+            }
+        }
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        return openFile(uri, mode, null);
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode, final CancellationSignal signal)
+            throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Exports are read-only: " + uri);
+        }
+        final SensorExporter.Format format = parseFormat(uri);
+        final int[] channels = parseChannels(uri);
+        final long from = parseLong(uri, PARAM_FROM, Long.MIN_VALUE);
+        final long to = parseLong(uri, PARAM_TO, Long.MAX_VALUE);
+        if (format == null || channels == null) {
+            throw new FileNotFoundException("Not an export: " + uri);
+        }
+
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Could not create pipe: " + e.getMessage());
+        }
+        final SensorExporter exporter = new SensorExporter(DatabaseHelper.getInstance(getContext()));
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
+                try {
+                    long rows = exporter.export(channels, from, to, format, out, null, signal);
+                    Log.i(TAG, "Exported " + rows + " rows");
+                } catch (IOException e) {
+                    // Usually the reader closing the pipe before the end
+                    Log.w(TAG, "Export stopped: " + e.getMessage());
+                } catch (OperationCanceledException e) {
+                    Log.i(TAG, "Export cancelled");
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Export failed", e);
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                        // Nothing left to tell the reader
+                    }
+                }
+            }
+        }, "sensor-export");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+        return pipe[0];
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Exports are read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Exports are read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Exports are read-only");
+    }
+
+    private static SensorExporter.Format parseFormat(Uri uri) {
+        String extension = uri.getLastPathSegment();
+        for (SensorExporter.Format format : SensorExporter.Format.values()) {
+            if (format.getExtension().equals(extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    // Null if the parameter is missing or names an unknown channel
+    private static int[] parseChannels(Uri uri) {
+        String value = uri.getQueryParameter(PARAM_CHANNELS);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        String[] ids = value.split(",");
+        int[] channels = new int[ids.length];
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                channels[i] = Integer.parseInt(ids[i]);
+                if (channels[i] < 0 || channels[i] >= SensorChannelRegistry.getChannelCount()) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return channels;
+    }
+
+    // Missing bounds mean the whole history
+    private static long parseLong(Uri uri, String name, long defaultValue) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.sensor_app;
+
+import android.os.CancellationSignal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Streams the raw history of one or more channels over a time range to an
+ * {@link OutputStream}. Rows are read a page at a time through
+ * {@link DatabaseHelper#readRawRange}, whichever engine holds them, and written out before the
+ * next page is read, so memory use is one page however long the range is. Channels are written
+ * one after another, each in time order.
+ *
+ * The binary format is columnar per page, all numbers big-endian:
+ * <pre>
+ * header:  int magic "SEXP", short version, byte channelCount,
+ *          then per channel: byte id, byte axisCount, UTF name, UTF unit
+ * chunk:   byte channel id, int rowCount (0 ends the file), long first timestamp,
+ *          rowCount - 1 zigzag varint timestamp deltas, rowCount floats per axis,
+ *          rowCount accuracy bytes (-1 if unknown)
+ * </pre>
+ */
+public class SensorExporter {
+    public enum Format {
+        CSV("text/csv", "csv"),
+        BINARY("application/octet-stream", "bin");
+
+        private final String mimeType;
+        private final String extension;
+
+        Format(String mimeType, String extension) {
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called on the exporting thread after every page.
+         *
+         * @param fraction estimated share of the export done, from the time covered so far
+         */
+        void onProgress(long rowsWritten, float fraction);
+    }
+
+    // Shared with ReplaySampleSource, which reads the binary format back
+    static final int MAGIC = 0x53455850; // "SEXP"
+    static final int VERSION = 1;
+    private static final int PAGE_ROWS = 4096;
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+
+    private final DatabaseHelper dbHelper;
+
+    public SensorExporter(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Writes rows with {@code fromNanos < timestamp <= toNanos} of every channel in
+     * {@code channels}. The stream is flushed but not closed.
+     *
+     * @param listener may be null
+     * @param signal   may be null; cancelling it stops the export with an
+     *                 {@link android.os.OperationCanceledException} at the next page
+     * @return number of rows written
+     */
+    public long export(int[] channels, long fromNanos, long toNanos, Format format, OutputStream out,
+                       ProgressListener listener, CancellationSignal signal) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, OUTPUT_BUFFER_BYTES);
+        DataOutputStream binary = null;
+        Writer csv = null;
+        StringBuilder line = null;
+        char[] lineChars = null;
+        if (format == Format.BINARY) {
+            binary = new DataOutputStream(buffered);
+            writeBinaryHeader(binary, channels);
+        } else {
+            csv = new OutputStreamWriter(buffered, Charset.forName("UTF-8"));
+            csv.write("sensor,timestamp_ns,x,y,z,accuracy\n");
+            line = new StringBuilder(128);
+            lineChars = new char[128];
+        }
+
+        SensorWriteBuffer page = new SensorWriteBuffer(PAGE_ROWS);
+        long rowsWritten = 0;
+        for (int c = 0; c < channels.length; c++) {
+            int sensor = channels[c];
+            String name = SensorChannelRegistry.getChannel(sensor).getTableName();
+            long after = fromNanos;
+            while (true) {
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+                page.clear();
+                int rows = dbHelper.readRawRange(sensor, after, toNanos, page);
+                if (rows == 0) {
+                    break;
+                }
+                if (binary != null) {
+                    writeBinaryChunk(binary, sensor, page);
+                } else {
+                    writeCsvRows(csv, line, lineChars, name, page);
+                }
+                rowsWritten += rows;
+                after = page.getTimestamp(rows - 1);
+
+                if (listener != null) {
+                    float channelFraction = toNanos > fromNanos ? (float) (after - fromNanos) / (toNanos - fromNanos) : 1;
+                    listener.onProgress(rowsWritten, (c + Math.min(channelFraction, 1f)) / channels.length);
+                }
+            }
+        }
+
+        if (binary != null) {
+            writeBinaryEnd(binary);
+            binary.flush();
+        } else {
+            csv.flush();
+        }
+        return rowsWritten;
+    }
+
+    // The binary writers are package-private so tests can write recordings without a database
+    static void writeBinaryHeader(DataOutputStream out, int[] channels) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(channels.length);
+        for (int sensor : channels) {
+            SensorChannel channel = SensorChannelRegistry.getChannel(sensor);
+            out.writeByte(sensor);
+            out.writeByte(channel.getAxisCount());
+            out.writeUTF(channel.getTableName());
+            out.writeUTF(channel.getUnit());
+        }
+    }
+
+    static void writeBinaryChunk(DataOutputStream out, int sensor, SensorWriteBuffer page) throws IOException {
+        int rows = page.size();
+        out.writeByte(sensor);
+        out.writeInt(rows);
+        out.writeLong(page.getTimestamp(0));
+        for (int i = 1; i < rows; i++) {
+            long delta = page.getTimestamp(i) - page.getTimestamp(i - 1);
+            writeVarLong(out, (delta << 1) ^ (delta >> 63));
+        }
+        int axisCount = DatabaseHelper.getAxisCount(sensor);
+        for (int i = 0; i < rows; i++) {
+            out.writeFloat(page.getX(i));
+        }
+        if (axisCount > 1) {
+            for (int i = 0; i < rows; i++) {
+                out.writeFloat(page.getY(i));
+            }
+        }
+        if (axisCount > 2) {
+            for (int i = 0; i < rows; i++) {
+                out.writeFloat(page.getZ(i));
+            }
+        }
+        for (int i = 0; i < rows; i++) {
+            out.writeByte(page.getAccuracy(i));
+        }
+    }
+
+    // A chunk of no rows ends the recording
+    static void writeBinaryEnd(DataOutputStream out) throws IOException {
+        out.writeByte(-1);
+        out.writeInt(0);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static void writeCsvRows(Writer out, StringBuilder line, char[] chars, String name,
+                                     SensorWriteBuffer page) throws IOException {
+        for (int i = 0; i < page.size(); i++) {
+            line.setLength(0);
+            line.append(name).append(',').append(page.getTimestamp(i));
+            appendAxis(line, page.getX(i));
+            appendAxis(line, page.getY(i));
+            appendAxis(line, page.getZ(i));
+            line.append(',');
+            if (page.getAccuracy(i) >= 0) {
+                line.append(page.getAccuracy(i));
+            }
+            line.append('\n');
+            // Writer.append(CharSequence) would turn every row into a String first
+            for (int start = 0; start < line.length(); start += chars.length) {
+                int end = Math.min(line.length(), start + chars.length);
+                line.getChars(start, end, chars, 0);
+                out.write(chars, 0, end - start);
+            }
+        }
+    }
+
+    // Missing axes are empty fields
+    private static void appendAxis(StringBuilder line, float value) {
+        line.append(',');
+        if (!Float.isNaN(value)) {
+            line.append(value);
+        }
+    }
+}
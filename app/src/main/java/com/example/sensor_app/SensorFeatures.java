@@ -0,0 +1,40 @@
+package com.example.sensor_app;
+
+/**
+ * Features of one channel over one window, as produced by {@link FeatureExtractor} and stored
+ * by {@link DatabaseHelper#writeFeatures}. Three-axis channels are summarised by the magnitude
+ * of their vector. Fields are NaN where a feature is not computed for the channel.
+ */
+public class SensorFeatures {
+    public int sensor;
+    // Timestamps of the first and last sample in the window
+    public long startTimestamp;
+    public long endTimestamp;
+    public int count;
+    public double mean;
+    public double stdDev;
+    public float min;
+    public float max;
+    public double rms;
+    public int peakCount;
+    // Strongest frequency in the most recent FFT window and its amplitude
+    public float dominantFrequency;
+    public float dominantAmplitude;
+
+    public SensorFeatures copy() {
+        SensorFeatures copy = new SensorFeatures();
+        copy.sensor = sensor;
+        copy.startTimestamp = startTimestamp;
+        copy.endTimestamp = endTimestamp;
+        copy.count = count;
+        copy.mean = mean;
+        copy.stdDev = stdDev;
+        copy.min = min;
+        copy.max = max;
+        copy.rms = rms;
+        copy.peakCount = peakCount;
+        copy.dominantFrequency = dominantFrequency;
+        copy.dominantAmplitude = dominantAmplitude;
+        return copy;
+    }
+}
@@ -4,71 +4,257 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.Service;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.database.sqlite.SQLiteDatabase;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Process;
+import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
 import com.example.sensor_app.R;
 
-public class SensorService extends Service implements SensorEventListener {
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The only component that reads sensors and writes samples. It runs started (for background
+ * capture) and bound: clients get the service from {@link LocalBinder} and {@link #subscribe}
+ * to a live stream of a channel at the rate they need, which raises the capture rate while
+ * they are subscribed.
+ *
+ * Channels in {@link CaptureMode#ADAPTIVE} run at a low idle rate until their
+ * {@link AdaptiveRateController} sees activity. Channels with no idle rate are switched off
+ * and woken by the significant motion sensor. Every change of a channel's stored sampling
+ * rate is logged with {@link DatabaseHelper#logRateChange}, so stored data can be read with
+ * the rate it was captured at.
+ *
+ * Channels in {@link CaptureMode#TRIGGERED} stream at the full rate, but their
+ * {@link TriggerEngine} only stores a baseline sample per snapshot interval and the windows
+ * around events that fire the channel's {@link TriggerRule}s. Each event raises one
+ * notification.
+ *
+ * Every sample of a streamed channel also goes through the channel's {@link FeatureExtractor},
+ * which stores one row of derived features per window.
+ *
+ * Samples come from a {@link SampleSource}, the device's sensors unless
+ * {@link #setSampleSourceFactory} installed another one. Significant motion always comes from
+ * the hardware.
+ */
+public class SensorService extends Service implements SampleSource.Listener {
+    /**
+     * Receives live samples on the handler passed to {@link #subscribe}. The sample object is
+     * reused between calls.
+     */
+    public interface SampleListener {
+        void onSample(int channel, LatestSampleStore.Sample sample);
+    }
+
+    /**
+     * Creates the source the service reads. It must run its work through {@code scheduler},
+     * which is the service's sensor thread.
+     */
+    public interface SampleSourceFactory {
+        SampleSource create(Context context, SampleSource.Scheduler scheduler);
+    }
+
+    public class LocalBinder extends Binder {
+        public SensorService getService() {
+            return SensorService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+
+    private static final int CHANNEL_COUNT = SensorChannelRegistry.getChannelCount();
+    // Replaces the hardware for services created afterwards; null means the device's sensors
+    private static volatile SampleSourceFactory sourceFactory;
+
     private SensorManager sensorManager;
-    private Sensor lightSensor;
-    private Sensor proximitySensor;
-    private Sensor accelerometerSensor;
-    private Sensor gyroscopeSensor;
+    // Where samples come from, only touched on the sensor thread after onCreate
+    private SampleSource source;
+    private final SensorCaptureConfig[] captureConfigs = new SensorCaptureConfig[CHANNEL_COUNT];
+    private final Runnable[] snapshotRunnables = new Runnable[CHANNEL_COUNT];
+    private final Runnable[] snapshotTimeouts = new Runnable[CHANNEL_COUNT];
+    // Whether each sensor is currently registered, only touched on the sensor thread
+    private final boolean[] registered = new boolean[CHANNEL_COUNT];
+    // Registered continuously, either by config or because a subscriber needs it; sensor thread only
+    private final boolean[] streaming = new boolean[CHANNEL_COUNT];
+    // Live subscribers per channel and the last stored timestamp, only touched on the sensor thread
+    private final ArrayList<ArrayList<Subscription>> subscriptions = new ArrayList<>(CHANNEL_COUNT);
+    private final long[] lastStoredTimestamps = new long[CHANNEL_COUNT];
+    // Every live subscription, for unsubscribing from the client's thread
+    private final CopyOnWriteArrayList<Subscription> allSubscriptions = new CopyOnWriteArrayList<>();
 
+    // Activity detection for adaptive channels; null where a channel has no threshold
+    private final AdaptiveRateController[] controllers = new AdaptiveRateController[CHANNEL_COUNT];
+    // Last stored sampling period logged per channel, sensor thread only; 0 means off
+    private final int[] loggedPeriodsUs = new int[CHANNEL_COUNT];
+    // Adaptive channels switched off until significant motion, sensor thread only
+    private final boolean[] waitingForMotion = new boolean[CHANNEL_COUNT];
+    private Sensor significantMotion;
+    private boolean motionRequested;
+    // Feature stage per streamed channel, sensor thread only
+    private final FeatureExtractor[] featureExtractors = new FeatureExtractor[CHANNEL_COUNT];
+    // Fuses the accelerometer and gyroscope into the derived channels; sensor thread only
+    private OrientationFilter orientationFilter;
+    // Created on the first sample in CaptureMode.TRIGGERED; sensor thread only
+    private final TriggerEngine[] triggerEngines = new TriggerEngine[CHANNEL_COUNT];
+    private final TriggerRule[][] triggerRules = new TriggerRule[CHANNEL_COUNT][];
+    private NotificationCompat.Builder triggerNotificationBuilder;
+
+    private static final String TAG = "SensorService";
     private static final String CHANNEL_ID = "sensor_service_notifications";
     private static final int NOTIFICATION_ID = 2;
+    // Replaced by each new event, so events never pile up in the shade
+    private static final int TRIGGER_NOTIFICATION_ID = 3;
 
-    private Handler handler;
-    private Runnable runnable;
     private static final long INTERVAL = 5000; // 5 sec
+    private static final long SNAPSHOT_TIMEOUT = 1000; // 1 sec
+    private static final long FLUSH_TIMEOUT = 500;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // Adaptive channels stay at the full rate this long after the signal settles
+    private static final long ACTIVITY_HOLD_MS = 5000;
+    // Idle rate for channels meant to wait for significant motion on devices without it
+    private static final int IDLE_FALLBACK_PERIOD_US = 1000000;
+    // Default span of one stored feature window
+    private static final long FEATURE_WINDOW_MS = 10000;
+    private static final float FUSION_BETA = 0.1f;
+    // Gyroscope samples that may wait for the accelerometer: five seconds at 100 Hz
+    private static final int FUSION_CAPACITY = 512;
+    // Stored around each trigger event
+    private static final long PRE_TRIGGER_MS = 2000;
+    private static final long POST_TRIGGER_MS = 3000;
+    // Samples kept for the pre-trigger window: two seconds at 500 Hz
+    private static final int PRE_TRIGGER_CAPACITY = 1024;
+
+    // Sensor events and capture scheduling run on their own thread, never on the main thread
+    private HandlerThread sensorThread;
+    private Handler handler;
+    // Released once every channel registered at shutdown has flushed; pendingFlushes counts
+    // the ones still to come and is only touched on the sensor thread
+    private volatile CountDownLatch flushLatch;
+    private int pendingFlushes;
 
     private DatabaseHelper dbHelper;
+    // Lock-free hand-off to the writer thread, only used on the sensor thread
+    private SensorWriter.Producer sampleProducer;
+    // Latest value per channel for the UI, written only on the sensor thread
+    private final LatestSampleStore latestSamples = LatestSampleStore.getInstance();
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+
+    /**
+     * Makes services created from now on read {@code factory}'s source instead of the device's
+     * sensors, e.g. synthetic signals or a recording. Null goes back to the hardware.
+     */
+    public static void setSampleSourceFactory(SampleSourceFactory factory) {
+        sourceFactory = factory;
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
 
-        // Initialize sensor manager and sensors
         sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
-        lightSensor = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
-        proximitySensor = sensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
-        accelerometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        gyroscopeSensor = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        for (int i = 0; i < CHANNEL_COUNT; i++) {
+            captureConfigs[i] = SensorChannelRegistry.getChannel(i).newCaptureConfig(INTERVAL);
+            float threshold = captureConfigs[i].getActivityThreshold();
+            if (!Float.isNaN(threshold)) {
+                controllers[i] = new AdaptiveRateController(threshold, ACTIVITY_HOLD_MS);
+            }
+            loggedPeriodsUs[i] = -1;
+            featureExtractors[i] = SensorChannelRegistry.getChannel(i).newFeatureExtractor(FEATURE_WINDOW_MS);
+            triggerRules[i] = SensorChannelRegistry.getTriggerRules(i);
+        }
+        significantMotion = sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+        orientationFilter = new OrientationFilter(FUSION_BETA, FUSION_CAPACITY, new OrientationFilter.Listener() {
+            @Override
+            public void onFused(long timestamp, float[] orientation, float[] linearAcceleration) {
+                onDerivedSample(SensorChannelRegistry.ORIENTATION, timestamp, orientation);
+                if (!Float.isNaN(linearAcceleration[0])) {
+                    onDerivedSample(SensorChannelRegistry.LINEAR_ACCELERATION, timestamp, linearAcceleration);
+                }
+            }
+        });
 
         // Set up notification channel
         createNotificationChannel();
+        triggerNotificationBuilder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setAutoCancel(true);
+
+        sensorThread = new HandlerThread("sensor-events", Process.THREAD_PRIORITY_MORE_FAVORABLE);
+        sensorThread.start();
+        handler = new Handler(sensorThread.getLooper());
+
+        // Samples arrive on the sensor thread, whichever source delivers them
+        SampleSourceFactory factory = sourceFactory;
+        if (factory == null) {
+            source = new HardwareSampleSource(this, handler);
+        } else {
+            source = factory.create(this, new SampleSource.Scheduler() {
+                @Override
+                public void schedule(Runnable task, long delayMs) {
+                    handler.postDelayed(task, delayMs);
+                }
+
+                @Override
+                public void cancel(Runnable task) {
+                    handler.removeCallbacks(task);
+                }
+            });
+        }
+        source.setListener(this);
 
-        // Set up handler and runnable for periodic sensor reading
-        handler = new Handler();
-        runnable = new Runnable() {
+        for (int i = 0; i < CHANNEL_COUNT; i++) {
+            final int index = i;
+            subscriptions.add(new ArrayList<Subscription>());
+            snapshotRunnables[i] = new Runnable() {
+                @Override
+                public void run() {
+                    takeSnapshot(index);
+                    handler.postDelayed(this, captureConfigs[index].getSnapshotIntervalMs());
+                }
+            };
+            snapshotTimeouts[i] = new Runnable() {
+                @Override
+                public void run() {
+                    // Nothing arrived in time, try again next interval
+                    unregister(index);
+                }
+            };
+        }
+
+        // Create instance of DatabaseHelper
+        dbHelper = DatabaseHelper.getInstance(this);
+        sampleProducer = dbHelper.newProducer();
+
+        // Start capturing every sensor in its configured mode, whether started or only bound
+        handler.post(new Runnable() {
             @Override
             public void run() {
-                readSensorValues();
-                handler.postDelayed(this, INTERVAL);
+                for (int i = 0; i < CHANNEL_COUNT; i++) {
+                    applyCaptureMode(i);
+                }
             }
-        };
-
-        // Create instance of DatabaseHelper
-        dbHelper = new DatabaseHelper(this);
+        });
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        // Start reading sensor values periodically
-        handler.postDelayed(runnable, INTERVAL);
-
         // Show a notification to let the user know the service is running
         showNotification();
 
@@ -79,50 +265,434 @@ public class SensorService extends Service implements SensorEventListener {
     public void onDestroy() {
         super.onDestroy();
 
-        // Stop reading sensor values
-        handler.removeCallbacks(runnable);
+        for (Subscription subscription : allSubscriptions) {
+            subscription.active = false;
+        }
+        allSubscriptions.clear();
+
+        // Stop scheduling snapshots, then drain whatever the hardware FIFOs still hold
+        handler.removeCallbacksAndMessages(null);
+        flushSensors();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                source.close();
+            }
+        });
+        if (motionRequested) {
+            sensorManager.cancelTriggerSensor(motionListener, significantMotion);
+        }
+        // Let the sensor thread run what is already queued and stop, so nothing is submitted
+        // once the producer is released; events arriving after this are not delivered
+        sensorThread.quitSafely();
+        try {
+            sensorThread.join(FLUSH_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Write out any buffered samples before the service goes away
+        dbHelper.getWriter().releaseProducer(sampleProducer);
 
         // Remove the notification
         NotificationManager notificationManager = getSystemService(NotificationManager.class);
         notificationManager.cancel(NOTIFICATION_ID);
     }
 
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        // Check sensor type and record values in SQLite DB
-        Sensor sensor = event.sensor;
-        if (sensor.getType() == Sensor.TYPE_LIGHT) {
-            float lightValue = event.values[0];
-            long timestamp = System.currentTimeMillis();
-            dbHelper.insertLightSensorValue(timestamp, lightValue);
-        } else if (sensor.getType() == Sensor.TYPE_PROXIMITY) {
-            // Record proximity sensor values
-        } else if (sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            // Record accelerometer sensor values
-        } else if (sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-            // Record gyroscope sensor values
+    /**
+     * Switches a sensor (a SensorChannel id) between periodic snapshots, continuous and adaptive
+     * streaming while the service is running. Channels without an activity threshold stream
+     * continuously when set to adaptive.
+     */
+    public void setCaptureMode(final int sensorIndex, CaptureMode mode) {
+        captureConfigs[sensorIndex].setMode(mode);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                applyCaptureMode(sensorIndex);
+            }
+        });
+    }
+
+    /**
+     * Changes how much data each stored feature window of a channel covers. The window in
+     * progress is dropped.
+     */
+    public void setFeatureWindow(final int channel, final long windowMs) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                featureExtractors[channel] = SensorChannelRegistry.getChannel(channel).newFeatureExtractor(windowMs);
+            }
+        });
+    }
+
+    /**
+     * Replaces the rules that start an event capture of a channel in
+     * {@link CaptureMode#TRIGGERED}. An event in progress and the pre-trigger history are
+     * dropped.
+     */
+    public void setTriggerRules(final int channel, TriggerRule... rules) {
+        final TriggerRule[] copy = rules.clone();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                triggerRules[channel] = copy;
+                triggerEngines[channel] = null;
+            }
+        });
+    }
+
+    /**
+     * Delivers samples of {@code channel} to {@code listener} on {@code listenerHandler}, at most
+     * one per {@code samplingPeriodUs}. While subscribed the sensor streams at least that fast,
+     * without hardware batching. Updates are coalesced: a slow listener sees the latest sample.
+     */
+    public void subscribe(final SampleListener listener, final int channel, int samplingPeriodUs,
+                          Handler listenerHandler) {
+        final Subscription subscription = new Subscription(listener, channel, samplingPeriodUs, listenerHandler);
+        allSubscriptions.add(subscription);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                subscriptions.get(channel).add(subscription);
+                applyCaptureMode(channel);
+            }
+        });
+    }
+
+    /**
+     * Stops every subscription of {@code listener}. Called on the listener's handler thread, no
+     * callbacks are delivered after this returns.
+     */
+    public void unsubscribe(SampleListener listener) {
+        // Mark them inactive right away so deliveries already posted are dropped
+        for (Subscription subscription : allSubscriptions) {
+            if (subscription.listener == listener) {
+                subscription.active = false;
+                allSubscriptions.remove(subscription);
+            }
         }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < CHANNEL_COUNT; i++) {
+                    ArrayList<Subscription> channelSubscriptions = subscriptions.get(i);
+                    boolean removed = false;
+                    for (int j = channelSubscriptions.size() - 1; j >= 0; j--) {
+                        if (!channelSubscriptions.get(j).active) {
+                            channelSubscriptions.remove(j);
+                            removed = true;
+                        }
+                    }
+                    if (removed) {
+                        applyCaptureMode(i);
+                    }
+                }
+            }
+        });
     }
 
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    // Runs on the sensor thread
+    private void applyCaptureMode(int index) {
+        if (SensorChannelRegistry.getChannel(index).isDerived()) {
+            // Derived channels follow their inputs, which serve their subscribers too
+            applyCaptureMode(SensorChannelRegistry.ACCELEROMETER);
+            applyCaptureMode(SensorChannelRegistry.GYROSCOPE);
+            return;
+        }
+        if (!source.isAvailable(index)) {
+            return;
+        }
+        SensorCaptureConfig config = captureConfigs[index];
+
+        handler.removeCallbacks(snapshotRunnables[index]);
+        handler.removeCallbacks(snapshotTimeouts[index]);
+        unregister(index);
+        stopWaitingForMotion(index);
+        streaming[index] = false;
+
+        // Subscribers need samples as they happen, at the fastest rate any of them asked for
+        int subscriberPeriodUs = fastestSubscriberPeriodUs(index);
+        if (isFusionInput(index)) {
+            subscriberPeriodUs = Math.min(subscriberPeriodUs,
+                    Math.min(fastestSubscriberPeriodUs(SensorChannelRegistry.ORIENTATION),
+                            fastestSubscriberPeriodUs(SensorChannelRegistry.LINEAR_ACCELERATION)));
+        }
+        boolean subscribed = subscriberPeriodUs != Integer.MAX_VALUE;
+
+        if (config.getMode() == CaptureMode.PERIODIC_SNAPSHOT) {
+            if (subscribed) {
+                registered[index] = register(index, subscriberPeriodUs, 0);
+                streaming[index] = registered[index];
+            }
+            if (!streaming[index]) {
+                handler.post(snapshotRunnables[index]);
+            }
+            // Snapshots keep their rate while subscribers stream, so stored data keeps its rate
+            logRate(index, (int) (config.getSnapshotIntervalMs() * 1000), false);
+            return;
+        }
 
+        boolean active = true;
+        int periodUs = config.getSamplingPeriodUs();
+        if (isAdaptive(index)) {
+            active = controllers[index].isActive();
+            if (!active) {
+                periodUs = config.getIdleSamplingPeriodUs();
+                if (periodUs == 0 && significantMotion == null) {
+                    periodUs = IDLE_FALLBACK_PERIOD_US;
+                }
+            }
+        }
+        if (subscribed) {
+            periodUs = periodUs == 0 ? subscriberPeriodUs : Math.min(periodUs, subscriberPeriodUs);
+        }
+
+        if (periodUs == 0 && waitForMotion(index)) {
+            logRate(index, 0, false);
+            return;
+        }
+        if (periodUs == 0) {
+            periodUs = IDLE_FALLBACK_PERIOD_US;
+        }
+        // Registered once; the FIFO delivers events in batches of up to maxReportLatencyUs
+        registered[index] = register(index, periodUs, subscribed ? 0 : config.getMaxReportLatencyUs());
+        streaming[index] = registered[index];
+        logRate(index, periodUs, active);
+    }
+
+    private int fastestSubscriberPeriodUs(int index) {
+        int periodUs = Integer.MAX_VALUE;
+        for (Subscription subscription : subscriptions.get(index)) {
+            periodUs = Math.min(periodUs, subscription.samplingPeriodUs);
+        }
+        return periodUs;
+    }
+
+    private static boolean isFusionInput(int index) {
+        return index == SensorChannelRegistry.ACCELEROMETER || index == SensorChannelRegistry.GYROSCOPE;
+    }
+
+    private boolean isAdaptive(int index) {
+        return captureConfigs[index].getMode() == CaptureMode.ADAPTIVE && controllers[index] != null;
+    }
+
+    // Runs on the sensor thread; every stored sample of a channel was taken at the last rate logged
+    private void logRate(int index, int periodUs, boolean active) {
+        if (periodUs == loggedPeriodsUs[index]) {
+            return;
+        }
+        loggedPeriodsUs[index] = periodUs;
+        featureExtractors[index].restartSpectrum();
+        long timestamp = source.getTimeNanos();
+        dbHelper.logRateChange(index, timestamp, periodUs, active);
+        if (index == SensorChannelRegistry.GYROSCOPE) {
+            // The derived channels get one sample per gyroscope sample
+            logRate(SensorChannelRegistry.ORIENTATION, periodUs, active);
+            logRate(SensorChannelRegistry.LINEAR_ACCELERATION, periodUs, active);
+        }
+    }
+
+    // Runs on the sensor thread; false if the trigger could not be requested
+    private boolean waitForMotion(int index) {
+        if (!motionRequested) {
+            motionRequested = sensorManager.requestTriggerSensor(motionListener, significantMotion);
+        }
+        waitingForMotion[index] = motionRequested;
+        return motionRequested;
+    }
+
+    // Runs on the sensor thread
+    private void stopWaitingForMotion(int index) {
+        if (!waitingForMotion[index]) {
+            return;
+        }
+        waitingForMotion[index] = false;
+        for (boolean waiting : waitingForMotion) {
+            if (waiting) {
+                return;
+            }
+        }
+        sensorManager.cancelTriggerSensor(motionListener, significantMotion);
+        motionRequested = false;
     }
 
-    private void readSensorValues() {
-        // Register sensor listeners for all sensors
-        sensorManager.registerListener(this, lightSensor, SensorManager.SENSOR_DELAY_NORMAL);
-        sensorManager.registerListener(this, proximitySensor, SensorManager.SENSOR_DELAY_NORMAL);
-        sensorManager.registerListener(this, accelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
-        sensorManager.registerListener(this, gyroscopeSensor, SensorManager.SENSOR_DELAY_NORMAL);
+    // The trigger is one-shot and fires on the main thread
+    private final TriggerEventListener motionListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            handler.post(motionWake);
+        }
+    };
+
+    private final Runnable motionWake = new Runnable() {
+        @Override
+        public void run() {
+            motionRequested = false;
+            long timestamp = source.getTimeNanos();
+            for (int i = 0; i < CHANNEL_COUNT; i++) {
+                if (waitingForMotion[i]) {
+                    waitingForMotion[i] = false;
+                    controllers[i].setActive(true, timestamp);
+                    applyCaptureMode(i);
+                }
+            }
+        }
+    };
+
+    // Runs on the sensor thread
+    private void takeSnapshot(int index) {
+        if (registered[index]) {
+            return;
+        }
+        registered[index] = register(index, captureConfigs[index].getSamplingPeriodUs(), 0);
+        handler.postDelayed(snapshotTimeouts[index], SNAPSHOT_TIMEOUT);
+    }
+
+    // Runs on the sensor thread
+    private boolean register(int index, int periodUs, int maxReportLatencyUs) {
+        boolean registered = source.register(index, periodUs, maxReportLatencyUs);
+        if (!registered) {
+            Log.w(TAG, "Could not register " + SensorChannelRegistry.getChannel(index).getName());
+            metrics.onRegistrationFailed();
+        }
+        return registered;
+    }
 
-        // Unregister sensor listeners after a short delay
-        handler.postDelayed(new Runnable() {
+    private void unregister(int index) {
+        if (registered[index]) {
+            source.unregister(index);
+            registered[index] = false;
+        }
+    }
+
+    // Asks the source to deliver everything still batched in its FIFOs and waits briefly for it
+    private void flushSensors() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        flushLatch = latch;
+        // registered[] and the source are only touched on the sensor thread
+        handler.post(new Runnable() {
             @Override
             public void run() {
-                sensorManager.unregisterListener(SensorService.this);
+                pendingFlushes = 0;
+                for (boolean isRegistered : registered) {
+                    if (isRegistered) {
+                        pendingFlushes++;
+                    }
+                }
+                // onFlushCompleted is called once per registered channel
+                if (pendingFlushes == 0 || !source.flush()) {
+                    pendingFlushes = 0;
+                    latch.countDown();
+                }
             }
-        }, 1000); // 1 second delay
+        });
+        try {
+            latch.await(FLUSH_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onSample(int index, long timestamp, float[] values, int accuracy) {
+        SensorChannel channel = SensorChannelRegistry.getChannel(index);
+        metrics.onReceived(index);
+        latestSamples.publish(index, timestamp, values, accuracy);
+
+        SensorCaptureConfig config = captureConfigs[index];
+        if (config.getMode() != CaptureMode.PERIODIC_SNAPSHOT) {
+            float x = values[0];
+            float y = channel.getAxisCount() > 1 ? values[1] : Float.NaN;
+            float z = channel.getAxisCount() > 2 ? values[2] : Float.NaN;
+            if (config.getMode() == CaptureMode.TRIGGERED) {
+                // Stored through triggerListener, if at all
+                getTriggerEngine(index).onSample(timestamp, x, y, z, accuracy);
+            } else {
+                sampleProducer.submit(index, timestamp, values, accuracy);
+            }
+
+            FeatureExtractor extractor = featureExtractors[index];
+            if (extractor.onSample(timestamp, x, y, z)) {
+                dbHelper.writeFeatures(extractor.getFeatures());
+            }
+            if (isAdaptive(index) && controllers[index].onSample(timestamp, x, y, z)) {
+                // Crossed into or out of activity: re-register at the other rate
+                applyCaptureMode(index);
+            }
+            if (index == SensorChannelRegistry.ACCELEROMETER) {
+                orientationFilter.onAccelerometer(timestamp, x, y, z);
+            } else if (index == SensorChannelRegistry.GYROSCOPE) {
+                orientationFilter.onGyroscope(timestamp, x, y, z);
+            }
+        } else if (!streaming[index]) {
+            // A snapshot only needs one reading
+            sampleProducer.submit(index, timestamp, values, accuracy);
+            lastStoredTimestamps[index] = timestamp;
+            handler.removeCallbacks(snapshotTimeouts[index]);
+            unregister(index);
+        } else if (timestamp - lastStoredTimestamps[index] >= config.getSnapshotIntervalMs() * NANOS_PER_MILLI) {
+            // Streaming for a subscriber: still store at the snapshot rate only
+            sampleProducer.submit(index, timestamp, values, accuracy);
+            lastStoredTimestamps[index] = timestamp;
+        }
+
+        ArrayList<Subscription> channelSubscriptions = subscriptions.get(index);
+        for (int i = 0; i < channelSubscriptions.size(); i++) {
+            channelSubscriptions.get(i).offer(timestamp);
+        }
+    }
+
+    // Runs on the sensor thread
+    private TriggerEngine getTriggerEngine(int index) {
+        if (triggerEngines[index] == null) {
+            triggerEngines[index] = new TriggerEngine(index, triggerRules[index], PRE_TRIGGER_MS, POST_TRIGGER_MS,
+                    captureConfigs[index].getSnapshotIntervalMs(), PRE_TRIGGER_CAPACITY, triggerListener);
+        }
+        return triggerEngines[index];
+    }
+
+    private final TriggerEngine.Listener triggerListener = new TriggerEngine.Listener() {
+        @Override
+        public void onStore(int channel, long timestamp, float x, float y, float z, int accuracy) {
+            sampleProducer.submit(channel, timestamp, x, y, z, accuracy);
+        }
+
+        @Override
+        public void onTriggered(int channel, TriggerRule rule, long timestamp, float value) {
+            showTriggerNotification(SensorChannelRegistry.getChannel(channel), rule, value);
+        }
+    };
+
+    // Runs on the sensor thread, for each sample the orientation filter produces
+    private void onDerivedSample(int index, long timestamp, float[] values) {
+        metrics.onReceived(index);
+        latestSamples.publish(index, timestamp, values, SensorManager.SENSOR_STATUS_ACCURACY_HIGH);
+        sampleProducer.submit(index, timestamp, values, SensorManager.SENSOR_STATUS_ACCURACY_HIGH);
+        FeatureExtractor extractor = featureExtractors[index];
+        if (extractor.onSample(timestamp, values[0], values[1], values[2])) {
+            dbHelper.writeFeatures(extractor.getFeatures());
+        }
+
+        ArrayList<Subscription> channelSubscriptions = subscriptions.get(index);
+        for (int i = 0; i < channelSubscriptions.size(); i++) {
+            channelSubscriptions.get(i).offer(timestamp);
+        }
+    }
+
+    @Override
+    public void onFlushCompleted(int channel) {
+        if (isFusionInput(channel)) {
+            // Nothing older is coming for the gyroscope samples still waiting
+            orientationFilter.flush();
+        }
+        // The FIFO is drained, so nothing newer is coming to push out a coalesced sample
+        sampleProducer.publishPending();
+        CountDownLatch latch = flushLatch;
+        if (latch != null && pendingFlushes > 0 && --pendingFlushes == 0) {
+            latch.countDown();
+        }
     }
 
     private void createNotificationChannel() {
@@ -149,8 +719,67 @@ public class SensorService extends Service implements SensorEventListener {
     }
 
 
+    // One notification per event; rules only fire again once their capture has ended
+    private void showTriggerNotification(SensorChannel channel, TriggerRule rule, float value) {
+        String unit = rule.getKind() == TriggerRule.Kind.RATE_OF_CHANGE ? channel.getUnit() + "/s" : channel.getUnit();
+        String text = String.format(Locale.US, "%s: %.2f %s", channel.getName(), value, unit);
+        Log.i(TAG, rule.getName() + " on " + text);
+        triggerNotificationBuilder.setContentTitle(rule.getName()).setContentText(text);
+        NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        notificationManager.notify(TRIGGER_NOTIFICATION_ID, triggerNotificationBuilder.build());
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
+    }
+
+    /**
+     * Pipeline metrics, through {@code adb shell dumpsys activity service
+     * com.example.sensor_app/.SensorService}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        metrics.dump(writer, dbHelper);
+    }
+
+    /**
+     * One listener's interest in one channel. Offered on the sensor thread; at most one delivery
+     * is queued on the listener's handler at a time.
+     */
+    private class Subscription implements Runnable {
+        final SampleListener listener;
+        final int channel;
+        final int samplingPeriodUs;
+        final Handler listenerHandler;
+        final LatestSampleStore.Sample sample = new LatestSampleStore.Sample();
+        volatile boolean active = true;
+        volatile boolean pending;
+        // Sensor thread only
+        final SampleThrottle throttle;
+
+        Subscription(SampleListener listener, int channel, int samplingPeriodUs, Handler listenerHandler) {
+            this.listener = listener;
+            this.channel = channel;
+            this.samplingPeriodUs = samplingPeriodUs;
+            this.listenerHandler = listenerHandler;
+            throttle = new SampleThrottle(samplingPeriodUs * 1000L);
+        }
+
+        void offer(long timestamp) {
+            if (pending || !throttle.tryPass(timestamp)) {
+                return;
+            }
+            pending = true;
+            listenerHandler.post(this);
+        }
+
+        @Override
+        public void run() {
+            pending = false;
+            if (active && latestSamples.read(channel, sample)) {
+                listener.onSample(channel, sample);
+            }
+        }
     }
 }
@@ -0,0 +1,57 @@
+package com.example.sensor_app;
+
+/**
+ * Storage engine for raw sensor rows. {@link DatabaseHelper} picks one per channel from
+ * {@link SensorChannel#getStorageEngine()}; rollups always live in SQLite.
+ *
+ * Writes only come from the writer thread. Reads may come from any thread.
+ */
+public interface SensorStore {
+    /**
+     * Buffers one row. Rows are durable once {@link #commit} returns.
+     *
+     * @return false if the row was skipped because it is not newer than the channel's last one,
+     *         or, in a store keyed by timestamp, because its timestamp is already stored
+     */
+    boolean append(int sensor, long timestamp, float x, float y, float z, int accuracy);
+
+    /**
+     * Called after every batch once all of its rows have been appended.
+     */
+    void commit();
+
+    /**
+     * Called instead of {@link #commit} when the batch could not be committed: forgets every
+     * row appended since the last commit, so the store matches what the database kept.
+     */
+    void rollback();
+
+    /**
+     * Adds rows with {@code afterNanos < timestamp <= toNanos} to {@code out}, oldest first,
+     * until it is full. Callers page through long ranges by passing the last timestamp they saw
+     * as the next {@code afterNanos}.
+     *
+     * @return number of rows added
+     */
+    int readRange(int sensor, long afterNanos, long toNanos, SensorWriteBuffer out);
+
+    /**
+     * @return timestamp of the oldest stored row, or Long.MAX_VALUE if there is none
+     */
+    long getFirstTimestamp(int sensor);
+
+    /**
+     * Deletes the oldest rows older than {@code cutoffNanos}. Engines that delete in larger
+     * units may remove more than {@code limit} rows in one call.
+     *
+     * @return number of rows deleted; the caller keeps calling while this is at least {@code limit}
+     */
+    int deleteBefore(int sensor, long cutoffNanos, int limit);
+
+    /**
+     * Size of the stored rows on disk, or -1 if they share a file with other data.
+     */
+    long getSizeBytes();
+
+    void close();
+}
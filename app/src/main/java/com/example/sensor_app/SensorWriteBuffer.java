@@ -0,0 +1,95 @@
+package com.example.sensor_app;
+
+/**
+ * Fixed-capacity batch of pending sensor rows waiting to be written by {@link DatabaseHelper}.
+ * Rows are kept in parallel primitive arrays so buffering a sample does not allocate.
+ */
+public class SensorWriteBuffer {
+    private final int[] sensors;
+    private final long[] timestamps;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+    private final int[] accuracies;
+    private int size;
+
+    public SensorWriteBuffer(int capacity) {
+        sensors = new int[capacity];
+        timestamps = new long[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+        zs = new float[capacity];
+        accuracies = new int[capacity];
+    }
+
+    public void add(int sensor, long timestamp, float x, float y, float z, int accuracy) {
+        sensors[size] = sensor;
+        timestamps[size] = timestamp;
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        accuracies[size] = accuracy;
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == sensors.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return sensors.length;
+    }
+
+    // Discards rows added after the first newSize
+    public void truncate(int newSize) {
+        size = newSize;
+    }
+
+    // Discards the oldest count rows, moving the rest to the front
+    public void removeFirst(int count) {
+        int remaining = size - count;
+        System.arraycopy(sensors, count, sensors, 0, remaining);
+        System.arraycopy(timestamps, count, timestamps, 0, remaining);
+        System.arraycopy(xs, count, xs, 0, remaining);
+        System.arraycopy(ys, count, ys, 0, remaining);
+        System.arraycopy(zs, count, zs, 0, remaining);
+        System.arraycopy(accuracies, count, accuracies, 0, remaining);
+        size = remaining;
+    }
+
+    public int getSensor(int index) {
+        return sensors[index];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public float getX(int index) {
+        return xs[index];
+    }
+
+    public float getY(int index) {
+        return ys[index];
+    }
+
+    public float getZ(int index) {
+        return zs[index];
+    }
+
+    public int getAccuracy(int index) {
+        return accuracies[index];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
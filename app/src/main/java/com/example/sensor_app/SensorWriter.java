@@ -0,0 +1,384 @@
+package com.example.sensor_app;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single background thread that owns every database write. Each producing thread gets its own
+ * {@link Producer} with one {@link SampleRingBuffer} per sensor, so handing a sample off is a
+ * lock-free, allocation-free copy. The writer thread drains the rings into a
+ * {@link SensorWriteBuffer} and hands batches to {@link DatabaseHelper}.
+ */
+public class SensorWriter {
+    private static final long FLUSH_TIMEOUT_MS = 2000;
+
+    private final DatabaseHelper dbHelper;
+    private final int sensorCount;
+    private final int batchRows;
+    private final long batchDelayNanos;
+    private volatile BackpressurePolicy policy;
+
+    private final CopyOnWriteArrayList<Producer> producers = new CopyOnWriteArrayList<>();
+    // Rare one-off writes, such as rate change records, run between batches
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Dropped and coalesced counts of released producers, per sensor
+    private final AtomicLongArray releasedDropped;
+    private final AtomicLongArray releasedCoalesced;
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+
+    /**
+     * Background work run on the writer thread only while no samples are pending, such as
+     * retention deletes. Each step must be short so incoming batches are not held up.
+     */
+    public interface MaintenanceTask {
+        /**
+         * @return true if the current cycle has more steps to run
+         */
+        boolean runStep();
+    }
+
+    private volatile MaintenanceTask maintenanceTask;
+    private volatile long maintenanceIntervalNanos;
+    private volatile long nextMaintenanceAt;
+    // Only touched by the writer thread
+    private boolean maintenanceRunning;
+
+    private final Object flushLock = new Object();
+    private volatile long flushRequests;
+    private long flushesDone;
+
+    // Only touched by the writer thread
+    private final SensorWriteBuffer batch;
+    private final Thread thread;
+
+    public SensorWriter(DatabaseHelper dbHelper, int sensorCount, int batchRows, long batchDelayMs,
+                        BackpressurePolicy policy) {
+        this.dbHelper = dbHelper;
+        this.sensorCount = sensorCount;
+        this.batchRows = batchRows;
+        this.batchDelayNanos = TimeUnit.MILLISECONDS.toNanos(batchDelayMs);
+        this.policy = policy;
+        batch = new SensorWriteBuffer(batchRows);
+        releasedDropped = new AtomicLongArray(sensorCount);
+        releasedCoalesced = new AtomicLongArray(sensorCount);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "sensor-writer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+    }
+
+    /**
+     * Policy applied by producers created after this call.
+     */
+    public void setBackpressurePolicy(BackpressurePolicy policy) {
+        this.policy = policy;
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return policy;
+    }
+
+    /**
+     * Creates the hand-off rings for one producing thread. A producer must only ever be used
+     * from a single thread.
+     *
+     * @param capacity samples per sensor the writer may fall behind by before backpressure applies
+     */
+    public Producer newProducer(int capacity) {
+        Producer producer = new Producer(capacity, policy);
+        producers.add(producer);
+        return producer;
+    }
+
+    /**
+     * Schedules {@code task} to run every {@code intervalMs} during idle periods, starting after
+     * {@code initialDelayMs}.
+     */
+    public void setMaintenanceTask(MaintenanceTask task, long initialDelayMs, long intervalMs) {
+        maintenanceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        nextMaintenanceAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialDelayMs);
+        maintenanceTask = task;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Runs {@code task} on the writer thread between batches. Meant for infrequent writes that
+     * are not samples; unlike {@link Producer#submit} it allocates, so keep it off hot paths.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Writes out whatever the producer still holds and stops draining it. Call when the
+     * producing thread is done, e.g. when a service is destroyed.
+     */
+    public void releaseProducer(Producer producer) {
+        flush();
+        if (producers.remove(producer)) {
+            for (SampleRingBuffer ring : producer.rings) {
+                releasedDropped.addAndGet(ring.getSensor(), ring.getDroppedCount());
+                releasedCoalesced.addAndGet(ring.getSensor(), ring.getCoalescedCount());
+            }
+        }
+    }
+
+    /**
+     * Blocks until everything submitted so far has been written, or the timeout expires.
+     */
+    public void flush() {
+        if (Thread.currentThread() == thread) {
+            runTasks();
+            drainAndWrite();
+            return;
+        }
+
+        synchronized (flushLock) {
+            long request = ++flushRequests;
+            LockSupport.unpark(thread);
+            long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+            long remaining = FLUSH_TIMEOUT_MS;
+            try {
+                while (flushesDone < request && remaining > 0) {
+                    flushLock.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Samples lost to backpressure since the writer started, including released producers'.
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (int sensor = 0; sensor < sensorCount; sensor++) {
+            dropped += getDroppedCount(sensor);
+        }
+        return dropped;
+    }
+
+    public long getDroppedCount(int sensor) {
+        long dropped = releasedDropped.get(sensor);
+        for (Producer producer : producers) {
+            dropped += producer.rings[sensor].getDroppedCount();
+        }
+        return dropped;
+    }
+
+    public long getCoalescedCount() {
+        long coalesced = 0;
+        for (int sensor = 0; sensor < sensorCount; sensor++) {
+            coalesced += getCoalescedCount(sensor);
+        }
+        return coalesced;
+    }
+
+    public long getCoalescedCount(int sensor) {
+        long coalesced = releasedCoalesced.get(sensor);
+        for (Producer producer : producers) {
+            coalesced += producer.rings[sensor].getCoalescedCount();
+        }
+        return coalesced;
+    }
+
+    /**
+     * Samples queued in every producer's rings and not yet taken by the writer.
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (Producer producer : producers) {
+            for (SampleRingBuffer ring : producer.rings) {
+                pending += ring.size();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Samples the rings of every producer can hold before backpressure applies.
+     */
+    public int getCapacity() {
+        int capacity = 0;
+        for (Producer producer : producers) {
+            for (SampleRingBuffer ring : producer.rings) {
+                capacity += ring.capacity();
+            }
+        }
+        return capacity;
+    }
+
+    private void writeLoop() {
+        long waitStart = 0;
+        while (true) {
+            runTasks();
+
+            boolean flushRequested;
+            synchronized (flushLock) {
+                flushRequested = flushesDone != flushRequests;
+            }
+            int pending = getPendingCount();
+
+            if (!flushRequested && pending < batchRows) {
+                if (pending == 0) {
+                    waitStart = 0;
+                    MaintenanceTask task = maintenanceTask;
+                    if (task == null) {
+                        // Producers unpark us when a ring goes from empty to non-empty
+                        LockSupport.park(this);
+                        continue;
+                    }
+                    long untilMaintenance = nextMaintenanceAt - System.nanoTime();
+                    if (maintenanceRunning || untilMaintenance <= 0) {
+                        runMaintenanceStep(task);
+                    } else {
+                        LockSupport.parkNanos(this, untilMaintenance);
+                    }
+                    continue;
+                }
+                // Give the batch up to batchDelay to fill before writing what is there
+                long now = System.nanoTime();
+                if (waitStart == 0) {
+                    waitStart = now;
+                }
+                long remaining = waitStart + batchDelayNanos - now;
+                if (remaining > 0) {
+                    LockSupport.parkNanos(this, remaining);
+                    continue;
+                }
+            }
+            waitStart = 0;
+
+            long handledFlushRequest = flushRequests;
+            drainAndWrite();
+
+            synchronized (flushLock) {
+                flushesDone = handledFlushRequest;
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e("SensorWriter", "Task failed", e);
+            }
+        }
+    }
+
+    private void runMaintenanceStep(MaintenanceTask task) {
+        try {
+            maintenanceRunning = task.runStep();
+        } catch (RuntimeException e) {
+            Log.e("SensorWriter", "Maintenance step failed", e);
+            maintenanceRunning = false;
+        }
+        if (!maintenanceRunning) {
+            nextMaintenanceAt = System.nanoTime() + maintenanceIntervalNanos;
+        }
+    }
+
+    // Drains every ring, writing one transaction per full batch
+    private void drainAndWrite() {
+        boolean drained = false;
+        while (!drained) {
+            drained = true;
+            for (Producer producer : producers) {
+                for (SampleRingBuffer ring : producer.rings) {
+                    ring.drainTo(batch);
+                    if (batch.isFull()) {
+                        writeBatch();
+                        drained = false;
+                    }
+                }
+            }
+        }
+        writeBatch();
+    }
+
+    private void writeBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            dbHelper.writeBatch(batch);
+            metrics.getBatchWrite().record(System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            // A failed batch must not kill the writer thread; the rows are lost either way
+            Log.e("SensorWriter", "Failed to write " + batch.size() + " rows", e);
+            metrics.onBatchFailed(batch.size());
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Hand-off point for one producing thread, with one ring per sensor.
+     */
+    public class Producer {
+        private final SampleRingBuffer[] rings;
+
+        private Producer(int capacity, BackpressurePolicy policy) {
+            rings = new SampleRingBuffer[sensorCount];
+            for (int i = 0; i < sensorCount; i++) {
+                rings[i] = new SampleRingBuffer(i, capacity, policy);
+            }
+        }
+
+        /**
+         * Releases samples held back by COALESCE backpressure. Call from the producing thread.
+         */
+        public void publishPending() {
+            for (SampleRingBuffer ring : rings) {
+                ring.publishPending();
+            }
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Queues a full sensor vector. Only the sensor's own axes are read from {@code values},
+         * so a {@code SensorEvent.values} array can be passed straight through.
+         */
+        public void submit(int sensor, long timestamp, float[] values, int accuracy) {
+            int axes = Math.min(DatabaseHelper.getAxisCount(sensor), values.length);
+            submit(sensor, timestamp,
+                    values[0],
+                    axes > 1 ? values[1] : Float.NaN,
+                    axes > 2 ? values[2] : Float.NaN,
+                    accuracy);
+        }
+
+        /**
+         * Queues one sample for writing. Never touches SQLite.
+         */
+        public void submit(int sensor, long timestamp, float x, float y, float z, int accuracy) {
+            SampleRingBuffer ring = rings[sensor];
+            ring.offer(timestamp, x, y, z, accuracy);
+
+            // Wake the writer to start the batch timer, or because a batch is ready
+            int size = ring.size();
+            if (size == 1 || size == batchRows || size == ring.capacity()) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+}
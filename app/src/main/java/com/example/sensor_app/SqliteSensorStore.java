@@ -0,0 +1,174 @@
+package com.example.sensor_app;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Raw rows in one SQLite table per channel, keyed by the timestamp in nanoseconds. Appends run
+ * inside the batch transaction opened by {@link DatabaseHelper#writeBatch}.
+ */
+public class SqliteSensorStore implements SensorStore {
+    private static final String COLUMN_TIMESTAMP = "timestamp";
+    private static final String COLUMN_X = "x";
+    private static final String COLUMN_Y = "y";
+    private static final String COLUMN_Z = "z";
+    private static final String COLUMN_ACCURACY = "accuracy";
+
+    private final DatabaseHelper dbHelper;
+    private final SQLiteStatement[] insertStatements;
+    private final SQLiteStatement[] deleteStatements;
+    // Query SQL per channel, built once so SQLite's statement cache compiles each only once per
+    // connection; values are always bound
+    private final String[] readRangeSql;
+    private final String[] firstTimestampSql;
+
+    public SqliteSensorStore(DatabaseHelper dbHelper, int channelCount) {
+        this.dbHelper = dbHelper;
+        insertStatements = new SQLiteStatement[channelCount];
+        deleteStatements = new SQLiteStatement[channelCount];
+        readRangeSql = new String[channelCount];
+        firstTimestampSql = new String[channelCount];
+        for (int sensor = 0; sensor < channelCount; sensor++) {
+            String table = getTable(sensor);
+            readRangeSql[sensor] = "SELECT " + COLUMN_TIMESTAMP + ", " + COLUMN_X + ", " + COLUMN_Y + ", " + COLUMN_Z
+                    + ", " + COLUMN_ACCURACY + " FROM " + table
+                    + " WHERE " + COLUMN_TIMESTAMP + " > ? AND " + COLUMN_TIMESTAMP + " <= ?"
+                    + " ORDER BY " + COLUMN_TIMESTAMP + " LIMIT ?";
+            firstTimestampSql[sensor] = "SELECT MIN(" + COLUMN_TIMESTAMP + ") FROM " + table;
+        }
+    }
+
+    /**
+     * Sensor rows are keyed by the event timestamp in nanoseconds, so samples that share a
+     * millisecond no longer collide.
+     */
+    public static String createTable(String table) {
+        return "CREATE TABLE " + table + "("
+                + COLUMN_TIMESTAMP + " INTEGER PRIMARY KEY,"
+                + COLUMN_X + " REAL,"
+                + COLUMN_Y + " REAL,"
+                + COLUMN_Z + " REAL,"
+                + COLUMN_ACCURACY + " INTEGER)";
+    }
+
+    private static String getTable(int sensor) {
+        return SensorChannelRegistry.getChannel(sensor).getTableName();
+    }
+
+    @Override
+    public boolean append(int sensor, long timestamp, float x, float y, float z, int accuracy) {
+        SQLiteStatement statement = insertStatements[sensor];
+        if (statement == null) {
+            statement = dbHelper.getWritableDatabase().compileStatement("INSERT OR IGNORE INTO " + getTable(sensor)
+                    + " (" + COLUMN_TIMESTAMP + ", " + COLUMN_X + ", " + COLUMN_Y + ", " + COLUMN_Z
+                    + ", " + COLUMN_ACCURACY + ") VALUES (?, ?, ?, ?, ?)");
+            insertStatements[sensor] = statement;
+        }
+        statement.bindLong(1, timestamp);
+        bindAxis(statement, 2, x);
+        bindAxis(statement, 3, y);
+        bindAxis(statement, 4, z);
+        if (accuracy >= 0) {
+            statement.bindLong(5, accuracy);
+        } else {
+            statement.bindNull(5);
+        }
+        // Rows keyed by timestamp: a repeated one is skipped and counted as rejected, so the
+        // rollups never count it twice
+        return statement.executeInsert() != -1;
+    }
+
+    // Missing axes are NaN in memory and NULL on disk
+    private static void bindAxis(SQLiteStatement statement, int index, float value) {
+        if (Float.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    @Override
+    public void commit() {
+        // The caller's transaction commits the rows
+    }
+
+    @Override
+    public void rollback() {
+        // Rolled back with the caller's transaction
+    }
+
+    @Override
+    public int readRange(int sensor, long afterNanos, long toNanos, SensorWriteBuffer out) {
+        int limit = out.capacity() - out.size();
+        if (limit <= 0) {
+            return 0;
+        }
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery(readRangeSql[sensor],
+                new String[]{Long.toString(afterNanos), Long.toString(toNanos), Integer.toString(limit)});
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                out.add(sensor, cursor.getLong(0), getAxis(cursor, 1), getAxis(cursor, 2), getAxis(cursor, 3),
+                        cursor.isNull(4) ? -1 : cursor.getInt(4));
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static float getAxis(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Float.NaN : cursor.getFloat(column);
+    }
+
+    @Override
+    public long getFirstTimestamp(int sensor) {
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery(firstTimestampSql[sensor], null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : Long.MAX_VALUE;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public int deleteBefore(int sensor, long cutoffNanos, int limit) {
+        SQLiteStatement statement = deleteStatements[sensor];
+        if (statement == null) {
+            String table = getTable(sensor);
+            statement = dbHelper.getWritableDatabase().compileStatement("DELETE FROM " + table
+                    + " WHERE " + COLUMN_TIMESTAMP + " IN (SELECT " + COLUMN_TIMESTAMP + " FROM " + table
+                    + " WHERE " + COLUMN_TIMESTAMP + " < ? ORDER BY " + COLUMN_TIMESTAMP + " LIMIT ?)");
+            deleteStatements[sensor] = statement;
+        }
+        statement.bindLong(1, cutoffNanos);
+        statement.bindLong(2, limit);
+        return statement.executeUpdateDelete();
+    }
+
+    @Override
+    public long getSizeBytes() {
+        return -1;
+    }
+
+    /**
+     * Drops the compiled statements; they are compiled again on next use.
+     */
+    @Override
+    public void close() {
+        closeStatements(insertStatements);
+        closeStatements(deleteStatements);
+    }
+
+    private static void closeStatements(SQLiteStatement[] statements) {
+        for (int i = 0; i < statements.length; i++) {
+            if (statements[i] != null) {
+                statements[i].close();
+                statements[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.sensor_app;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Connection settings for the sensor database, applied by {@link DatabaseHelper#onConfigure}.
+ *
+ * In write-ahead logging mode the writer thread appends to the -wal file while chart and export
+ * readers keep reading the last committed state on their own pooled connections, so neither
+ * waits for the other. Connection-level pragmas (synchronous, cache and mmap size) are set on
+ * the primary connection, which is the one every write goes through.
+ */
+public class SqliteTuning {
+    public enum Synchronous {
+        // No fsync at all; a power cut can corrupt the file
+        OFF,
+        // With WAL, commits are not synced and a power cut can lose the last ones, but the file
+        // stays consistent; syncs only happen at checkpoints
+        NORMAL,
+        // fsync on every commit
+        FULL
+    }
+
+    // SQLite's own defaults, apart from the journal
+    private static final int DEFAULT_PAGE_SIZE = 4096;
+    private static final int DEFAULT_WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    private final boolean writeAheadLogging;
+    private final Synchronous synchronous;
+    private final int pageSize;
+    private final int cacheSizeKib;
+    private final long mmapSizeBytes;
+    private final int walAutoCheckpointPages;
+    private final boolean truncateWalWhenIdle;
+
+    /**
+     * @param pageSize               bytes per page; only takes effect when the file is created
+     * @param cacheSizeKib           page cache of the primary connection
+     * @param mmapSizeBytes          how much of the file reads may memory-map, 0 for none
+     * @param walAutoCheckpointPages WAL size in pages that triggers a checkpoint after a commit,
+     *                               0 to only checkpoint from maintenance
+     * @param truncateWalWhenIdle    whether maintenance checkpoints and truncates the WAL file,
+     *                               so it does not keep the size of the largest burst
+     */
+    public SqliteTuning(boolean writeAheadLogging, Synchronous synchronous, int pageSize, int cacheSizeKib,
+                        long mmapSizeBytes, int walAutoCheckpointPages, boolean truncateWalWhenIdle) {
+        this.writeAheadLogging = writeAheadLogging;
+        this.synchronous = synchronous;
+        this.pageSize = pageSize;
+        this.cacheSizeKib = cacheSizeKib;
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.walAutoCheckpointPages = walAutoCheckpointPages;
+        this.truncateWalWhenIdle = truncateWalWhenIdle;
+    }
+
+    /**
+     * WAL with synchronous NORMAL, a 4 KiB page, 4 MiB of cache and 64 MiB of mmap. Checkpoints
+     * run after 1000 pages (about 4 MiB) of WAL and maintenance truncates the file.
+     */
+    public static SqliteTuning defaults() {
+        return new SqliteTuning(true, Synchronous.NORMAL, DEFAULT_PAGE_SIZE, 4 * 1024, 64L * 1024 * 1024,
+                DEFAULT_WAL_AUTOCHECKPOINT_PAGES, true);
+    }
+
+    /**
+     * The settings the database used before tuning: rollback journal, synchronous FULL and
+     * SQLite's defaults otherwise. Kept for comparison.
+     */
+    public static SqliteTuning rollbackJournal() {
+        return new SqliteTuning(false, Synchronous.FULL, DEFAULT_PAGE_SIZE, 2 * 1024, 0,
+                DEFAULT_WAL_AUTOCHECKPOINT_PAGES, false);
+    }
+
+    public boolean isWriteAheadLogging() {
+        return writeAheadLogging;
+    }
+
+    public Synchronous getSynchronous() {
+        return synchronous;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getCacheSizeKib() {
+        return cacheSizeKib;
+    }
+
+    public long getMmapSizeBytes() {
+        return mmapSizeBytes;
+    }
+
+    public int getWalAutoCheckpointPages() {
+        return walAutoCheckpointPages;
+    }
+
+    public boolean isTruncateWalWhenIdle() {
+        return truncateWalWhenIdle;
+    }
+
+    /**
+     * Applies the settings to a connection that was just opened. The page size goes first, as it
+     * only counts before the first table is created.
+     */
+    public void apply(SQLiteDatabase db) {
+        db.execSQL("PRAGMA page_size = " + pageSize);
+        if (writeAheadLogging) {
+            db.enableWriteAheadLogging();
+        }
+        // Set after the journal mode, since enabling WAL resets the connection's sync mode
+        setPragma(db, "synchronous = " + synchronous.name());
+        // Negative sizes are in KiB rather than pages
+        setPragma(db, "cache_size = -" + cacheSizeKib);
+        setPragma(db, "mmap_size = " + mmapSizeBytes);
+        if (writeAheadLogging) {
+            setPragma(db, "wal_autocheckpoint = " + walAutoCheckpointPages);
+        }
+    }
+
+    // Pragmas that report their new value return a row, which execSQL refuses
+    private static void setPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (writeAheadLogging ? "WAL" : "rollback journal") + ", synchronous " + synchronous
+                + ", page " + pageSize + " B, cache " + cacheSizeKib + " KiB, mmap " + mmapSizeBytes + " B";
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.sensor_app;
+
+/**
+ * Where a channel's raw rows are stored.
+ */
+public enum StorageEngine {
+    // One SQLite table per channel, keyed by timestamp; best for slow or irregular sensors
+    SQLITE,
+    // Segmented append-only files of fixed-width records; best for high-rate streams
+    LOG,
+    // Delta-of-delta timestamps and XOR-encoded values in SQLite BLOBs per time block; best for
+    // slow, regularly sampled sensors
+    COMPRESSED
+}
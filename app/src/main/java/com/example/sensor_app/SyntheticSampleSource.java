@@ -0,0 +1,247 @@
+package com.example.sensor_app;
+
+import java.util.Random;
+
+/**
+ * Generated signals at any rate, for tests, benchmarks and running without the real sensors.
+ * Every channel is available and follows its {@link Signal}: a sine, Gaussian noise, a square
+ * step or periodic bursts of motion over a quiet floor. Axes of a channel are phase-shifted
+ * copies of the same signal.
+ *
+ * In real time, samples are stamped with the wall clock and delivered as they fall due, held
+ * back for up to the channel's report latency like a hardware FIFO. Otherwise a virtual clock
+ * starts at {@code startNanos} and runs as fast as the listener keeps up. With the same seed
+ * the output is the same on every run.
+ */
+public class SyntheticSampleSource implements SampleSource {
+    public enum Shape {
+        SINE, NOISE, STEP, BURST
+    }
+
+    public static class Signal {
+        final Shape shape;
+        final float offset;
+        final float amplitude;
+        final long periodNanos;
+
+        /**
+         * @param periodMs period of the sine or the square step, or time between bursts; noise
+         *                 ignores it
+         */
+        public Signal(Shape shape, float offset, float amplitude, long periodMs) {
+            if (periodMs <= 0) {
+                throw new IllegalArgumentException("periodMs must be positive: " + periodMs);
+            }
+            this.shape = shape;
+            this.offset = offset;
+            this.amplitude = amplitude;
+            this.periodNanos = periodMs * NANOS_PER_MILLI;
+        }
+    }
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // How often due samples are generated in real time
+    private static final long TICK_MS = 10;
+    // Virtual time covered by one scheduling turn when running as fast as possible
+    private static final long FAST_TICK_NANOS = 100 * NANOS_PER_MILLI;
+    // Bursts take this share of their period and oscillate this many times faster
+    private static final int BURST_DUTY_DIVISOR = 10;
+    private static final int BURST_FREQUENCY_FACTOR = 20;
+    private static final float BURST_FLOOR = 0.01f;
+    // SensorManager.SENSOR_STATUS_ACCURACY_HIGH, without touching android classes on a plain JVM
+    private static final int ACCURACY_HIGH = 3;
+
+    private final Scheduler scheduler;
+    private final boolean realTime;
+    private final long startNanos;
+    private final Random random;
+    private Listener listener;
+
+    // Indexed by SensorChannel id
+    private final Signal[] signals = new Signal[SensorChannelRegistry.getChannelCount()];
+    private final boolean[] registered = new boolean[signals.length];
+    private final long[] periodsNanos = new long[signals.length];
+    private final long[] latenciesNanos = new long[signals.length];
+    private final long[] nextTimestamps = new long[signals.length];
+    private final float[] values = new float[3];
+    private long virtualNanos;
+    private boolean tickScheduled;
+    private boolean flushPending;
+
+    /**
+     * A real-time source starting now.
+     */
+    public SyntheticSampleSource(Scheduler scheduler) {
+        this(scheduler, true, System.currentTimeMillis() * NANOS_PER_MILLI, 0);
+    }
+
+    /**
+     * @param realTime   deliver samples as the wall clock reaches them, or as fast as possible
+     * @param startNanos first timestamp of the virtual clock; also the zero phase of every signal
+     */
+    public SyntheticSampleSource(Scheduler scheduler, boolean realTime, long startNanos, long seed) {
+        this.scheduler = scheduler;
+        this.realTime = realTime;
+        this.startNanos = startNanos;
+        this.virtualNanos = startNanos;
+        this.random = new Random(seed);
+        for (int i = 0; i < signals.length; i++) {
+            signals[i] = new Signal(Shape.SINE, 0f, 1f, 1000);
+        }
+    }
+
+    /**
+     * Sets the signal of a channel, from its next sample on.
+     */
+    public void setSignal(int channel, Signal signal) {
+        signals[channel] = signal;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean isAvailable(int channel) {
+        return true;
+    }
+
+    @Override
+    public boolean register(int channel, int samplingPeriodUs, int maxReportLatencyUs) {
+        if (!registered[channel]) {
+            registered[channel] = true;
+            nextTimestamps[channel] = getTimeNanos();
+        }
+        periodsNanos[channel] = Math.max(1, samplingPeriodUs) * 1000L;
+        latenciesNanos[channel] = maxReportLatencyUs * 1000L;
+        scheduleTick(0);
+        return true;
+    }
+
+    @Override
+    public void unregister(int channel) {
+        registered[channel] = false;
+    }
+
+    @Override
+    public boolean flush() {
+        if (!isAnyRegistered()) {
+            return false;
+        }
+        flushPending = true;
+        scheduler.schedule(flushTask, 0);
+        return true;
+    }
+
+    @Override
+    public long getTimeNanos() {
+        return realTime ? System.currentTimeMillis() * NANOS_PER_MILLI : virtualNanos;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < registered.length; i++) {
+            registered[i] = false;
+        }
+        scheduler.cancel(tick);
+        scheduler.cancel(flushTask);
+        tickScheduled = false;
+    }
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            tickScheduled = false;
+            if (!isAnyRegistered()) {
+                return;
+            }
+            if (!realTime) {
+                virtualNanos += FAST_TICK_NANOS;
+            }
+            deliverDue(false);
+            scheduleTick(realTime ? TICK_MS : 0);
+        }
+    };
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!flushPending) {
+                return;
+            }
+            flushPending = false;
+            deliverDue(true);
+            for (int i = 0; i < registered.length; i++) {
+                if (registered[i] && listener != null) {
+                    listener.onFlushCompleted(i);
+                }
+            }
+        }
+    };
+
+    private void scheduleTick(long delayMs) {
+        if (!tickScheduled) {
+            tickScheduled = true;
+            scheduler.schedule(tick, delayMs);
+        }
+    }
+
+    private boolean isAnyRegistered() {
+        for (boolean isRegistered : registered) {
+            if (isRegistered) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Generates every sample up to now, leaving channels whose oldest sample may still wait
+    private void deliverDue(boolean flushing) {
+        long now = getTimeNanos();
+        for (int channel = 0; channel < registered.length; channel++) {
+            if (!registered[channel] || (!flushing && now - nextTimestamps[channel] < latenciesNanos[channel])) {
+                continue;
+            }
+            Signal signal = signals[channel];
+            while (registered[channel] && nextTimestamps[channel] <= now) {
+                long timestamp = nextTimestamps[channel];
+                for (int axis = 0; axis < values.length; axis++) {
+                    values[axis] = sample(signal, timestamp - startNanos, axis);
+                }
+                nextTimestamps[channel] = timestamp + periodsNanos[channel];
+                if (listener != null) {
+                    listener.onSample(channel, timestamp, values, ACCURACY_HIGH);
+                }
+            }
+        }
+    }
+
+    private float sample(Signal signal, long elapsedNanos, int axis) {
+        // Each axis lags the previous one by a third of the period
+        long t = elapsedNanos + axis * signal.periodNanos / 3;
+        switch (signal.shape) {
+            case SINE:
+                return signal.offset + signal.amplitude * (float) Math.sin(phase(t, signal.periodNanos));
+            case NOISE:
+                return signal.offset + signal.amplitude * (float) random.nextGaussian();
+            case STEP:
+                return signal.offset + ((t / signal.periodNanos) % 2 == 0 ? 0f : signal.amplitude);
+            case BURST: {
+                long burstNanos = signal.periodNanos / BURST_DUTY_DIVISOR;
+                float noise = (float) random.nextGaussian() * BURST_FLOOR * signal.amplitude;
+                if (elapsedNanos % signal.periodNanos >= burstNanos) {
+                    return signal.offset + noise;
+                }
+                return signal.offset + noise
+                        + signal.amplitude * (float) Math.sin(phase(t * BURST_FREQUENCY_FACTOR, signal.periodNanos));
+            }
+            default:
+                throw new IllegalStateException("Unknown shape " + signal.shape);
+        }
+    }
+
+    private static double phase(long elapsedNanos, long periodNanos) {
+        return 2 * Math.PI * (elapsedNanos % periodNanos) / periodNanos;
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.sensor_app;
+
+/**
+ * Decides which samples of one channel are stored in {@link CaptureMode#TRIGGERED}. Every
+ * sample is checked against the channel's {@link TriggerRule}s and kept in a rolling pre-trigger
+ * ring. While nothing fires, only one sample per baseline interval is stored, once it has left
+ * the pre-trigger window, so a capture never finds a stored sample newer than its window start.
+ * When a rule fires, the ring's last pre-trigger window is stored, then every sample until the
+ * post-trigger window has passed; rules firing again meanwhile extend the capture instead of
+ * starting a new event.
+ *
+ * Rule state and the ring are allocated up front, so evaluating a sample never allocates. The
+ * ring holds a fixed number of samples: above that many per pre-trigger window the stored
+ * window is shorter. Only used from the sensor thread.
+ */
+public class TriggerEngine {
+    public interface Listener {
+        /**
+         * A sample to store; older samples of the channel always come first.
+         */
+        void onStore(int channel, long timestamp, float x, float y, float z, int accuracy);
+
+        /**
+         * A rule fired and a capture started, once per event.
+         *
+         * @param value the value the rule compared with its level
+         */
+        void onTriggered(int channel, TriggerRule rule, long timestamp, float value);
+    }
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final int channel;
+    private final TriggerRule[] rules;
+    private final long preTriggerNanos;
+    private final long postTriggerNanos;
+    private final long baselineNanos;
+    private final Listener listener;
+
+    // Per rule: whether the condition held on the last sample, and the last value and time
+    private final boolean[] conditionMet;
+    private final float[] lastValues;
+    private final long[] lastTimestamps;
+    // Per WINDOW_STATISTIC rule, the last windowSize values with their running sums; null otherwise
+    private final float[][] windows;
+    private final int[] windowPositions;
+    private final int[] windowCounts;
+    private final double[] windowSums;
+    private final double[] windowSumsOfSquares;
+
+    // Pre-trigger ring, oldest at ringStart
+    private final long[] ringTimestamps;
+    private final float[] ringXs;
+    private final float[] ringYs;
+    private final float[] ringZs;
+    private final int[] ringAccuracies;
+    private int ringStart;
+    private int ringSize;
+
+    private boolean capturing;
+    private long captureEnd;
+    private long lastStoredTimestamp = Long.MIN_VALUE;
+    private TriggerRule firedRule;
+    private float firedValue;
+
+    /**
+     * @param preTriggerMs       stored history before the sample that fired
+     * @param postTriggerMs      stored time after the last sample that fired
+     * @param baselineIntervalMs time between samples stored while nothing fires
+     * @param ringCapacity       samples kept for the pre-trigger window
+     */
+    public TriggerEngine(int channel, TriggerRule[] rules, long preTriggerMs, long postTriggerMs,
+                         long baselineIntervalMs, int ringCapacity, Listener listener) {
+        this.channel = channel;
+        this.rules = rules.clone();
+        this.preTriggerNanos = preTriggerMs * NANOS_PER_MILLI;
+        this.postTriggerNanos = postTriggerMs * NANOS_PER_MILLI;
+        this.baselineNanos = baselineIntervalMs * NANOS_PER_MILLI;
+        this.listener = listener;
+
+        conditionMet = new boolean[rules.length];
+        lastValues = new float[rules.length];
+        lastTimestamps = new long[rules.length];
+        windows = new float[rules.length][];
+        windowPositions = new int[rules.length];
+        windowCounts = new int[rules.length];
+        windowSums = new double[rules.length];
+        windowSumsOfSquares = new double[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i].getKind() == TriggerRule.Kind.WINDOW_STATISTIC) {
+                windows[i] = new float[rules[i].getWindowSize()];
+            }
+        }
+        reset();
+
+        ringTimestamps = new long[ringCapacity];
+        ringXs = new float[ringCapacity];
+        ringYs = new float[ringCapacity];
+        ringZs = new float[ringCapacity];
+        ringAccuracies = new int[ringCapacity];
+    }
+
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    /**
+     * Forgets rule state and pre-trigger history, e.g. after the sensor was off for a while.
+     * Samples already stored stay stored.
+     */
+    public void reset() {
+        for (int i = 0; i < rules.length; i++) {
+            conditionMet[i] = false;
+            lastTimestamps[i] = Long.MIN_VALUE;
+            windowPositions[i] = 0;
+            windowCounts[i] = 0;
+            windowSums[i] = 0;
+            windowSumsOfSquares[i] = 0;
+        }
+        ringStart = 0;
+        ringSize = 0;
+        capturing = false;
+    }
+
+    /**
+     * Evaluates one sample and stores it, or the capture it starts, through the listener. Axes
+     * the channel does not have are NaN.
+     */
+    public void onSample(long timestamp, float x, float y, float z, int accuracy) {
+        boolean fired = evaluate(timestamp, x, y, z);
+
+        if (capturing) {
+            if (fired) {
+                captureEnd = timestamp + postTriggerNanos;
+            }
+            store(timestamp, x, y, z, accuracy);
+            if (timestamp >= captureEnd) {
+                capturing = false;
+            }
+            return;
+        }
+
+        if (fired) {
+            capturing = true;
+            captureEnd = timestamp + postTriggerNanos;
+            storePreTrigger(timestamp);
+            store(timestamp, x, y, z, accuracy);
+            listener.onTriggered(channel, firedRule, timestamp, firedValue);
+            return;
+        }
+
+        push(timestamp, x, y, z, accuracy);
+        long windowStart = timestamp - preTriggerNanos;
+        while (ringSize > 0 && ringTimestamps[ringStart] < windowStart) {
+            retireOldest();
+        }
+    }
+
+    // Runs every rule, so all of them track the signal; true if any fired
+    private boolean evaluate(long timestamp, float x, float y, float z) {
+        boolean fired = false;
+        for (int i = 0; i < rules.length; i++) {
+            TriggerRule rule = rules[i];
+            float value = valueOf(rule.getAxis(), x, y, z);
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            float compared;
+            boolean met;
+            switch (rule.getKind()) {
+                case RATE_OF_CHANGE:
+                    long previousTimestamp = lastTimestamps[i];
+                    float previousValue = lastValues[i];
+                    lastTimestamps[i] = timestamp;
+                    lastValues[i] = value;
+                    if (previousTimestamp == Long.MIN_VALUE || timestamp <= previousTimestamp) {
+                        continue;
+                    }
+                    compared = (float) ((value - previousValue) * NANOS_PER_SECOND / (timestamp - previousTimestamp));
+                    met = Math.abs(compared) > rule.getLevel();
+                    break;
+                case WINDOW_STATISTIC:
+                    compared = addToWindow(i, value);
+                    if (Float.isNaN(compared)) {
+                        continue;
+                    }
+                    met = rule.isAbove() ? compared > rule.getLevel() : compared < rule.getLevel();
+                    break;
+                default:
+                    compared = value;
+                    met = rule.isAbove() ? value > rule.getLevel() : value < rule.getLevel();
+                    break;
+            }
+            if (met && !conditionMet[i] && !fired) {
+                fired = true;
+                firedRule = rule;
+                firedValue = compared;
+            }
+            conditionMet[i] = met;
+        }
+        return fired;
+    }
+
+    private static float valueOf(int axis, float x, float y, float z) {
+        switch (axis) {
+            case 0:
+                return x;
+            case 1:
+                return y;
+            case 2:
+                return z;
+            default:
+                float sum = x * x;
+                if (!Float.isNaN(y)) {
+                    sum += y * y;
+                }
+                if (!Float.isNaN(z)) {
+                    sum += z * z;
+                }
+                return (float) Math.sqrt(sum);
+        }
+    }
+
+    // Slides the rule's window on by one value; NaN until the window is full
+    private float addToWindow(int rule, float value) {
+        float[] window = windows[rule];
+        int position = windowPositions[rule];
+        if (windowCounts[rule] == window.length) {
+            float oldest = window[position];
+            windowSums[rule] -= oldest;
+            windowSumsOfSquares[rule] -= (double) oldest * oldest;
+        } else {
+            windowCounts[rule]++;
+        }
+        window[position] = value;
+        windowSums[rule] += value;
+        windowSumsOfSquares[rule] += (double) value * value;
+        position = (position + 1) % window.length;
+        windowPositions[rule] = position;
+        if (position == 0) {
+            // Recompute once per window so rounding in the running sums does not build up
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int i = 0; i < window.length; i++) {
+                sum += window[i];
+                sumOfSquares += (double) window[i] * window[i];
+            }
+            windowSums[rule] = sum;
+            windowSumsOfSquares[rule] = sumOfSquares;
+        }
+
+        int count = windowCounts[rule];
+        if (count < window.length) {
+            return Float.NaN;
+        }
+        double mean = windowSums[rule] / count;
+        double meanOfSquares = windowSumsOfSquares[rule] / count;
+        switch (rules[rule].getStatistic()) {
+            case STD_DEV:
+                return (float) Math.sqrt(Math.max(0, meanOfSquares - mean * mean));
+            case RMS:
+                return (float) Math.sqrt(meanOfSquares);
+            default:
+                return (float) mean;
+        }
+    }
+
+    private void push(long timestamp, float x, float y, float z, int accuracy) {
+        int capacity = ringTimestamps.length;
+        if (ringSize == capacity) {
+            retireOldest();
+        }
+        int slot = (ringStart + ringSize) % capacity;
+        ringSize++;
+        ringTimestamps[slot] = timestamp;
+        ringXs[slot] = x;
+        ringYs[slot] = y;
+        ringZs[slot] = z;
+        ringAccuracies[slot] = accuracy;
+    }
+
+    // Drops the oldest sample from the ring, storing it if a baseline sample is due. Baseline
+    // samples are only taken here, so none is stored while it could still be in a pre-trigger
+    // window and cut that window short.
+    private void retireOldest() {
+        int slot = ringStart;
+        long timestamp = ringTimestamps[slot];
+        ringStart = (ringStart + 1) % ringTimestamps.length;
+        ringSize--;
+        if (lastStoredTimestamp == Long.MIN_VALUE || timestamp - lastStoredTimestamp >= baselineNanos) {
+            store(timestamp, ringXs[slot], ringYs[slot], ringZs[slot], ringAccuracies[slot]);
+        }
+    }
+
+    // Stores the ring's samples within the pre-trigger window, all newer than anything stored
+    private void storePreTrigger(long triggerTimestamp) {
+        long from = triggerTimestamp - preTriggerNanos;
+        int capacity = ringTimestamps.length;
+        for (int i = 0; i < ringSize; i++) {
+            int slot = (ringStart + i) % capacity;
+            if (ringTimestamps[slot] >= from) {
+                store(ringTimestamps[slot], ringXs[slot], ringYs[slot], ringZs[slot], ringAccuracies[slot]);
+            }
+        }
+        ringStart = 0;
+        ringSize = 0;
+    }
+
+    private void store(long timestamp, float x, float y, float z, int accuracy) {
+        if (timestamp <= lastStoredTimestamp) {
+            return;
+        }
+        lastStoredTimestamp = timestamp;
+        listener.onStore(channel, timestamp, x, y, z, accuracy);
+    }
+}
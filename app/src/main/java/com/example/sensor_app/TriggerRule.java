@@ -0,0 +1,98 @@
+package com.example.sensor_app;
+
+/**
+ * A condition on one channel's samples that marks an event worth capturing in
+ * {@link CaptureMode#TRIGGERED}. Rules fire on the sample where the condition becomes true, not
+ * on every sample while it stays true. Evaluated by {@link TriggerEngine}.
+ */
+public class TriggerRule {
+    public enum Kind {
+        // The value is above or below the level
+        THRESHOLD,
+        // The value changes faster than the level per second, either way
+        RATE_OF_CHANGE,
+        // A statistic of the last windowSize values is above or below the level
+        WINDOW_STATISTIC
+    }
+
+    public enum Statistic {
+        MEAN,
+        STD_DEV,
+        RMS
+    }
+
+    // Axis value meaning the length of the sample's vector, for multi-axis channels
+    public static final int MAGNITUDE = -1;
+
+    private final String name;
+    private final Kind kind;
+    private final int axis;
+    private final boolean above;
+    private final float level;
+    private final Statistic statistic;
+    private final int windowSize;
+
+    /**
+     * @param name       shown in the event notification
+     * @param axis       0 to 2, or {@link #MAGNITUDE}
+     * @param above      true to fire above the level, false below it; ignored for
+     *                   {@link Kind#RATE_OF_CHANGE}
+     * @param level      in the channel's unit, or unit per second for a rate of change
+     * @param statistic  for {@link Kind#WINDOW_STATISTIC}, otherwise null
+     * @param windowSize samples per window for {@link Kind#WINDOW_STATISTIC}, otherwise 0
+     */
+    public TriggerRule(String name, Kind kind, int axis, boolean above, float level, Statistic statistic,
+                       int windowSize) {
+        this.name = name;
+        this.kind = kind;
+        this.axis = axis;
+        this.above = above;
+        this.level = level;
+        this.statistic = statistic;
+        this.windowSize = windowSize;
+    }
+
+    public static TriggerRule above(String name, int axis, float level) {
+        return new TriggerRule(name, Kind.THRESHOLD, axis, true, level, null, 0);
+    }
+
+    public static TriggerRule below(String name, int axis, float level) {
+        return new TriggerRule(name, Kind.THRESHOLD, axis, false, level, null, 0);
+    }
+
+    public static TriggerRule rateOfChange(String name, int axis, float levelPerSecond) {
+        return new TriggerRule(name, Kind.RATE_OF_CHANGE, axis, true, levelPerSecond, null, 0);
+    }
+
+    public static TriggerRule windowAbove(String name, int axis, Statistic statistic, int windowSize, float level) {
+        return new TriggerRule(name, Kind.WINDOW_STATISTIC, axis, true, level, statistic, windowSize);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getAxis() {
+        return axis;
+    }
+
+    public boolean isAbove() {
+        return above;
+    }
+
+    public float getLevel() {
+        return level;
+    }
+
+    public Statistic getStatistic() {
+        return statistic;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+}
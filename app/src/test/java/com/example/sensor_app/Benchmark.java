@@ -0,0 +1,128 @@
+package com.example.sensor_app;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Small measuring harness shared by the benchmark tests, in the spirit of JMH: warm-up rounds
+ * that are thrown away, then timed rounds with per-round latency percentiles, throughput and
+ * bytes allocated per operation on the measuring thread.
+ *
+ * Benchmarks only run with {@code -Pbenchmark=true}, which the build passes on as the
+ * {@code benchmark} system property; without it they are reported as skipped and the unit
+ * tests alone check behaviour. Any result can be gated with
+ * {@code -Pbenchmark.min.<name>=<value>}: the run fails if the result drops below it.
+ */
+public class Benchmark {
+    private static final String ENABLED_PROPERTY = "benchmark";
+    private static final String MIN_PROPERTY_PREFIX = "benchmark.min.";
+
+    public interface Body {
+        /**
+         * Runs one round of {@code operations} operations.
+         */
+        void run(int operations) throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final double operationsPerSecond;
+        public final long p50Nanos;
+        public final long p99Nanos;
+        // -1 where the JVM cannot count allocations
+        public final double bytesPerOperation;
+
+        Result(String name, double operationsPerSecond, long p50Nanos, long p99Nanos, double bytesPerOperation) {
+            this.name = name;
+            this.operationsPerSecond = operationsPerSecond;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-32s %14.0f ops/s  p50 %9.2f us  p99 %9.2f us  %8.1f B/op",
+                    name, operationsPerSecond, p50Nanos / 1e3, p99Nanos / 1e3, bytesPerOperation);
+        }
+    }
+
+    private Benchmark() {
+    }
+
+    /**
+     * Skips the calling test unless benchmarks were asked for.
+     */
+    public static void assumeEnabled() {
+        assumeTrue("Benchmarks run with -Pbenchmark=true", Boolean.getBoolean(ENABLED_PROPERTY));
+    }
+
+    /**
+     * Times {@code rounds} rounds of {@code operations} operations after {@code warmupRounds}
+     * untimed ones. Percentiles are of the time per operation within a round.
+     */
+    public static Result measure(String name, int warmupRounds, int rounds, int operations, Body body)
+            throws Exception {
+        for (int i = 0; i < warmupRounds; i++) {
+            body.run(operations);
+        }
+        long[] roundNanos = new long[rounds];
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            long roundStart = System.nanoTime();
+            body.run(operations);
+            roundNanos[i] = System.nanoTime() - roundStart;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        long totalOperations = (long) rounds * operations;
+        Arrays.sort(roundNanos);
+        Result result = new Result(name, totalOperations * 1e9 / elapsed,
+                percentile(roundNanos, 0.50) / operations, percentile(roundNanos, 0.99) / operations,
+                allocatedBefore < 0 ? -1 : (double) allocated / totalOperations);
+        report(result.toString());
+        return result;
+    }
+
+    /**
+     * Value at {@code quantile} of an ascending array, nearest rank.
+     */
+    public static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread, or -1 if the JVM does not say.
+     */
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public static void report(String line) {
+        System.out.println("[benchmark] " + line);
+    }
+
+    /**
+     * Fails if {@code benchmark.min.<key>} is set and {@code value} is below it.
+     */
+    public static void checkFloor(String key, double value) {
+        String floor = System.getProperty(MIN_PROPERTY_PREFIX + key);
+        if (floor != null) {
+            assertTrue(key + " = " + value + " is below the floor of " + floor, value >= Double.parseDouble(floor));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.sensor_app;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips through {@link CompressedSensorStore} on Robolectric's SQLite: where blocks are
+ * closed, rewriting the open block on every commit, reopening, rollback and deletion.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CompressedSensorStoreTest {
+    private static final int SENSOR = SensorChannelRegistry.PRESSURE;
+    private static final long PERIOD = 1000000000L;
+    private static final long HOUR = 3600L * PERIOD;
+    private static final int CHANNEL_COUNT = SensorChannelRegistry.getChannelCount();
+
+    private DatabaseHelper dbHelper;
+    private String table;
+    // Recent, so retention maintenance never considers the rows old
+    private long start;
+
+    @Before
+    public void setUp() {
+        dbHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+        table = CompressedSensorStore.getTable(SensorChannelRegistry.getChannel(SENSOR).getTableName());
+        dbHelper.getWritableDatabase().delete(table, null, null);
+        start = System.currentTimeMillis() * 1000000L - 10 * HOUR;
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.getWritableDatabase().delete(table, null, null);
+    }
+
+    @Test
+    public void closesBlocksAtTheSampleLimitAndOnAccuracyChanges() {
+        CompressedSensorStore store = new CompressedSensorStore(dbHelper, CHANNEL_COUNT);
+        for (int i = 0; i < 2500; i++) {
+            // Runs of equal values, as pressure mostly reports
+            assertTrue(store.append(SENSOR, start + i * PERIOD, 1000 + i / 10, Float.NaN, Float.NaN,
+                    i < 1500 ? 3 : 2));
+        }
+        store.commit();
+
+        // 1024 samples, the rest until the accuracy changed, then the open block
+        assertBlocks(3, 2500);
+        SensorWriteBuffer out = new SensorWriteBuffer(3000);
+        assertEquals(2500, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        for (int i = 0; i < 2500; i++) {
+            assertEquals(start + i * PERIOD, out.getTimestamp(i));
+            assertEquals(1000 + i / 10, out.getX(i), 0f);
+            assertTrue(Float.isNaN(out.getY(i)));
+            assertEquals(i < 1500 ? 3 : 2, out.getAccuracy(i));
+        }
+
+        // A range starting inside the second block
+        out.clear();
+        assertEquals(11, store.readRange(SENSOR, start + 1099 * PERIOD, start + 1110 * PERIOD, out));
+        assertEquals(start + 1100 * PERIOD, out.getTimestamp(0));
+        assertEquals(start + 1110 * PERIOD, out.getTimestamp(10));
+        store.close();
+    }
+
+    @Test
+    public void closesBlocksSpanningMoreThanAnHour() {
+        CompressedSensorStore store = new CompressedSensorStore(dbHelper, CHANNEL_COUNT);
+        long[] timestamps = {start, start + PERIOD, start + 2 * HOUR, start + 2 * HOUR + 1, start + 5 * HOUR};
+        for (int i = 0; i < timestamps.length; i++) {
+            assertTrue(store.append(SENSOR, timestamps[i], -i, Float.NaN, Float.NaN, 3));
+        }
+        store.commit();
+
+        assertBlocks(3, timestamps.length);
+        SensorWriteBuffer out = new SensorWriteBuffer(10);
+        assertEquals(timestamps.length, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(timestamps[i], out.getTimestamp(i));
+            assertEquals(-i, out.getX(i), 0f);
+        }
+        store.close();
+    }
+
+    @Test
+    public void rewritesTheOpenBlockAndCarriesOnAfterReopening() {
+        CompressedSensorStore store = new CompressedSensorStore(dbHelper, CHANNEL_COUNT);
+        for (int i = 0; i < 10; i++) {
+            store.append(SENSOR, start + i * PERIOD, i, Float.NaN, Float.NaN, 3);
+        }
+        store.commit();
+        for (int i = 10; i < 20; i++) {
+            store.append(SENSOR, start + i * PERIOD, i, Float.NaN, Float.NaN, 3);
+        }
+        store.commit();
+        // The same block, replaced, not a second copy of its first rows
+        assertBlocks(1, 20);
+        store.close();
+
+        store = new CompressedSensorStore(dbHelper, CHANNEL_COUNT);
+        assertEquals(start, store.getFirstTimestamp(SENSOR));
+        assertFalse(store.append(SENSOR, start + 19 * PERIOD, 0, Float.NaN, Float.NaN, 3));
+        assertTrue(store.append(SENSOR, start + 20 * PERIOD, 20, Float.NaN, Float.NaN, 3));
+        store.commit();
+        assertBlocks(2, 21);
+
+        SensorWriteBuffer out = new SensorWriteBuffer(100);
+        assertEquals(21, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        for (int i = 0; i <= 20; i++) {
+            assertEquals(start + i * PERIOD, out.getTimestamp(i));
+            assertEquals(i, out.getX(i), 0f);
+        }
+        store.close();
+    }
+
+    @Test
+    public void rollbackDropsTheOpenBlock() {
+        CompressedSensorStore store = new CompressedSensorStore(dbHelper, CHANNEL_COUNT);
+        for (int i = 0; i < 10; i++) {
+            store.append(SENSOR, start + i * PERIOD, i, Float.NaN, Float.NaN, 3);
+        }
+        store.commit();
+        // A failed batch long enough to close the open block in the table before it failed
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 10; i < 1500; i++) {
+                store.append(SENSOR, start + i * PERIOD, -1, Float.NaN, Float.NaN, 3);
+            }
+        } finally {
+            db.endTransaction();
+        }
+        store.rollback();
+
+        assertTrue(store.append(SENSOR, start + 10 * PERIOD, 10, Float.NaN, Float.NaN, 3));
+        store.commit();
+        SensorWriteBuffer out = new SensorWriteBuffer(100);
+        assertEquals(11, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        assertEquals(9, out.getX(9), 0f);
+        assertEquals(10, out.getX(10), 0f);
+        store.close();
+    }
+
+    @Test
+    public void deletesOnlyBlocksThatEndedBeforeTheCutoff() {
+        CompressedSensorStore store = new CompressedSensorStore(dbHelper, CHANNEL_COUNT);
+        for (int i = 0; i < 3000; i++) {
+            store.append(SENSOR, start + i * PERIOD, i, Float.NaN, Float.NaN, 3);
+        }
+        store.commit();
+        assertBlocks(3, 3000);
+
+        // The second block straddles the cutoff, so only the first goes
+        assertEquals(1024, store.deleteBefore(SENSOR, start + 1500 * PERIOD, 10000));
+        assertEquals(0, store.deleteBefore(SENSOR, start + 1500 * PERIOD, 10000));
+        assertBlocks(2, 3000 - 1024);
+        assertEquals(start + 1024 * PERIOD, store.getFirstTimestamp(SENSOR));
+        store.close();
+    }
+
+    private void assertBlocks(int blocks, int samples) {
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery("SELECT COUNT(*), TOTAL(count) FROM " + table, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(blocks, cursor.getInt(0));
+            assertEquals(samples, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+    }
+}
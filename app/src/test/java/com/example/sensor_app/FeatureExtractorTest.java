@@ -0,0 +1,73 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link FeatureExtractor} windows and the features it reports for a known tone.
+ */
+public class FeatureExtractorTest {
+    private static final int SENSOR = SensorChannelRegistry.ACCELEROMETER;
+    // 64 Hz, so one-second windows hold one 64-point FFT
+    private static final long PERIOD = 15625000L;
+
+    @Test
+    public void reportsStatisticsAndTheDominantFrequency() {
+        FeatureExtractor extractor = new FeatureExtractor(SENSOR, 1, 1000, 64, 1f);
+        // An 8 Hz tone of amplitude 2 around 10
+        for (int i = 0; i < 64; i++) {
+            assertFalse(extractor.onSample(i * PERIOD, tone(i), Float.NaN, Float.NaN));
+        }
+        assertTrue(extractor.onSample(64 * PERIOD, tone(64), Float.NaN, Float.NaN));
+
+        SensorFeatures features = extractor.getFeatures();
+        assertEquals(SENSOR, features.sensor);
+        assertEquals(0, features.startTimestamp);
+        assertEquals(63 * PERIOD, features.endTimestamp);
+        assertEquals(64, features.count);
+        assertEquals(10, features.mean, 1e-5);
+        assertEquals(2 / Math.sqrt(2), features.stdDev, 1e-5);
+        assertEquals(8, features.min, 1e-5f);
+        assertEquals(12, features.max, 1e-5f);
+        assertEquals(8, features.dominantFrequency, 1e-3f);
+        assertEquals(2, features.dominantAmplitude, 0.1f);
+    }
+
+    @Test
+    public void summarisesThreeAxesByMagnitude() {
+        FeatureExtractor extractor = new FeatureExtractor(SENSOR, 3, 1000, 0, 1f);
+        for (int i = 0; i <= 10; i++) {
+            extractor.onSample(i * 100000000L, 3, 4, 12);
+        }
+        SensorFeatures features = extractor.getFeatures();
+        assertEquals(10, features.count);
+        assertEquals(13, features.mean, 1e-5);
+        assertEquals(0, features.stdDev, 1e-5);
+        // No FFT requested, so no spectrum or peaks
+        assertTrue(Float.isNaN(features.dominantFrequency));
+        assertEquals(0, features.peakCount);
+    }
+
+    @Test
+    public void noSpectrumUntilTheFftIsFull() {
+        FeatureExtractor extractor = new FeatureExtractor(SENSOR, 1, 500, 64, 1f);
+        for (int i = 0; i <= 32; i++) {
+            extractor.onSample(i * PERIOD, tone(i), Float.NaN, Float.NaN);
+        }
+        assertEquals(32, extractor.getFeatures().count);
+        assertTrue(Float.isNaN(extractor.getFeatures().dominantFrequency));
+
+        // The second window fills it
+        for (int i = 33; i <= 64; i++) {
+            extractor.onSample(i * PERIOD, tone(i), Float.NaN, Float.NaN);
+        }
+        assertEquals(8, extractor.getFeatures().dominantFrequency, 1e-3f);
+    }
+
+    private static float tone(int i) {
+        return (float) (10 + 2 * Math.sin(2 * Math.PI * 8 * i / 64.0));
+    }
+}
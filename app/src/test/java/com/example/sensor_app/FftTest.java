@@ -0,0 +1,82 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Known answers for {@link Fft}: a pure tone lands in its bin, and arbitrary input matches a
+ * direct evaluation of the DFT.
+ */
+public class FftTest {
+    private static final int SIZE = 64;
+
+    @Test
+    public void sineLandsInItsBin() {
+        Fft fft = new Fft(SIZE);
+        float[] real = new float[SIZE];
+        float[] imaginary = new float[SIZE];
+        // Five whole periods of amplitude 3 across the window
+        for (int i = 0; i < SIZE; i++) {
+            real[i] = (float) (3 * Math.sin(2 * Math.PI * 5 * i / SIZE));
+        }
+        fft.transform(real, imaginary);
+
+        for (int bin = 0; bin < SIZE; bin++) {
+            double magnitude = Math.hypot(real[bin], imaginary[bin]);
+            // A real sine splits evenly between its bin and the mirrored one
+            double expected = bin == 5 || bin == SIZE - 5 ? 3 * SIZE / 2.0 : 0;
+            assertEquals("bin " + bin, expected, magnitude, 1e-3);
+        }
+        // sin is -i/2 (e^ix - e^-ix): all imaginary, negative in the positive-frequency bin
+        assertEquals(-3 * SIZE / 2.0, imaginary[5], 1e-3);
+    }
+
+    @Test
+    public void constantLandsInTheDcBin() {
+        Fft fft = new Fft(8);
+        float[] real = {2, 2, 2, 2, 2, 2, 2, 2};
+        float[] imaginary = new float[8];
+        fft.transform(real, imaginary);
+        assertEquals(16, real[0], 1e-6);
+        for (int bin = 1; bin < 8; bin++) {
+            assertEquals(0, real[bin], 1e-6);
+            assertEquals(0, imaginary[bin], 1e-6);
+        }
+    }
+
+    @Test
+    public void matchesTheDirectDft() {
+        Random random = new Random(7);
+        float[] real = new float[SIZE];
+        float[] imaginary = new float[SIZE];
+        double[] inputReal = new double[SIZE];
+        double[] inputImaginary = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            real[i] = (float) random.nextGaussian();
+            imaginary[i] = (float) random.nextGaussian();
+            inputReal[i] = real[i];
+            inputImaginary[i] = imaginary[i];
+        }
+        new Fft(SIZE).transform(real, imaginary);
+
+        for (int bin = 0; bin < SIZE; bin++) {
+            double sumReal = 0;
+            double sumImaginary = 0;
+            for (int i = 0; i < SIZE; i++) {
+                double angle = -2 * Math.PI * bin * i / SIZE;
+                sumReal += inputReal[i] * Math.cos(angle) - inputImaginary[i] * Math.sin(angle);
+                sumImaginary += inputReal[i] * Math.sin(angle) + inputImaginary[i] * Math.cos(angle);
+            }
+            assertEquals(sumReal, real[bin], 1e-3);
+            assertEquals(sumImaginary, imaginary[bin], 1e-3);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSizesThatAreNotPowersOfTwo() {
+        new Fft(48);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips through {@link GorillaCodec}. Values must come back bit for bit, NaN payloads and
+ * negative zero included, and timestamps exactly, whichever delta-of-delta bucket they need.
+ */
+public class GorillaCodecTest {
+    private static final long START = 1700000000000000000L;
+    private static final long PERIOD = 5000000L;
+
+    @Test
+    public void keepsNaNAxesAndSpecialValues() {
+        float[][] samples = {
+                {1.5f, Float.NaN, Float.NaN},
+                {Float.NaN, 2f, Float.NaN},
+                {Float.intBitsToFloat(0x7fc00001), Float.NaN, -0f},
+                {-0f, 0f, Float.POSITIVE_INFINITY},
+                {Float.MIN_VALUE, -Float.MAX_VALUE, Float.NEGATIVE_INFINITY},
+                {Float.NaN, Float.NaN, Float.NaN},
+                {-1.5f, Float.NaN, 3f},
+        };
+        long[] timestamps = new long[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            timestamps[i] = START + i * PERIOD;
+        }
+        roundTrip(3, timestamps, samples);
+    }
+
+    @Test
+    public void missingAxesDecodeAsNaN() {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder(1, 64);
+        encoder.add(START, 1013.25f, 7f, 8f);
+        encoder.add(START + PERIOD, 1013.5f, 7f, 8f);
+        GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(1);
+        decoder.reset(encoder.toByteArray(), encoder.getCount(), encoder.getFirstTimestamp());
+        assertTrue(decoder.next());
+        assertTrue(decoder.next());
+        assertEquals(1013.5f, decoder.getX(), 0f);
+        assertTrue(Float.isNaN(decoder.getY()));
+        assertTrue(Float.isNaN(decoder.getZ()));
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void equalValuesAndRegularTimestampsCostABitEach() {
+        int count = 1000;
+        long[] timestamps = new long[count];
+        float[][] samples = new float[count][];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = START + i * PERIOD;
+            samples[i] = new float[]{0.25f, -9.81f, Float.NaN};
+        }
+        GorillaCodec.Encoder encoder = roundTrip(3, timestamps, samples);
+        // After the first two samples: one bit for the timestamp and one per axis
+        int bits = 2 * (64 + 3 * 32) + (count - 2) * 4;
+        assertTrue(encoder.getByteLength() <= (bits + 7) / 8);
+    }
+
+    @Test
+    public void usesEveryDeltaOfDeltaBucket() {
+        // Changes in the gap at each bucket's edges, from one bit up to the raw 64-bit form
+        long[] deltaOfDeltas = {
+                0, 1, -1, 2047, -2048, 2048, -2049,
+                (1L << 19) - 1, -(1L << 19), 1L << 19,
+                (1L << 27) - 1, -(1L << 27), 1L << 27,
+                (1L << 35) - 1, -(1L << 35), 1L << 35,
+                // An hour's pause, then back to the regular rate
+                3600L * 1000000000L, -3600L * 1000000000L,
+                // Two days each way
+                2 * 86400L * 1000000000L, -2 * 86400L * 1000000000L,
+        };
+        long[] timestamps = new long[deltaOfDeltas.length + 2];
+        float[][] samples = new float[timestamps.length][];
+        long timestamp = START;
+        long delta = 1000000000L;
+        timestamps[0] = timestamp;
+        timestamps[1] = timestamp += delta;
+        for (int i = 0; i < deltaOfDeltas.length; i++) {
+            delta += deltaOfDeltas[i];
+            assertTrue(delta > 0);
+            timestamps[i + 2] = timestamp += delta;
+        }
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new float[]{i, Float.NaN, Float.NaN};
+        }
+        roundTrip(1, timestamps, samples);
+    }
+
+    @Test
+    public void negativeDeltasOfTimestampsAndValues() {
+        // Gaps that shrink from long to short, and values that fall, flip sign and jump
+        long[] timestamps = {START, START + 10 * PERIOD, START + 11 * PERIOD, START + 11 * PERIOD + 1,
+                START + 12 * PERIOD, START + 20 * PERIOD, START + 20 * PERIOD + 7};
+        float[][] samples = {
+                {100f, 5f, -5f},
+                {50f, -5f, 5f},
+                {-50f, 4.999f, -4.999f},
+                {-1e30f, 0f, 1e-30f},
+                {1e30f, -0f, -1e-30f},
+                {-3f, 3f, -3f},
+                {-3.0000002f, 3f, -2.9999998f},
+        };
+        roundTrip(3, timestamps, samples);
+    }
+
+    @Test
+    public void randomWalkRoundTrips() {
+        Random random = new Random(5);
+        int count = 5000;
+        long[] timestamps = new long[count];
+        float[][] samples = new float[count][];
+        long timestamp = START;
+        float x = 0;
+        for (int i = 0; i < count; i++) {
+            timestamp += PERIOD + random.nextInt(200000) - 100000;
+            timestamps[i] = timestamp;
+            x += (float) random.nextGaussian();
+            samples[i] = new float[]{x, (float) random.nextGaussian(), random.nextInt(4) == 0 ? x : 9.81f};
+        }
+        roundTrip(3, timestamps, samples);
+    }
+
+    @Test
+    public void encoderStartsEachBlockFresh() {
+        long[] timestamps = {START, START + PERIOD, START + 3 * PERIOD};
+        float[][] samples = {{1, 2, 3}, {1, 2.5f, Float.NaN}, {-1, 2.5f, 4}};
+        // A small initial buffer, so the first block also has to grow it
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder(3, 1);
+        for (int i = 0; i < 100; i++) {
+            encoder.add(START - 1000 * PERIOD + i * PERIOD + i * i, i, -i, i * 0.5f);
+        }
+        encoder.reset();
+        assertEquals(0, encoder.getCount());
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.add(timestamps[i], samples[i][0], samples[i][1], samples[i][2]);
+        }
+        GorillaCodec.Encoder fresh = roundTrip(3, timestamps, samples);
+        assertArrayEquals(fresh.toByteArray(), encoder.toByteArray());
+        assertEquals(START, encoder.getFirstTimestamp());
+        assertEquals(START + 3 * PERIOD, encoder.getLastTimestamp());
+    }
+
+    @Test
+    public void decoderStopsAtTheCountDespitePadding() {
+        // A single sample, and blocks ending mid-byte, must not read the padding as samples
+        for (int count = 1; count <= 9; count++) {
+            long[] timestamps = new long[count];
+            float[][] samples = new float[count][];
+            for (int i = 0; i < count; i++) {
+                timestamps[i] = START + i * PERIOD;
+                samples[i] = new float[]{i % 2, Float.NaN, Float.NaN};
+            }
+            roundTrip(1, timestamps, samples);
+        }
+    }
+
+    // Encodes the samples into one block, checks they decode unchanged and returns the encoder
+    private static GorillaCodec.Encoder roundTrip(int axisCount, long[] timestamps, float[][] samples) {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder(axisCount, 16);
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.add(timestamps[i], samples[i][0], samples[i][1], samples[i][2]);
+        }
+        assertEquals(timestamps.length, encoder.getCount());
+        assertEquals(timestamps[0], encoder.getFirstTimestamp());
+        assertEquals(timestamps[timestamps.length - 1], encoder.getLastTimestamp());
+
+        byte[] data = encoder.toByteArray();
+        assertEquals(encoder.getByteLength(), data.length);
+        GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(axisCount);
+        decoder.reset(Arrays.copyOf(data, data.length), encoder.getCount(), encoder.getFirstTimestamp());
+        for (int i = 0; i < timestamps.length; i++) {
+            assertTrue(decoder.next());
+            assertEquals("timestamp " + i, timestamps[i], decoder.getTimestamp());
+            float[] decoded = {decoder.getX(), decoder.getY(), decoder.getZ()};
+            for (int axis = 0; axis < 3; axis++) {
+                int expected = axis < axisCount ? Float.floatToRawIntBits(samples[i][axis])
+                        : Float.floatToRawIntBits(Float.NaN);
+                assertEquals("sample " + i + " axis " + axis, expected, Float.floatToRawIntBits(decoded[axis]));
+            }
+        }
+        assertFalse(decoder.next());
+        return encoder;
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.sensor_app;
+
+import com.github.mikephil.charting.data.Entry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test of the real pipeline on the host, with Robolectric providing SQLite and the file
+ * system. Four channels, two on each engine, are written in batches straight into
+ * {@link DatabaseHelper}, then generated by a {@link SyntheticSampleSource} in real time and
+ * handed to the writer as the service would, then exported and played back through a
+ * {@link ReplaySampleSource} as fast as possible. The chart loader and the query API are timed
+ * on what was written.
+ *
+ * The rate and length come from {@code -Pbenchmark.rateHz} (per channel, default 200) and
+ * {@code -Pbenchmark.seconds} (default 10).
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IngestLoadBenchmark {
+    private static final int[] CHANNELS = {SensorChannelRegistry.ACCELEROMETER, SensorChannelRegistry.GYROSCOPE,
+            SensorChannelRegistry.LIGHT, SensorChannelRegistry.PRESSURE};
+    private static final int BATCH_ROWS = 256;
+    private static final int QUERY_ROUNDS = 200;
+
+    private DatabaseHelper dbHelper;
+    private int rateHz;
+    private int seconds;
+
+    @Before
+    public void setUp() {
+        Benchmark.assumeEnabled();
+        rateHz = Integer.getInteger("benchmark.rateHz", 200);
+        seconds = Integer.getInteger("benchmark.seconds", 10);
+        dbHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+    }
+
+    @Test
+    public void ingestAndQuery() throws Exception {
+        // The batch phase fills the last few seconds, so the live sources carry on after it
+        long start = System.currentTimeMillis() * 1000000L - seconds * 1000000000L;
+        insertBatches(start);
+        long[] range = syntheticAtRate();
+        long end = replay(range[0], range[1]);
+        chart(start, end);
+        queries(start, end);
+        PipelineMetrics.getInstance().dump(new PrintWriter(System.out), dbHelper);
+    }
+
+    // Writes the stream in writer-sized batches on this thread, timing each commit
+    private void insertBatches(long startNanos) {
+        int samples = rateHz * seconds * CHANNELS.length;
+        long periodNanos = 1000000000L / rateHz;
+        SensorWriteBuffer batch = new SensorWriteBuffer(BATCH_ROWS);
+        long[] batchNanos = new long[(samples + BATCH_ROWS - 1) / BATCH_ROWS];
+        long sizeBefore = storedBytes();
+
+        long timestamp = startNanos;
+        int batches = 0;
+        long allocatedBefore = Benchmark.allocatedBytes();
+        long begin = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            int channel = CHANNELS[i % CHANNELS.length];
+            if (i % CHANNELS.length == 0) {
+                timestamp += periodNanos;
+            }
+            float phase = (float) (timestamp - startNanos) / 1e9f;
+            batch.add(channel, timestamp, (float) Math.sin(phase * (channel + 1)),
+                    (float) Math.cos(phase), 9.81f, 3);
+            if (batch.isFull() || i == samples - 1) {
+                long batchStart = System.nanoTime();
+                dbHelper.writeBatch(batch);
+                batchNanos[batches++] = System.nanoTime() - batchStart;
+                batch.clear();
+            }
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        long allocated = Benchmark.allocatedBytes() - allocatedBefore;
+        dbHelper.checkpointWal();
+        long bytes = storedBytes() - sizeBefore;
+
+        Arrays.sort(batchNanos, 0, batches);
+        double samplesPerSecond = samples / elapsed;
+        Benchmark.report(String.format(Locale.US,
+                "insert: %d samples, %.0f samples/s, batch p50 %.2f ms p99 %.2f ms, %.1f B allocated/sample,"
+                        + " %.1f stored B/sample",
+                samples, samplesPerSecond,
+                Benchmark.percentile(Arrays.copyOf(batchNanos, batches), 0.50) / 1e6,
+                Benchmark.percentile(Arrays.copyOf(batchNanos, batches), 0.99) / 1e6,
+                (double) allocated / samples, (double) bytes / samples));
+        Benchmark.checkFloor("insertSamplesPerSecond", samplesPerSecond);
+    }
+
+    // Runs a real-time synthetic source at the configured rate into a producer, as the sensor
+    // thread would, with the live chart series alongside; returns the range it covered
+    private long[] syntheticAtRate() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final SyntheticSampleSource source = new SyntheticSampleSource(new ExecutorSampleScheduler(executor));
+        final SensorWriter.Producer producer = dbHelper.newProducer();
+        final CircularEntryList liveEntries = new CircularEntryList(3000);
+        final long[] submitNanos = new long[rateHz * (seconds + 1) * CHANNELS.length];
+        final int[] received = new int[1];
+        final long begin = source.getTimeNanos();
+        long droppedBefore = dbHelper.getWriter().getDroppedCount();
+
+        source.setListener(new SampleSource.Listener() {
+            @Override
+            public void onSample(int channel, long timestamp, float[] values, int accuracy) {
+                long submitStart = System.nanoTime();
+                producer.submit(channel, timestamp, values, accuracy);
+                if (channel == CHANNELS[0]) {
+                    liveEntries.add((timestamp - begin) / 1e9f, values[0]);
+                }
+                if (received[0] < submitNanos.length) {
+                    submitNanos[received[0]] = System.nanoTime() - submitStart;
+                }
+                received[0]++;
+            }
+
+            @Override
+            public void onFlushCompleted(int channel) {
+                producer.publishPending();
+            }
+        });
+        runOn(executor, new Callable<Void>() {
+            @Override
+            public Void call() {
+                source.setSignal(CHANNELS[0], new SyntheticSampleSource.Signal(SyntheticSampleSource.Shape.BURST,
+                        9.81f, 4f, 2000));
+                source.setSignal(CHANNELS[1], new SyntheticSampleSource.Signal(SyntheticSampleSource.Shape.NOISE,
+                        0f, 0.05f, 1000));
+                source.setSignal(CHANNELS[2], new SyntheticSampleSource.Signal(SyntheticSampleSource.Shape.STEP,
+                        100f, 400f, 5000));
+                for (int channel : CHANNELS) {
+                    source.register(channel, 1000000 / rateHz, 0);
+                }
+                return null;
+            }
+        });
+        Thread.sleep(seconds * 1000L);
+        long end = runOn(executor, new Callable<Long>() {
+            @Override
+            public Long call() {
+                long now = source.getTimeNanos();
+                source.close();
+                return now;
+            }
+        });
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+
+        long flushStart = System.nanoTime();
+        dbHelper.getWriter().releaseProducer(producer);
+        double flushMs = (System.nanoTime() - flushStart) / 1e6;
+
+        long dropped = dbHelper.getWriter().getDroppedCount() - droppedBefore;
+        int measured = Math.min(received[0], submitNanos.length);
+        long[] sorted = Arrays.copyOf(submitNanos, measured);
+        Arrays.sort(sorted);
+        Benchmark.report(String.format(Locale.US,
+                "synthetic source at %d Hz x %d channels: %.0f samples/s sustained, submit p50 %.2f us"
+                        + " p99 %.2f us, final flush %.1f ms, %d dropped, %d live chart points",
+                rateHz, CHANNELS.length, received[0] / ((end - begin) / 1e9),
+                Benchmark.percentile(sorted, 0.50) / 1e3, Benchmark.percentile(sorted, 0.99) / 1e3,
+                flushMs, dropped, liveEntries.size()));
+        return new long[]{begin, end};
+    }
+
+    // Exports what the synthetic phase stored and plays it back as fast as the writer takes it
+    private long replay(long fromNanos, long toNanos) throws Exception {
+        File recording = new File(RuntimeEnvironment.getApplication().getCacheDir(), "replay.bin");
+        OutputStream out = new FileOutputStream(recording);
+        long rows;
+        try {
+            rows = new SensorExporter(dbHelper).export(CHANNELS, fromNanos - 1, toNanos,
+                    SensorExporter.Format.BINARY, out, null, null);
+        } finally {
+            out.close();
+        }
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final ReplaySampleSource source = new ReplaySampleSource(new ExecutorSampleScheduler(executor), recording,
+                false);
+        final SensorWriter.Producer producer = dbHelper.newProducer();
+        final long[] replayed = new long[1];
+        source.setListener(new SampleSource.Listener() {
+            @Override
+            public void onSample(int channel, long timestamp, float[] values, int accuracy) {
+                producer.submit(channel, timestamp, values, accuracy);
+                replayed[0]++;
+            }
+
+            @Override
+            public void onFlushCompleted(int channel) {
+                producer.publishPending();
+            }
+        });
+
+        long begin = System.nanoTime();
+        runOn(executor, new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (int channel : CHANNELS) {
+                    source.register(channel, 0, 0);
+                }
+                return null;
+            }
+        });
+        Callable<Boolean> finished = new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return source.isFinished();
+            }
+        };
+        while (!runOn(executor, finished)) {
+            Thread.sleep(1);
+        }
+        long end = runOn(executor, new Callable<Long>() {
+            @Override
+            public Long call() {
+                long now = source.getTimeNanos();
+                source.close();
+                return now;
+            }
+        });
+        executor.shutdown();
+        dbHelper.getWriter().releaseProducer(producer);
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        recording.delete();
+
+        assertTrue("replayed " + replayed[0] + " of " + rows + " exported rows", replayed[0] == rows);
+        Benchmark.report(String.format(Locale.US, "replay as fast as possible: %d samples, %.0f samples/s",
+                replayed[0], replayed[0] / elapsed));
+        Benchmark.checkFloor("replaySamplesPerSecond", replayed[0] / elapsed);
+        return end;
+    }
+
+    // Loads the whole run for a 1000 pixel chart, as the chart screen does
+    private void chart(long startNanos, long endNanos) throws Exception {
+        SensorChartLoader loader = new SensorChartLoader(RuntimeEnvironment.getApplication());
+        final int[] points = {-1};
+        long begin = System.nanoTime();
+        loader.load(CHANNELS[0], startNanos, endNanos, 1000, new SensorChartLoader.Listener() {
+            @Override
+            public void onEntries(List<Entry> entries, boolean complete) {
+                if (complete) {
+                    points[0] = entries.size();
+                }
+            }
+        });
+        while (points[0] < 0) {
+            Thread.sleep(1);
+            ShadowLooper.idleMainLooper();
+        }
+        Benchmark.report(String.format(Locale.US, "chart load of the whole run: %d points in %.1f ms",
+                points[0], (System.nanoTime() - begin) / 1e6));
+    }
+
+    private static <T> T runOn(ScheduledExecutorService executor, Callable<T> task) throws Exception {
+        return executor.submit(task).get();
+    }
+
+    private void queries(final long startNanos, final long endNanos) throws Exception {
+        final int sensor = CHANNELS[0];
+        final SensorWriteBuffer page = new SensorWriteBuffer(1000);
+        Benchmark.measure("query latest 1000", 5, QUERY_ROUNDS, 1, new Benchmark.Body() {
+            @Override
+            public void run(int operations) {
+                dbHelper.readLatest(sensor, endNanos, page);
+            }
+        });
+        Benchmark.measure("query range page of 1000", 5, QUERY_ROUNDS, 1, new Benchmark.Body() {
+            @Override
+            public void run(int operations) {
+                page.clear();
+                dbHelper.readRawRange(sensor, startNanos + (endNanos - startNanos) / 2, endNanos, page);
+            }
+        });
+        final SensorAggregate aggregate = new SensorAggregate();
+        Benchmark.measure("query aggregate whole run", 5, QUERY_ROUNDS, 1, new Benchmark.Body() {
+            @Override
+            public void run(int operations) {
+                dbHelper.aggregate(sensor, startNanos, endNanos, aggregate);
+            }
+        });
+        final long[] timestamps = new long[500];
+        final float[] values = new float[timestamps.length * DatabaseHelper.getAlignedColumnCount(CHANNELS)];
+        Benchmark.measure("query aligned join 4 x 500", 5, QUERY_ROUNDS, 1, new Benchmark.Body() {
+            @Override
+            public void run(int operations) {
+                dbHelper.readAligned(CHANNELS, startNanos, endNanos, (endNanos - startNanos) / timestamps.length,
+                        1000000000L, timestamps, values);
+            }
+        });
+    }
+
+    private long storedBytes() {
+        return dbHelper.getDatabaseSizeBytes() + dbHelper.getLogSizeBytes();
+    }
+}
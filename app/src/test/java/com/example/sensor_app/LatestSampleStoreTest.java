@@ -0,0 +1,111 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The {@link LatestSampleStore} seqlock: plain reads, a reader waiting out a write in progress,
+ * and one writer racing a reader without the reader ever seeing a torn sample.
+ */
+public class LatestSampleStoreTest {
+    private static final int CHANNELS = 3;
+
+    @Test
+    public void readsTheLatestSamplePerChannel() {
+        LatestSampleStore store = new LatestSampleStore(CHANNELS);
+        LatestSampleStore.Sample sample = new LatestSampleStore.Sample();
+        assertFalse(store.read(1, sample));
+        assertEquals(0, store.getSequence(1));
+
+        store.publish(1, 100, 1.5f, Float.NaN, -2f, 3);
+        store.publish(1, 200, 2.5f, -0f, Float.NEGATIVE_INFINITY, -1);
+        assertFalse(store.read(0, sample));
+        assertTrue(store.read(1, sample));
+        assertEquals(4, sample.sequence);
+        assertEquals(4, store.getSequence(1));
+        assertEquals(200, sample.timestamp);
+        assertEquals(2.5f, sample.x, 0f);
+        assertEquals(Float.floatToRawIntBits(-0f), Float.floatToRawIntBits(sample.y));
+        assertEquals(Float.NEGATIVE_INFINITY, sample.z, 0f);
+        assertEquals(-1, sample.accuracy);
+
+        store.publish(2, 300, Float.NaN, Float.NaN, Float.NaN, 0);
+        assertTrue(store.read(2, sample));
+        assertTrue(Float.isNaN(sample.x));
+        assertEquals(4, store.getSequence(1));
+    }
+
+    @Test(timeout = 10000)
+    public void readerWaitsForAWriteInProgress() throws Exception {
+        AtomicLongArray slots = new AtomicLongArray(CHANNELS * LatestSampleStore.SLOT_LONGS);
+        final LatestSampleStore store = new LatestSampleStore(slots);
+        store.publish(0, 100, 1, 2, 3, 3);
+
+        // Leave the sequence odd, as the writer does between its first and last store
+        int sequence = LatestSampleStore.SEQUENCE;
+        slots.set(sequence, slots.get(sequence) + 1);
+        final AtomicReference<LatestSampleStore.Sample> result = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LatestSampleStore.Sample sample = new LatestSampleStore.Sample();
+                store.read(0, sample);
+                result.set(sample);
+            }
+        });
+        reader.start();
+        reader.join(200);
+        assertTrue(reader.isAlive());
+        assertNull(result.get());
+
+        // Finishing the write lets the reader through
+        slots.set(sequence, slots.get(sequence) + 1);
+        reader.join();
+        assertEquals(4, result.get().sequence);
+        assertEquals(100, result.get().timestamp);
+        assertEquals(3f, result.get().z, 0f);
+    }
+
+    @Test(timeout = 60000)
+    public void readerNeverSeesATornSample() throws Exception {
+        final LatestSampleStore store = new LatestSampleStore(CHANNELS);
+        final int writes = 2000000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Every field is derived from the timestamp, so a mix of two writes shows
+                for (int i = 1; i <= writes; i++) {
+                    store.publish(1, i, i, -i, i * 2, i & 3);
+                }
+            }
+        });
+        writer.start();
+
+        LatestSampleStore.Sample sample = new LatestSampleStore.Sample();
+        long lastSequence = 0;
+        int reads = 0;
+        while (writer.isAlive() || lastSequence < 2L * writes) {
+            if (!store.read(1, sample)) {
+                continue;
+            }
+            reads++;
+            assertTrue(sample.sequence >= lastSequence);
+            assertEquals(sample.sequence, 2 * sample.timestamp);
+            assertEquals((float) sample.timestamp, sample.x, 0f);
+            assertEquals((float) -sample.timestamp, sample.y, 0f);
+            assertEquals((float) (sample.timestamp * 2), sample.z, 0f);
+            assertEquals(sample.timestamp & 3, sample.accuracy);
+            lastSequence = sample.sequence;
+        }
+        writer.join();
+        assertEquals(2L * writes, lastSequence);
+        assertTrue(reads > 0);
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.sensor_app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips through {@link LogSensorStore}: gaps and accuracy changes recorded in-stream,
+ * segment rollover, reopening, rolling back a failed batch and deleting whole segments.
+ * Robolectric provides {@code android.util.Log}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LogSensorStoreTest {
+    private static final int SENSOR = SensorChannelRegistry.ACCELEROMETER;
+    private static final int ONE_AXIS_SENSOR = SensorChannelRegistry.PRESSURE;
+    private static final long START = 1700000000000000000L;
+    private static final long PERIOD = 10000000L;
+    private static final long HOUR = 3600L * 1000000000L;
+    private static final int CHANNEL_COUNT = SensorChannelRegistry.getChannelCount();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("log-store").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void roundTripsSamplesInOrder() {
+        LogSensorStore store = new LogSensorStore(directory, CHANNEL_COUNT);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.append(SENSOR, START + i * PERIOD, i, -i, i * 0.5f, 3));
+        }
+        store.commit();
+
+        SensorWriteBuffer out = new SensorWriteBuffer(2000);
+        assertEquals(1000, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(START + i * PERIOD, out.getTimestamp(i));
+            assertEquals(i, out.getX(i), 0f);
+            assertEquals(-i, out.getY(i), 0f);
+            assertEquals(i * 0.5f, out.getZ(i), 0f);
+            assertEquals(3, out.getAccuracy(i));
+        }
+
+        // A range in the middle starts from the sparse index
+        out.clear();
+        assertEquals(100, store.readRange(SENSOR, START + 599 * PERIOD, START + 699 * PERIOD, out));
+        assertEquals(START + 600 * PERIOD, out.getTimestamp(0));
+        assertEquals(600, out.getX(0), 0f);
+        store.close();
+    }
+
+    @Test
+    public void dropsOutOfOrderSamples() {
+        LogSensorStore store = new LogSensorStore(directory, CHANNEL_COUNT);
+        assertTrue(store.append(SENSOR, START + PERIOD, 1, 1, 1, 3));
+        assertFalse(store.append(SENSOR, START + PERIOD, 2, 2, 2, 3));
+        assertFalse(store.append(SENSOR, START, 3, 3, 3, 3));
+        store.commit();
+
+        SensorWriteBuffer out = new SensorWriteBuffer(10);
+        assertEquals(1, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        store.close();
+    }
+
+    @Test
+    public void keepsLongGapsAndAccuracyChangesInOneSegment() {
+        LogSensorStore store = new LogSensorStore(directory, CHANNEL_COUNT);
+        long[] timestamps = new long[600];
+        long timestamp = START;
+        for (int i = 0; i < timestamps.length; i++) {
+            // Every third sample comes after an hour's pause, like an idle on-change sensor
+            timestamp += i % 3 == 0 ? HOUR + 123 : PERIOD;
+            timestamps[i] = timestamp;
+            assertTrue(store.append(ONE_AXIS_SENSOR, timestamp, i, Float.NaN, Float.NaN, i / 7 % 4));
+        }
+        store.commit();
+
+        File[] segments = new File(directory, SensorChannelRegistry.getChannel(ONE_AXIS_SENSOR).getTableName())
+                .listFiles();
+        assertEquals(1, segments.length);
+
+        SensorWriteBuffer out = new SensorWriteBuffer(1000);
+        assertEquals(timestamps.length, store.readRange(ONE_AXIS_SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(timestamps[i], out.getTimestamp(i));
+            assertEquals(i, out.getX(i), 0f);
+            assertTrue(Float.isNaN(out.getY(i)));
+            assertEquals(i / 7 % 4, out.getAccuracy(i));
+        }
+
+        // Starting past index points that fall on gap and accuracy records
+        out.clear();
+        assertEquals(200, store.readRange(ONE_AXIS_SENSOR, timestamps[399], Long.MAX_VALUE, out));
+        assertEquals(timestamps[400], out.getTimestamp(0));
+        assertEquals(400 / 7 % 4, out.getAccuracy(0));
+        store.close();
+    }
+
+    @Test
+    public void rollsOverAndReopens() {
+        // 16-byte records, so about a hundred per segment
+        LogSensorStore store = new LogSensorStore(directory, CHANNEL_COUNT, 1600);
+        for (int i = 0; i < 1000; i++) {
+            store.append(SENSOR, START + i * PERIOD, i, 0, 0, 3);
+        }
+        store.close();
+        File channelDirectory = new File(directory, SensorChannelRegistry.getChannel(SENSOR).getTableName());
+        int segmentCount = channelDirectory.listFiles().length;
+        assertTrue(segmentCount >= 10);
+
+        // A new instance reads the files back and carries on after the newest record
+        store = new LogSensorStore(directory, CHANNEL_COUNT, 1600);
+        assertEquals(START, store.getFirstTimestamp(SENSOR));
+        assertFalse(store.append(SENSOR, START + 999 * PERIOD, 0, 0, 0, 3));
+        assertTrue(store.append(SENSOR, START + 1000 * PERIOD, 1000, 0, 0, 3));
+        store.commit();
+
+        SensorWriteBuffer out = new SensorWriteBuffer(2000);
+        assertEquals(1001, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        for (int i = 0; i <= 1000; i++) {
+            assertEquals(START + i * PERIOD, out.getTimestamp(i));
+            assertEquals(i, out.getX(i), 0f);
+        }
+        store.close();
+    }
+
+    @Test
+    public void deletesWholeSegmentsBeforeTheCutoff() {
+        LogSensorStore store = new LogSensorStore(directory, CHANNEL_COUNT, 1600);
+        for (int i = 0; i < 1000; i++) {
+            store.append(SENSOR, START + i * PERIOD, i, 0, 0, 3);
+        }
+        store.commit();
+
+        long cutoff = START + 500 * PERIOD;
+        int deleted = 0;
+        int rows;
+        do {
+            rows = store.deleteBefore(SENSOR, cutoff, 100);
+            deleted += rows;
+        } while (rows >= 100);
+        assertTrue(deleted > 0);
+
+        // Nothing at or after the cutoff is gone, and the segment holding it is kept
+        long first = store.getFirstTimestamp(SENSOR);
+        assertTrue(first <= cutoff);
+        assertTrue(first > cutoff - 100 * PERIOD);
+        SensorWriteBuffer out = new SensorWriteBuffer(2000);
+        int remaining = store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out);
+        assertEquals(first, out.getTimestamp(0));
+        assertEquals(START + 999 * PERIOD, out.getTimestamp(remaining - 1));
+        assertEquals(1000 - (first - START) / PERIOD, remaining);
+        store.close();
+    }
+
+    @Test
+    public void rollbackDiscardsRowsSinceTheLastCommit() {
+        LogSensorStore store = new LogSensorStore(directory, CHANNEL_COUNT, 1600);
+        for (int i = 0; i < 150; i++) {
+            store.append(SENSOR, START + i * PERIOD, i, 0, 0, 3);
+        }
+        store.commit();
+        File channelDirectory = new File(directory, SensorChannelRegistry.getChannel(SENSOR).getTableName());
+        int committedSegments = channelDirectory.listFiles().length;
+
+        // A failed batch long enough to roll over into new segments
+        for (int i = 150; i < 500; i++) {
+            store.append(SENSOR, START + i * PERIOD, -1, 0, 0, i < 300 ? 3 : 2);
+        }
+        store.rollback();
+        assertEquals(committedSegments, channelDirectory.listFiles().length);
+
+        // The same timestamps are accepted again, as if the failed batch never happened
+        for (int i = 150; i < 200; i++) {
+            assertTrue(store.append(SENSOR, START + i * PERIOD, i, 0, 0, 3));
+        }
+        store.commit();
+        SensorWriteBuffer out = new SensorWriteBuffer(1000);
+        assertEquals(200, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        for (int i = 0; i < 200; i++) {
+            assertEquals(START + i * PERIOD, out.getTimestamp(i));
+            assertEquals(i, out.getX(i), 0f);
+            assertEquals(3, out.getAccuracy(i));
+        }
+        store.close();
+
+        // The truncated files read back the same after a restart
+        store = new LogSensorStore(directory, CHANNEL_COUNT, 1600);
+        out.clear();
+        assertEquals(200, store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out));
+        assertEquals(199, out.getX(199), 0f);
+        store.close();
+    }
+
+    @Test
+    public void rollbackAfterDeletingSegmentsDiscardsTheFailedBatch() {
+        LogSensorStore store = new LogSensorStore(directory, CHANNEL_COUNT, 1600);
+        for (int i = 0; i < 700; i++) {
+            store.append(SENSOR, START + i * PERIOD, i, 0, 0, 3);
+        }
+        store.commit();
+        File channelDirectory = new File(directory, SensorChannelRegistry.getChannel(SENSOR).getTableName());
+        assertTrue(store.deleteBefore(SENSOR, START + 400 * PERIOD, 10000) > 0);
+        int committedSegments = channelDirectory.listFiles().length;
+        long first = store.getFirstTimestamp(SENSOR);
+
+        // A failed batch that rolls over into new segments after retention shrank the list
+        for (int i = 700; i < 1000; i++) {
+            store.append(SENSOR, START + i * PERIOD, -1, 0, 0, 3);
+        }
+        store.rollback();
+        assertEquals(committedSegments, channelDirectory.listFiles().length);
+
+        for (int i = 700; i < 750; i++) {
+            assertTrue(store.append(SENSOR, START + i * PERIOD, i, 0, 0, 3));
+        }
+        store.commit();
+        SensorWriteBuffer out = new SensorWriteBuffer(2000);
+        int count = store.readRange(SENSOR, Long.MIN_VALUE, Long.MAX_VALUE, out);
+        assertEquals(750 - (first - START) / PERIOD, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(first + i * PERIOD, out.getTimestamp(i));
+            assertEquals((first - START) / PERIOD + i, out.getX(i), 0f);
+        }
+        store.close();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link OrientationFilter} with synthetic readings: a device held still, turning on the
+ * gyroscope alone, and gyroscope samples waiting for the accelerometer.
+ */
+public class OrientationFilterTest {
+    private static final double GRAVITY = 9.80665;
+    private static final long START = 1700000000000000000L;
+    // 100 Hz
+    private static final long PERIOD = 10000000L;
+
+    // Every fused sample, copied out of the filter's reused arrays
+    private static class Recorder implements OrientationFilter.Listener {
+        final List<Long> timestamps = new ArrayList<>();
+        final List<float[]> orientations = new ArrayList<>();
+        final List<float[]> linearAccelerations = new ArrayList<>();
+
+        @Override
+        public void onFused(long timestamp, float[] orientation, float[] linearAcceleration) {
+            timestamps.add(timestamp);
+            orientations.add(orientation.clone());
+            linearAccelerations.add(linearAcceleration.clone());
+        }
+
+        float[] lastOrientation() {
+            return orientations.get(orientations.size() - 1);
+        }
+
+        float[] lastLinearAcceleration() {
+            return linearAccelerations.get(linearAccelerations.size() - 1);
+        }
+    }
+
+    @Test
+    public void stillDeviceStartsAtItsTilt() {
+        Recorder recorder = new Recorder();
+        OrientationFilter filter = new OrientationFilter(0.1f, 64, recorder);
+        float[] gravity = gravityAt(30, -20);
+        for (int i = 0; i < 200; i++) {
+            long timestamp = START + i * PERIOD;
+            filter.onAccelerometer(timestamp, gravity[0], gravity[1], gravity[2]);
+            filter.onGyroscope(timestamp + PERIOD / 2, 0, 0, 0);
+        }
+
+        assertEquals(198, recorder.timestamps.size());
+        // Right from the first fused sample, as the first reading sets the tilt. The normalised
+        // correction step never quite stops, so allow a couple of beta * dt either way.
+        for (int i = 0; i < recorder.orientations.size(); i++) {
+            assertEquals(30, recorder.orientations.get(i)[0], 0.2f);
+            assertEquals(-20, recorder.orientations.get(i)[1], 0.2f);
+            assertEquals(0, recorder.orientations.get(i)[2], 0.2f);
+        }
+        for (float value : recorder.lastLinearAcceleration()) {
+            assertEquals(0, value, 0.05f);
+        }
+    }
+
+    @Test
+    public void convergesToANewTiltWhileStill() {
+        Recorder recorder = new Recorder();
+        OrientationFilter filter = new OrientationFilter(0.5f, 64, recorder);
+        float[] flat = gravityAt(0, 0);
+        filter.onAccelerometer(START, flat[0], flat[1], flat[2]);
+        // Then held at a tilt the gyroscope never saw happen, so only the correction gets there
+        float[] tilted = gravityAt(-25, 15);
+        for (int i = 1; i < 1000; i++) {
+            long timestamp = START + i * PERIOD;
+            filter.onAccelerometer(timestamp, tilted[0], tilted[1], tilted[2]);
+            filter.onGyroscope(timestamp + PERIOD / 2, 0, 0, 0);
+        }
+
+        float[] orientation = recorder.lastOrientation();
+        assertEquals(-25, orientation[0], 0.5f);
+        assertEquals(15, orientation[1], 0.5f);
+        for (float value : recorder.lastLinearAcceleration()) {
+            assertEquals(0, value, 0.1f);
+        }
+    }
+
+    @Test
+    public void integratesTheGyroscopeAloneWithoutLinearAcceleration() {
+        Recorder recorder = new Recorder();
+        OrientationFilter filter = new OrientationFilter(0.1f, 256, recorder);
+        float[] flat = gravityAt(0, 0);
+        filter.onAccelerometer(START, flat[0], flat[1], flat[2]);
+        // A second of turning at 90 degrees per second, long after the only accelerometer reading
+        float rate = (float) Math.toRadians(90);
+        long gyroStart = START + 1000000000L;
+        for (int i = 0; i <= 100; i++) {
+            filter.onGyroscope(gyroStart + i * PERIOD, 0, 0, rate);
+        }
+        filter.flush();
+
+        // The first sample only starts the integration
+        assertEquals(100, recorder.timestamps.size());
+        assertEquals(90, recorder.lastOrientation()[2], 0.5f);
+        assertEquals(0, recorder.lastOrientation()[0], 0.01f);
+        assertEquals(0, recorder.lastOrientation()[1], 0.01f);
+        for (float[] linearAcceleration : recorder.linearAccelerations) {
+            for (float value : linearAcceleration) {
+                assertTrue(Float.isNaN(value));
+            }
+        }
+    }
+
+    @Test
+    public void gyroscopeWaitsForTheAccelerometerOrAFlush() {
+        Recorder recorder = new Recorder();
+        OrientationFilter filter = new OrientationFilter(0.1f, 64, recorder);
+        float[] flat = gravityAt(0, 0);
+        filter.onAccelerometer(START, flat[0], flat[1], flat[2]);
+        // A gyroscope batch running ahead of the accelerometer
+        for (int i = 1; i <= 10; i++) {
+            filter.onGyroscope(START + i * PERIOD, 0, 0, 0);
+        }
+        assertEquals(0, recorder.timestamps.size());
+
+        // The accelerometer catching up releases the samples it covers, corrected and in order
+        filter.onAccelerometer(START + 5 * PERIOD, flat[0], flat[1], flat[2]);
+        assertEquals(4, recorder.timestamps.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(START + (i + 2) * PERIOD, (long) recorder.timestamps.get(i));
+            assertEquals(0, recorder.linearAccelerations.get(i)[2], 0.01f);
+        }
+
+        // A flush fuses the rest without waiting; they are still close enough to be corrected
+        filter.flush();
+        assertEquals(9, recorder.timestamps.size());
+        assertEquals(START + 10 * PERIOD, (long) recorder.timestamps.get(8));
+        assertEquals(0, recorder.lastLinearAcceleration()[2], 0.01f);
+        filter.flush();
+        assertEquals(9, recorder.timestamps.size());
+    }
+
+    @Test
+    public void fullRingFusesTheOldestSample() {
+        Recorder recorder = new Recorder();
+        OrientationFilter filter = new OrientationFilter(0.1f, 4, recorder);
+        float[] flat = gravityAt(0, 0);
+        filter.onAccelerometer(START, flat[0], flat[1], flat[2]);
+        for (int i = 1; i <= 10; i++) {
+            filter.onGyroscope(START + i * PERIOD, 0, 0, 0);
+        }
+        // Six pushed out of a ring of four, the first of which only starts the integration
+        assertEquals(5, recorder.timestamps.size());
+        assertEquals(START + 2 * PERIOD, (long) recorder.timestamps.get(0));
+        assertEquals(START + 6 * PERIOD, (long) recorder.timestamps.get(4));
+
+        filter.flush();
+        assertEquals(9, recorder.timestamps.size());
+        for (int i = 1; i < recorder.timestamps.size(); i++) {
+            assertTrue(recorder.timestamps.get(i) > recorder.timestamps.get(i - 1));
+        }
+        // Samples at or before the newest one seen are ignored
+        filter.onGyroscope(START + 10 * PERIOD, 0, 0, 0);
+        filter.onGyroscope(START + 3 * PERIOD, 0, 0, 0);
+        filter.flush();
+        assertEquals(9, recorder.timestamps.size());
+    }
+
+    @Test
+    public void longGapRestartsIntegration() {
+        Recorder recorder = new Recorder();
+        OrientationFilter filter = new OrientationFilter(0.1f, 64, recorder);
+        float[] flat = gravityAt(0, 0);
+        filter.onAccelerometer(START, flat[0], flat[1], flat[2]);
+        float rate = (float) Math.toRadians(90);
+        filter.onGyroscope(START + PERIOD, 0, 0, rate);
+        // Three seconds later: integrating across the gap would add 270 degrees of yaw
+        filter.onGyroscope(START + PERIOD + 3000000000L, 0, 0, rate);
+        filter.onGyroscope(START + 2 * PERIOD + 3000000000L, 0, 0, rate);
+        filter.flush();
+
+        assertEquals(1, recorder.timestamps.size());
+        assertEquals(0.9f, recorder.lastOrientation()[2], 0.05f);
+    }
+
+    // Accelerometer reading at rest at the given roll and pitch, in degrees
+    private static float[] gravityAt(double rollDegrees, double pitchDegrees) {
+        double roll = Math.toRadians(rollDegrees);
+        double pitch = Math.toRadians(pitchDegrees);
+        return new float[]{
+                (float) (-GRAVITY * Math.sin(pitch)),
+                (float) (GRAVITY * Math.cos(pitch) * Math.sin(roll)),
+                (float) (GRAVITY * Math.cos(pitch) * Math.cos(roll)),
+        };
+    }
+}
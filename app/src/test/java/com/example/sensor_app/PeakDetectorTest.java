@@ -0,0 +1,74 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * {@link PeakDetector} counting pulses in a noisy signal, and merging pulses that come closer
+ * together than the refractory time.
+ */
+public class PeakDetectorTest {
+    // 50 Hz
+    private static final long PERIOD = 20000000L;
+
+    @Test
+    public void countsPulsesInNoise() {
+        PeakDetector detector = new PeakDetector(2.5f, 1f, 250);
+        Random random = new Random(3);
+        int peaks = 0;
+        long lastPeak = 0;
+        // Ten seconds with a step-like pulse up to 4 once a second, on noise of 0.05
+        for (int i = 0; i < 500; i++) {
+            long timestamp = i * PERIOD;
+            float value = 9.8f + (float) random.nextGaussian() * 0.05f + pulse(i % 50 - 25);
+            if (detector.onSample(timestamp, value)) {
+                peaks++;
+                assertEquals(9.8f + 4, detector.getPeakValue(), 0.2f);
+                // The peak is dated at its highest sample, not where it was confirmed
+                assertEquals(25, (detector.getPeakTimestamp() / PERIOD) % 50);
+                lastPeak = detector.getPeakTimestamp();
+            }
+        }
+        assertEquals(10, peaks);
+        assertEquals(475 * PERIOD, lastPeak);
+    }
+
+    @Test
+    public void pulsesWithinTheRefractoryTimeCountOnce() {
+        PeakDetector detector = new PeakDetector(2.5f, 1f, 250);
+        int peaks = 0;
+        // Pairs of pulses 100 ms apart, a second between pairs
+        for (int i = 0; i < 500; i++) {
+            int phase = i % 50;
+            float value = 9.8f + pulse(phase - 10) + pulse(phase - 15);
+            if (detector.onSample(i * PERIOD, value)) {
+                peaks++;
+            }
+        }
+        assertEquals(10, peaks);
+    }
+
+    @Test
+    public void flatSignalHasNoPeaks() {
+        PeakDetector detector = new PeakDetector(2.5f, 1f, 250);
+        for (int i = 0; i < 500; i++) {
+            assertFalse(detector.onSample(i * PERIOD, i % 2 == 0 ? 9.7f : 9.9f));
+        }
+    }
+
+    // A triangle three samples wide, peaking at 4 where offset is 0
+    private static float pulse(int offset) {
+        switch (Math.abs(offset)) {
+            case 0:
+                return 4;
+            case 1:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.sensor_app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link ReplaySampleSource} as fast as possible over a small recording written by
+ * {@link SensorExporter}'s binary writer, driven through an {@link ExecutorSampleScheduler}:
+ * channels merged in time order with their exact values, and a channel joining the replay in
+ * progress.
+ */
+public class ReplaySampleSourceTest {
+    private static final int MOTION = SensorChannelRegistry.ACCELEROMETER;
+    private static final int LIGHT = SensorChannelRegistry.LIGHT;
+    private static final long RECORDED_START = 1600000000000000000L;
+    private static final long MS = 1000000L;
+    // 300 accelerometer samples every 20 ms in chunks of 100, and 120 light samples every 50 ms
+    // starting 5 ms in
+    private static final int MOTION_COUNT = 300;
+    private static final int LIGHT_COUNT = 120;
+
+    private ScheduledExecutorService executor;
+    private File recording;
+
+    // Every delivered sample; counts down once the expected number has arrived
+    private static class Recorder implements SampleSource.Listener {
+        final CountDownLatch done;
+        final List<Integer> channels = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+        final List<float[]> values = new ArrayList<>();
+        final List<Integer> accuracies = new ArrayList<>();
+
+        Recorder(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onSample(int channel, long timestamp, float[] values, int accuracy) {
+            channels.add(channel);
+            timestamps.add(timestamp);
+            this.values.add(values.clone());
+            accuracies.add(accuracy);
+            done.countDown();
+        }
+
+        @Override
+        public void onFlushCompleted(int channel) {
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        recording = File.createTempFile("replay", ".bin");
+        writeRecording(recording);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        recording.delete();
+    }
+
+    @Test
+    public void replaysTheRecordingMergedInTimeOrder() throws Exception {
+        final ReplaySampleSource source = newSource();
+        final Recorder recorder = new Recorder(MOTION_COUNT + LIGHT_COUNT);
+        // The virtual clock starts at construction, and playback starts at it
+        final long start = runOn(new Callable<Long>() {
+            @Override
+            public Long call() {
+                assertTrue(source.isAvailable(MOTION));
+                assertTrue(source.isAvailable(LIGHT));
+                assertFalse(source.isAvailable(SensorChannelRegistry.GYROSCOPE));
+                assertFalse(source.register(SensorChannelRegistry.GYROSCOPE, 10000, 0));
+                source.setListener(recorder);
+                long now = source.getTimeNanos();
+                source.register(MOTION, 20000, 0);
+                source.register(LIGHT, 50000, 0);
+                return now;
+            }
+        });
+        recorder.await();
+
+        int motion = 0;
+        int light = 0;
+        for (int i = 0; i < recorder.timestamps.size(); i++) {
+            long recorded;
+            if (recorder.channels.get(i) == MOTION) {
+                recorded = motionTimestamp(motion);
+                assertMotion(recorder, i, motion++);
+            } else {
+                recorded = lightTimestamp(light);
+                assertLight(recorder, i, light++);
+            }
+            // Shifted so the recording starts where the clock was
+            assertEquals(start + recorded - RECORDED_START, (long) recorder.timestamps.get(i));
+            if (i > 0) {
+                assertTrue(recorder.timestamps.get(i) > recorder.timestamps.get(i - 1));
+            }
+        }
+        assertEquals(MOTION_COUNT, motion);
+        assertEquals(LIGHT_COUNT, light);
+
+        // Without real time the clock follows the samples
+        long clock = runOn(new Callable<Long>() {
+            @Override
+            public Long call() {
+                assertTrue(source.isFinished());
+                long now = source.getTimeNanos();
+                source.close();
+                return now;
+            }
+        });
+        assertEquals(start + motionTimestamp(MOTION_COUNT - 1) - RECORDED_START, clock);
+    }
+
+    @Test
+    public void channelJoiningInProgressStartsFromNow() throws Exception {
+        final ReplaySampleSource source = newSource();
+        // Light joins after 2 s of motion, so its first 40 samples have already gone by
+        final Recorder recorder = new Recorder(MOTION_COUNT + LIGHT_COUNT - 40) {
+            @Override
+            public void onSample(int channel, long timestamp, float[] values, int accuracy) {
+                super.onSample(channel, timestamp, values, accuracy);
+                if (channels.size() == 100) {
+                    assertTrue(source.register(LIGHT, 50000, 0));
+                }
+            }
+        };
+        final long start = runOn(new Callable<Long>() {
+            @Override
+            public Long call() {
+                source.setListener(recorder);
+                long now = source.getTimeNanos();
+                source.register(MOTION, 20000, 0);
+                return now;
+            }
+        });
+        recorder.await();
+
+        int motion = 0;
+        int light = 40;
+        for (int i = 0; i < recorder.timestamps.size(); i++) {
+            if (recorder.channels.get(i) == MOTION) {
+                assertEquals(start + motionTimestamp(motion) - RECORDED_START, (long) recorder.timestamps.get(i));
+                assertMotion(recorder, i, motion++);
+            } else {
+                assertTrue(i >= 100);
+                assertEquals(start + lightTimestamp(light) - RECORDED_START, (long) recorder.timestamps.get(i));
+                assertLight(recorder, i, light++);
+            }
+        }
+        assertEquals(MOTION_COUNT, motion);
+        assertEquals(LIGHT_COUNT, light);
+        runOn(new Callable<Void>() {
+            @Override
+            public Void call() {
+                source.close();
+                return null;
+            }
+        });
+    }
+
+    private static void assertMotion(Recorder recorder, int i, int sample) {
+        assertEquals(sample, recorder.values.get(i)[0], 0f);
+        assertEquals(-sample, recorder.values.get(i)[1], 0f);
+        assertEquals(sample * 0.5f, recorder.values.get(i)[2], 0f);
+        assertEquals(sample % 4, (int) recorder.accuracies.get(i));
+    }
+
+    private static void assertLight(Recorder recorder, int i, int sample) {
+        assertEquals(sample * 10f, recorder.values.get(i)[0], 0f);
+        assertTrue(Float.isNaN(recorder.values.get(i)[1]));
+        assertTrue(Float.isNaN(recorder.values.get(i)[2]));
+        assertEquals(2, (int) recorder.accuracies.get(i));
+    }
+
+    private static long motionTimestamp(int sample) {
+        return RECORDED_START + sample * 20 * MS;
+    }
+
+    private static long lightTimestamp(int sample) {
+        return RECORDED_START + 5 * MS + sample * 50 * MS;
+    }
+
+    // Channels one after another, as the exporter writes them
+    private static void writeRecording(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            SensorExporter.writeBinaryHeader(out, new int[]{MOTION, LIGHT});
+            SensorWriteBuffer page = new SensorWriteBuffer(100);
+            for (int i = 0; i < MOTION_COUNT; i++) {
+                page.add(MOTION, motionTimestamp(i), i, -i, i * 0.5f, i % 4);
+                if (page.isFull()) {
+                    SensorExporter.writeBinaryChunk(out, MOTION, page);
+                    page.clear();
+                }
+            }
+            page = new SensorWriteBuffer(LIGHT_COUNT);
+            for (int i = 0; i < LIGHT_COUNT; i++) {
+                page.add(LIGHT, lightTimestamp(i), i * 10f, Float.NaN, Float.NaN, 2);
+            }
+            SensorExporter.writeBinaryChunk(out, LIGHT, page);
+            SensorExporter.writeBinaryEnd(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private ReplaySampleSource newSource() throws IOException {
+        return new ReplaySampleSource(new ExecutorSampleScheduler(executor), recording, false);
+    }
+
+    // The source is only safe on the executor's thread
+    private <T> T runOn(Callable<T> task) throws Exception {
+        return executor.submit(task).get(10, TimeUnit.SECONDS);
+    }
+}
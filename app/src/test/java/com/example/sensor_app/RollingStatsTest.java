@@ -0,0 +1,87 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RollingStats} against a straightforward two-pass calculation over the same values.
+ */
+public class RollingStatsTest {
+    @Test
+    public void matchesTwoPassMeanAndVariance() {
+        // A large offset with small spread, where a one-pass sum of squares loses the variance
+        Random random = new Random(11);
+        float[] values = new float[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 10000f + (float) random.nextGaussian() * 0.5f;
+        }
+        RollingStats stats = new RollingStats();
+        for (float value : values) {
+            stats.add(value);
+        }
+
+        double sum = 0;
+        double sumOfSquares = 0;
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (float value : values) {
+            sum += value;
+            sumOfSquares += (double) value * value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double mean = sum / values.length;
+        double squaredDifferences = 0;
+        for (float value : values) {
+            squaredDifferences += (value - mean) * (value - mean);
+        }
+        double variance = squaredDifferences / values.length;
+
+        assertEquals(values.length, stats.getCount());
+        assertEquals(mean, stats.getMean(), 1e-9);
+        assertEquals(variance, stats.getVariance(), variance * 1e-9);
+        assertEquals(Math.sqrt(variance), stats.getStdDev(), 1e-9);
+        assertEquals(min, stats.getMin(), 0f);
+        assertEquals(max, stats.getMax(), 0f);
+        assertEquals(Math.sqrt(sumOfSquares / values.length), stats.getRms(), 1e-9);
+    }
+
+    @Test
+    public void smallKnownWindow() {
+        RollingStats stats = new RollingStats();
+        for (float value : new float[]{2, 4, 4, 4, 5, 5, 7, 9}) {
+            stats.add(value);
+        }
+        // The textbook example: mean 5, population standard deviation 2
+        assertEquals(5, stats.getMean(), 1e-12);
+        assertEquals(4, stats.getVariance(), 1e-12);
+        assertEquals(2, stats.getStdDev(), 1e-12);
+        assertEquals(Math.sqrt(29), stats.getRms(), 1e-12);
+    }
+
+    @Test
+    public void ignoresNaNAndStartsOverOnReset() {
+        RollingStats stats = new RollingStats();
+        assertTrue(Double.isNaN(stats.getMean()));
+        assertTrue(Float.isNaN(stats.getMin()));
+
+        stats.add(1);
+        stats.add(Float.NaN);
+        stats.add(3);
+        assertEquals(2, stats.getCount());
+        assertEquals(2, stats.getMean(), 0);
+
+        stats.reset();
+        assertEquals(0, stats.getCount());
+        assertTrue(Double.isNaN(stats.getVariance()));
+        stats.add(-4);
+        assertEquals(-4, stats.getMean(), 0);
+        assertEquals(0, stats.getVariance(), 0);
+        assertEquals(-4, stats.getMin(), 0f);
+        assertEquals(-4, stats.getMax(), 0f);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SampleRingBuffer}: wrapping around its arrays, each backpressure policy when full, and
+ * a producer and consumer thread handing over samples concurrently.
+ */
+public class SampleRingBufferTest {
+    private static final int SENSOR = SensorChannelRegistry.ACCELEROMETER;
+
+    @Test
+    public void roundsCapacityUpToAPowerOfTwo() {
+        assertEquals(8, new SampleRingBuffer(SENSOR, 5, BackpressurePolicy.BLOCK).capacity());
+        assertEquals(8, new SampleRingBuffer(SENSOR, 8, BackpressurePolicy.BLOCK).capacity());
+        assertEquals(16, new SampleRingBuffer(SENSOR, 9, BackpressurePolicy.BLOCK).capacity());
+    }
+
+    @Test
+    public void keepsOrderAcrossWraparound() {
+        SampleRingBuffer ring = new SampleRingBuffer(SENSOR, 4, BackpressurePolicy.BLOCK);
+        SensorWriteBuffer batch = new SensorWriteBuffer(3);
+        long next = 0;
+        long expected = 0;
+        // Three in, up to three out, so the indices wrap many times at varying offsets
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(ring.offer(next, next, -next, 0.5f * next, (int) next & 3));
+                next++;
+            }
+            batch.clear();
+            int drained = ring.drainTo(batch);
+            assertEquals(3, drained);
+            for (int i = 0; i < drained; i++) {
+                assertEquals(SENSOR, batch.getSensor(i));
+                assertEquals(expected, batch.getTimestamp(i));
+                assertEquals((float) expected, batch.getX(i), 0f);
+                assertEquals((float) -expected, batch.getY(i), 0f);
+                assertEquals(0.5f * expected, batch.getZ(i), 0f);
+                assertEquals((int) expected & 3, batch.getAccuracy(i));
+                expected++;
+            }
+        }
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void drainsNoMoreThanTheBatchHasRoomFor() {
+        SampleRingBuffer ring = new SampleRingBuffer(SENSOR, 8, BackpressurePolicy.BLOCK);
+        for (int i = 0; i < 6; i++) {
+            ring.offer(i, i, 0, 0, 3);
+        }
+        SensorWriteBuffer batch = new SensorWriteBuffer(4);
+        batch.add(SENSOR, -1, 0, 0, 0, 3);
+        assertEquals(3, ring.drainTo(batch));
+        assertTrue(batch.isFull());
+        assertEquals(3, ring.size());
+        assertEquals(0, ring.drainTo(batch));
+
+        batch.clear();
+        assertEquals(3, ring.drainTo(batch));
+        assertEquals(3, batch.getTimestamp(0));
+        assertEquals(5, batch.getTimestamp(2));
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestWhenFull() {
+        SampleRingBuffer ring = new SampleRingBuffer(SENSOR, 4, BackpressurePolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ring.offer(i, i, 0, 0, 3));
+        }
+        assertEquals(6, ring.getDroppedCount());
+        assertEquals(4, ring.size());
+
+        SensorWriteBuffer batch = new SensorWriteBuffer(10);
+        assertEquals(4, ring.drainTo(batch));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(6 + i, batch.getTimestamp(i));
+        }
+    }
+
+    @Test
+    public void coalesceHoldsBackOnlyTheNewestWhileFull() {
+        SampleRingBuffer ring = new SampleRingBuffer(SENSOR, 4, BackpressurePolicy.COALESCE);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i, i, 0, 0, 3));
+        }
+        assertFalse(ring.offer(4, 4, 0, 0, 3));
+        assertFalse(ring.offer(5, 5, 0, 0, 3));
+        assertFalse(ring.offer(6, 6, 0, 0, 3));
+        assertEquals(2, ring.getCoalescedCount());
+
+        // Still full, so nothing is released yet
+        ring.publishPending();
+        assertEquals(4, ring.size());
+
+        SensorWriteBuffer batch = new SensorWriteBuffer(10);
+        assertEquals(4, ring.drainTo(batch));
+        ring.publishPending();
+        batch.clear();
+        assertEquals(1, ring.drainTo(batch));
+        assertEquals(6, batch.getTimestamp(0));
+        assertEquals(0, ring.getDroppedCount());
+    }
+
+    @Test(timeout = 60000)
+    public void blockHandsOverEverySampleInOrder() throws Exception {
+        final SampleRingBuffer ring = new SampleRingBuffer(SENSOR, 64, BackpressurePolicy.BLOCK);
+        final int samples = 1000000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < samples; i++) {
+                    ring.offer(i, i, -i, 0, 3);
+                }
+            }
+        });
+        producer.start();
+
+        SensorWriteBuffer batch = new SensorWriteBuffer(50);
+        long expected = 0;
+        while (expected < samples) {
+            batch.clear();
+            int drained = ring.drainTo(batch);
+            for (int i = 0; i < drained; i++) {
+                assertEquals(expected, batch.getTimestamp(i));
+                assertEquals((float) -expected, batch.getY(i), 0f);
+                expected++;
+            }
+        }
+        producer.join();
+        assertEquals(0, ring.size());
+    }
+
+    @Test(timeout = 60000)
+    public void dropOldestNeverHandsOverAnOverwrittenSample() throws Exception {
+        final SampleRingBuffer ring = new SampleRingBuffer(SENSOR, 16, BackpressurePolicy.DROP_OLDEST);
+        final int samples = 1000000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < samples; i++) {
+                    ring.offer(i, i, -i, 0, 3);
+                }
+            }
+        });
+        producer.start();
+
+        // The consumer races the producer for the oldest slot; whatever it gets must be intact
+        SensorWriteBuffer batch = new SensorWriteBuffer(8);
+        long last = -1;
+        long received = 0;
+        while (producer.isAlive() || ring.size() > 0) {
+            batch.clear();
+            int drained = ring.drainTo(batch);
+            for (int i = 0; i < drained; i++) {
+                long timestamp = batch.getTimestamp(i);
+                assertTrue(timestamp > last);
+                assertEquals((float) timestamp, batch.getX(i), 0f);
+                assertEquals((float) -timestamp, batch.getY(i), 0f);
+                last = timestamp;
+            }
+            received += drained;
+        }
+        producer.join();
+        assertEquals(samples, received + ring.getDroppedCount());
+        assertEquals(samples - 1, last);
+    }
+}
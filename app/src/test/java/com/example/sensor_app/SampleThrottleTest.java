@@ -0,0 +1,54 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SampleThrottle}, which paces live deliveries to subscribers.
+ */
+public class SampleThrottleTest {
+    private static final long PERIOD = 66667000L;
+
+    @Test
+    public void firstSamplePassesWhateverItsTimestamp() {
+        // Epoch nanoseconds, and values near the ends of the range that would overflow a
+        // subtraction from a Long.MIN_VALUE sentinel
+        assertTrue(new SampleThrottle(PERIOD).tryPass(1700000000000000000L));
+        assertTrue(new SampleThrottle(PERIOD).tryPass(0));
+        assertTrue(new SampleThrottle(PERIOD).tryPass(Long.MAX_VALUE));
+        assertTrue(new SampleThrottle(PERIOD).tryPass(Long.MIN_VALUE + 1));
+    }
+
+    @Test
+    public void passesOneSamplePerPeriod() {
+        SampleThrottle throttle = new SampleThrottle(PERIOD);
+        long start = 1700000000000000000L;
+        // 200 Hz in, so every 14th sample is the first at least a period after the last passed
+        int passed = 0;
+        for (int i = 0; i < 2000; i++) {
+            if (throttle.tryPass(start + i * 5000000L)) {
+                passed++;
+            }
+        }
+        assertEquals(143, passed);
+
+        throttle = new SampleThrottle(PERIOD);
+        assertTrue(throttle.tryPass(start));
+        assertFalse(throttle.tryPass(start + PERIOD - 1));
+        assertTrue(throttle.tryPass(start + PERIOD));
+        assertFalse(throttle.tryPass(start + PERIOD));
+        // After a gap the next sample passes at once
+        assertTrue(throttle.tryPass(start + 100 * PERIOD));
+    }
+
+    @Test
+    public void zeroPeriodPassesEverySample() {
+        SampleThrottle throttle = new SampleThrottle(0);
+        assertTrue(throttle.tryPass(5));
+        assertTrue(throttle.tryPass(5));
+        assertTrue(throttle.tryPass(6));
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.sensor_app;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Plain JVM microbenchmarks of the per-sample code on the ingest and chart paths: block
+ * encoding, the producer ring, downsampling and the window statistics. Each reports
+ * throughput, time per operation and bytes allocated per operation, which should stay at 0 for
+ * everything that runs per sample.
+ */
+public class StorageMicroBenchmark {
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 200;
+    private static final int SAMPLES = 1024;
+    // 200 Hz, like a fast accelerometer, with a little timestamp jitter
+    private static final long PERIOD_NANOS = 5000000L;
+
+    private final long[] timestamps = new long[SAMPLES];
+    private final float[] xs = new float[SAMPLES];
+    private final float[] ys = new float[SAMPLES];
+    private final float[] zs = new float[SAMPLES];
+
+    @Before
+    public void setUp() {
+        Benchmark.assumeEnabled();
+        java.util.Random random = new java.util.Random(42);
+        long timestamp = 1700000000000000000L;
+        for (int i = 0; i < SAMPLES; i++) {
+            timestamp += PERIOD_NANOS + random.nextInt(20000) - 10000;
+            timestamps[i] = timestamp;
+            xs[i] = (float) Math.sin(i * 0.05) + (float) random.nextGaussian() * 0.01f;
+            ys[i] = (float) Math.cos(i * 0.05) + (float) random.nextGaussian() * 0.01f;
+            zs[i] = 9.81f + (float) random.nextGaussian() * 0.01f;
+        }
+    }
+
+    @Test
+    public void gorillaEncode() throws Exception {
+        final GorillaCodec.Encoder encoder = new GorillaCodec.Encoder(3, 4096);
+        Benchmark.Result result = Benchmark.measure("gorilla encode", WARMUP_ROUNDS, ROUNDS, SAMPLES,
+                new Benchmark.Body() {
+                    @Override
+                    public void run(int operations) {
+                        encoder.reset();
+                        for (int i = 0; i < operations; i++) {
+                            encoder.add(timestamps[i], xs[i], ys[i], zs[i]);
+                        }
+                    }
+                });
+        Benchmark.report(String.format(java.util.Locale.US, "gorilla block: %.2f bytes per 3-axis sample",
+                (double) encoder.getByteLength() / SAMPLES));
+        Benchmark.checkFloor("gorillaEncode", result.operationsPerSecond);
+    }
+
+    @Test
+    public void gorillaDecode() throws Exception {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder(3, 4096);
+        for (int i = 0; i < SAMPLES; i++) {
+            encoder.add(timestamps[i], xs[i], ys[i], zs[i]);
+        }
+        final byte[] block = encoder.toByteArray();
+        final GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(3);
+        Benchmark.Result result = Benchmark.measure("gorilla decode", WARMUP_ROUNDS, ROUNDS, SAMPLES,
+                new Benchmark.Body() {
+                    @Override
+                    public void run(int operations) {
+                        decoder.reset(block, operations, timestamps[0]);
+                        while (decoder.next()) {
+                            consume(decoder.getX());
+                        }
+                    }
+                });
+        Benchmark.checkFloor("gorillaDecode", result.operationsPerSecond);
+    }
+
+    @Test
+    public void ringOfferAndDrain() throws Exception {
+        final SampleRingBuffer ring = new SampleRingBuffer(0, SAMPLES, BackpressurePolicy.DROP_OLDEST);
+        final SensorWriteBuffer batch = new SensorWriteBuffer(256);
+        Benchmark.Result result = Benchmark.measure("ring offer + drain", WARMUP_ROUNDS, ROUNDS, SAMPLES,
+                new Benchmark.Body() {
+                    @Override
+                    public void run(int operations) {
+                        for (int i = 0; i < operations; i++) {
+                            ring.offer(timestamps[i], xs[i], ys[i], zs[i], 3);
+                            if (ring.size() >= batch.capacity()) {
+                                batch.clear();
+                                ring.drainTo(batch);
+                            }
+                        }
+                        batch.clear();
+                        ring.drainTo(batch);
+                    }
+                });
+        Benchmark.checkFloor("ringOfferAndDrain", result.operationsPerSecond);
+    }
+
+    @Test
+    public void minMaxDownsample() throws Exception {
+        final MinMaxDownsampler downsampler = new MinMaxDownsampler(timestamps[0], timestamps[SAMPLES - 1], 256);
+        final long[] outTimestamps = new long[downsampler.getMaxPoints()];
+        final float[] outValues = new float[downsampler.getMaxPoints()];
+        Benchmark.Result result = Benchmark.measure("min/max downsample", WARMUP_ROUNDS, ROUNDS, SAMPLES,
+                new Benchmark.Body() {
+                    @Override
+                    public void run(int operations) {
+                        downsampler.clear();
+                        for (int i = 0; i < operations; i++) {
+                            downsampler.add(timestamps[i], xs[i]);
+                        }
+                        downsampler.copyTo(outTimestamps, outValues);
+                    }
+                });
+        Benchmark.checkFloor("minMaxDownsample", result.operationsPerSecond);
+    }
+
+    @Test
+    public void windowAggregate() throws Exception {
+        final SensorAggregate aggregate = new SensorAggregate();
+        final RollupAccumulator rollup = new RollupAccumulator(1000000000L);
+        Benchmark.Result result = Benchmark.measure("aggregate + 1 s rollup", WARMUP_ROUNDS, ROUNDS, SAMPLES,
+                new Benchmark.Body() {
+                    @Override
+                    public void run(int operations) {
+                        aggregate.reset();
+                        for (int i = 0; i < operations; i++) {
+                            aggregate.add(xs[i], ys[i], zs[i]);
+                            if (!rollup.isEmpty() && rollup.bucketOf(timestamps[i]) != rollup.getBucket()) {
+                                rollup.reset();
+                            }
+                            rollup.add(timestamps[i], xs[i], ys[i], zs[i]);
+                        }
+                        consume((float) aggregate.getStdDev(0));
+                    }
+                });
+        Benchmark.checkFloor("windowAggregate", result.operationsPerSecond);
+    }
+
+    @Test
+    public void featureExtraction() throws Exception {
+        final FeatureExtractor extractor = new FeatureExtractor(0, 3, 1000, 256, 0.3f);
+        Benchmark.Result result = Benchmark.measure("feature extraction", WARMUP_ROUNDS, ROUNDS, SAMPLES,
+                new Benchmark.Body() {
+                    // Timestamps keep increasing across rounds, as they do on a device
+                    long offset;
+
+                    @Override
+                    public void run(int operations) {
+                        for (int i = 0; i < operations; i++) {
+                            extractor.onSample(timestamps[i] + offset, xs[i], ys[i], zs[i]);
+                        }
+                        offset += timestamps[SAMPLES - 1] - timestamps[0] + PERIOD_NANOS;
+                    }
+                });
+        Benchmark.checkFloor("featureExtraction", result.operationsPerSecond);
+    }
+
+    // Keeps results alive so the JIT cannot drop the work that produced them
+    private static volatile float sink;
+
+    private static void consume(float value) {
+        sink = value;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.sensor_app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SyntheticSampleSource} on its virtual clock, driven through an
+ * {@link ExecutorSampleScheduler}: exact timestamps and values, samples held back for the report
+ * latency, and the same noise for the same seed.
+ */
+public class SyntheticSampleSourceTest {
+    private static final int CHANNEL = SensorChannelRegistry.ACCELEROMETER;
+    private static final long START = 1700000000000000000L;
+    private static final long MS = 1000000L;
+
+    private ScheduledExecutorService executor;
+
+    // Every sample with the virtual time it was delivered at; closes the source after a number
+    private static class Recorder implements SampleSource.Listener {
+        final SyntheticSampleSource source;
+        final int limit;
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Long> deliveredAt = new ArrayList<>();
+        final List<float[]> values = new ArrayList<>();
+
+        Recorder(SyntheticSampleSource source, int limit) {
+            this.source = source;
+            this.limit = limit;
+            source.setListener(this);
+        }
+
+        @Override
+        public void onSample(int channel, long timestamp, float[] values, int accuracy) {
+            if (timestamps.size() == limit) {
+                return;
+            }
+            assertEquals(CHANNEL, channel);
+            assertEquals(3, accuracy);
+            timestamps.add(timestamp);
+            deliveredAt.add(source.getTimeNanos());
+            this.values.add(values.clone());
+            if (timestamps.size() == limit) {
+                source.close();
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onFlushCompleted(int channel) {
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void deliversExactSamplesOnTheVirtualClock() throws Exception {
+        final SyntheticSampleSource source = newSource(1);
+        Recorder recorder = new Recorder(source, 250);
+        final SyntheticSampleSource.Signal sine = new SyntheticSampleSource.Signal(SyntheticSampleSource.Shape.SINE,
+                1f, 2f, 1000);
+        runOn(new Callable<Void>() {
+            @Override
+            public Void call() {
+                source.setSignal(CHANNEL, sine);
+                // 100 Hz with nothing held back
+                source.register(CHANNEL, 10000, 0);
+                return null;
+            }
+        });
+        recorder.await();
+
+        for (int i = 0; i < 250; i++) {
+            long elapsed = i * 10 * MS;
+            assertEquals(START + elapsed, (long) recorder.timestamps.get(i));
+            // Each axis lags the one before by a third of the period
+            for (int axis = 0; axis < 3; axis++) {
+                long t = elapsed + axis * 1000 * MS / 3;
+                float expected = 1f + 2f * (float) Math.sin(2 * Math.PI * (t % (1000 * MS)) / (1000 * MS));
+                assertEquals(expected, recorder.values.get(i)[axis], 0f);
+            }
+            // Delivered on the first turn of the virtual clock that reaches it; each turn moves
+            // it on by 100 ms, the first one included
+            long turn = Math.max(1, (elapsed + 100 * MS - 1) / (100 * MS));
+            assertEquals(START + turn * 100 * MS, (long) recorder.deliveredAt.get(i));
+        }
+    }
+
+    @Test
+    public void holdsSamplesBackForTheReportLatency() throws Exception {
+        final SyntheticSampleSource source = newSource(1);
+        Recorder recorder = new Recorder(source, 111);
+        runOn(new Callable<Void>() {
+            @Override
+            public Void call() {
+                // 100 Hz, batched for up to half a second like a hardware FIFO
+                source.register(CHANNEL, 10000, 500000);
+                return null;
+            }
+        });
+        recorder.await();
+
+        // The oldest sample waits until it is 500 ms old, then everything due comes at once:
+        // 0 to 500 ms at 500 ms, then 510 to 1100 ms on the first turn that 510 ms is old enough
+        for (int i = 0; i < 111; i++) {
+            assertEquals(START + i * 10 * MS, (long) recorder.timestamps.get(i));
+            long expected = i <= 50 ? START + 500 * MS : START + 1100 * MS;
+            assertEquals(expected, (long) recorder.deliveredAt.get(i));
+        }
+    }
+
+    @Test
+    public void sameSeedGivesTheSameNoise() throws Exception {
+        float[][] first = noise(42);
+        float[][] second = noise(42);
+        float[][] other = noise(43);
+        boolean differs = false;
+        for (int i = 0; i < first.length; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                assertEquals(first[i][axis], second[i][axis], 0f);
+                differs |= first[i][axis] != other[i][axis];
+            }
+        }
+        assertTrue(differs);
+    }
+
+    // 100 samples of noise around 9.81 from a source with the given seed
+    private float[][] noise(long seed) throws Exception {
+        final SyntheticSampleSource source = newSource(seed);
+        Recorder recorder = new Recorder(source, 100);
+        final SyntheticSampleSource.Signal noise = new SyntheticSampleSource.Signal(
+                SyntheticSampleSource.Shape.NOISE, 9.81f, 0.5f, 1000);
+        runOn(new Callable<Void>() {
+            @Override
+            public Void call() {
+                source.setSignal(CHANNEL, noise);
+                source.register(CHANNEL, 5000, 0);
+                return null;
+            }
+        });
+        recorder.await();
+        return recorder.values.toArray(new float[0][]);
+    }
+
+    private SyntheticSampleSource newSource(long seed) {
+        return new SyntheticSampleSource(new ExecutorSampleScheduler(executor), false, START, seed);
+    }
+
+    // The source is only safe on the executor's thread
+    private <T> T runOn(Callable<T> task) throws Exception {
+        return executor.submit(task).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.sensor_app;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TriggerEngine} on a 100 Hz channel: baseline samples while idle, whole pre-trigger
+ * windows when a rule fires, and captures extended by rules firing again.
+ */
+public class TriggerEngineTest {
+    private static final int CHANNEL = SensorChannelRegistry.ACCELEROMETER;
+    private static final long MS = 1000000L;
+    // 100 Hz
+    private static final long PERIOD = 10 * MS;
+    private static final long PRE_TRIGGER_MS = 2000;
+    private static final long POST_TRIGGER_MS = 1000;
+    private static final long BASELINE_MS = 5000;
+
+    // Stored timestamps and fired rules; fails at once if samples are stored out of order
+    private static class Recorder implements TriggerEngine.Listener {
+        final List<Long> stored = new ArrayList<>();
+        final List<TriggerRule> rules = new ArrayList<>();
+        final List<Long> triggers = new ArrayList<>();
+
+        @Override
+        public void onStore(int channel, long timestamp, float x, float y, float z, int accuracy) {
+            assertEquals(CHANNEL, channel);
+            assertTrue(stored.isEmpty() || timestamp > stored.get(stored.size() - 1));
+            stored.add(timestamp);
+        }
+
+        @Override
+        public void onTriggered(int channel, TriggerRule rule, long timestamp, float value) {
+            rules.add(rule);
+            triggers.add(timestamp);
+        }
+
+        int countBetween(long from, long to) {
+            int count = 0;
+            for (long timestamp : stored) {
+                if (timestamp >= from && timestamp <= to) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    @Test
+    public void storesOneBaselineSamplePerIntervalWhileIdle() {
+        Recorder recorder = new Recorder();
+        TriggerEngine engine = newEngine(recorder, 1024, TriggerRule.above("Shock", 0, 20));
+        for (int i = 0; i < 3000; i++) {
+            engine.onSample(i * PERIOD, 0, 0, 9.8f, 3);
+        }
+        // Taken as they leave the pre-trigger window, so the last 2 s are still waiting
+        long[] expected = {0, 5000 * MS, 10000 * MS, 15000 * MS, 20000 * MS, 25000 * MS};
+        assertEquals(expected.length, recorder.stored.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], (long) recorder.stored.get(i));
+        }
+        assertTrue(recorder.triggers.isEmpty());
+        assertFalse(engine.isCapturing());
+    }
+
+    @Test
+    public void triggerShortlyAfterABaselineSampleGetsItsWholeWindow() {
+        Recorder recorder = new Recorder();
+        TriggerRule shock = TriggerRule.above("Shock", 0, 20);
+        TriggerEngine engine = newEngine(recorder, 1024, shock);
+        // The sample at 5000 ms is due as a baseline; the shock comes half a second later
+        long trigger = 5500 * MS;
+        for (long timestamp = 0; timestamp <= 8000 * MS; timestamp += PERIOD) {
+            engine.onSample(timestamp, timestamp == trigger ? 25 : 0, 0, 9.8f, 3);
+        }
+
+        assertEquals(1, recorder.triggers.size());
+        assertSame(shock, recorder.rules.get(0));
+        assertEquals(trigger, (long) recorder.triggers.get(0));
+        // Every sample from the window start to the end of the post-trigger window
+        long from = trigger - PRE_TRIGGER_MS * MS;
+        long to = trigger + POST_TRIGGER_MS * MS;
+        assertEquals((to - from) / PERIOD + 1, recorder.countBetween(from, to));
+        // Before it only the first baseline sample; the one at 5000 ms is part of the window
+        assertEquals(1, recorder.countBetween(0, from - 1));
+        assertEquals(0, (long) recorder.stored.get(0));
+        // After it nothing yet: the next baseline is due 5 s after the capture's last sample
+        assertEquals(0, recorder.countBetween(to + 1, Long.MAX_VALUE));
+        assertFalse(engine.isCapturing());
+    }
+
+    @Test
+    public void firingAgainDuringACaptureExtendsIt() {
+        Recorder recorder = new Recorder();
+        TriggerEngine engine = newEngine(recorder, 1024, TriggerRule.above("Shock", 0, 20));
+        for (long timestamp = 0; timestamp <= 10000 * MS; timestamp += PERIOD) {
+            boolean shock = timestamp == 3000 * MS || timestamp == 3800 * MS;
+            engine.onSample(timestamp, shock ? 25 : 0, 0, 9.8f, 3);
+        }
+        // One event, stored from 1000 ms until a second after the second shock
+        assertEquals(1, recorder.triggers.size());
+        assertEquals((4800 - 1000) / 10 + 1, recorder.countBetween(1000 * MS, 4800 * MS));
+        assertEquals(0, recorder.countBetween(4800 * MS + 1, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void ruleFiresOnlyWhereItsConditionBecomesTrue() {
+        Recorder recorder = new Recorder();
+        TriggerEngine engine = newEngine(recorder, 1024, TriggerRule.above("Bright", 0, 20));
+        for (long timestamp = 0; timestamp <= 20000 * MS; timestamp += PERIOD) {
+            // Above the level from 3 s to 6 s, and again from 12 s
+            boolean above = (timestamp >= 3000 * MS && timestamp < 6000 * MS) || timestamp >= 12000 * MS;
+            engine.onSample(timestamp, above ? 30 : 0, Float.NaN, Float.NaN, 3);
+        }
+        assertEquals(2, recorder.triggers.size());
+        assertEquals(3000 * MS, (long) recorder.triggers.get(0));
+        assertEquals(12000 * MS, (long) recorder.triggers.get(1));
+    }
+
+    @Test
+    public void rateOfChangeAndWindowRules() {
+        Recorder recorder = new Recorder();
+        TriggerRule jump = TriggerRule.rateOfChange("Jump", 0, 500);
+        TriggerRule shaking = TriggerRule.windowAbove("Shaking", TriggerRule.MAGNITUDE,
+                TriggerRule.Statistic.STD_DEV, 50, 4);
+        TriggerEngine engine = newEngine(recorder, 1024, jump, shaking);
+        for (long timestamp = 0; timestamp <= 30000 * MS; timestamp += PERIOD) {
+            float x = 0;
+            // A step of 10 in one sample is 1000 per second
+            if (timestamp >= 5000 * MS && timestamp < 15000 * MS) {
+                x = 10;
+            }
+            // Alternating by 10 from 20 s gives a standard deviation of about 5
+            if (timestamp >= 20000 * MS) {
+                x = (timestamp / PERIOD) % 2 == 0 ? 10 : -10;
+            }
+            engine.onSample(timestamp, x, 0, 9.8f, 3);
+        }
+        assertEquals(3, recorder.rules.size());
+        assertSame(jump, recorder.rules.get(0));
+        assertEquals(5000 * MS, (long) recorder.triggers.get(0));
+        assertSame(jump, recorder.rules.get(1));
+        assertEquals(15000 * MS, (long) recorder.triggers.get(1));
+        // The jump at 20 s fires first; shaking fires inside that capture and only extends it
+        assertSame(jump, recorder.rules.get(2));
+        assertEquals(20000 * MS, (long) recorder.triggers.get(2));
+    }
+
+    @Test
+    public void smallRingShortensTheStoredWindow() {
+        Recorder recorder = new Recorder();
+        TriggerEngine engine = newEngine(recorder, 50, TriggerRule.above("Shock", 0, 20));
+        long trigger = 9000 * MS;
+        for (long timestamp = 0; timestamp <= trigger; timestamp += PERIOD) {
+            engine.onSample(timestamp, timestamp == trigger ? 25 : 0, 0, 9.8f, 3);
+        }
+        // Only the 50 samples the ring holds make it into the window, then the trigger itself
+        assertEquals(51, recorder.countBetween(trigger - PRE_TRIGGER_MS * MS, trigger));
+        assertEquals(trigger - 50 * PERIOD, (long) recorder.stored.get(recorder.stored.size() - 51));
+    }
+
+    @Test
+    public void resetForgetsTheRingButNotWhatWasStored() {
+        Recorder recorder = new Recorder();
+        TriggerEngine engine = newEngine(recorder, 1024, TriggerRule.above("Shock", 0, 20));
+        for (long timestamp = 0; timestamp <= 3000 * MS; timestamp += PERIOD) {
+            engine.onSample(timestamp, 0, 0, 9.8f, 3);
+        }
+        assertEquals(1, recorder.stored.size());
+        engine.reset();
+
+        // A shock right after the reset has no history to store before it
+        engine.onSample(60000 * MS, 25, 0, 9.8f, 3);
+        assertEquals(2, recorder.stored.size());
+        assertEquals(60000 * MS, (long) recorder.stored.get(1));
+        assertTrue(engine.isCapturing());
+    }
+
+    private static TriggerEngine newEngine(Recorder recorder, int ringCapacity, TriggerRule... rules) {
+        return new TriggerEngine(CHANNEL, rules, PRE_TRIGGER_MS, POST_TRIGGER_MS, BASELINE_MS, ringCapacity,
+                recorder);
+    }
+}